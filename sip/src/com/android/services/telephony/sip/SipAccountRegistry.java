@@ -23,9 +23,11 @@ import android.net.sip.SipProfile;
 import android.telecom.PhoneAccount;
 import android.telecom.PhoneAccountHandle;
 import android.telecom.TelecomManager;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -105,6 +107,10 @@ public final class SipAccountRegistry {
 
     private final List<AccountEntry> mAccounts = new CopyOnWriteArrayList<>();
 
+    // Names of the profiles waiting for their SIP service to be started, with whether their
+    // account should be enabled. Guarded by itself.
+    private final Map<String, Boolean> mPendingStarts = new ArrayMap<>();
+
     private SipAccountRegistry() {}
 
     public static SipAccountRegistry getInstance() {
@@ -212,43 +218,91 @@ public final class SipAccountRegistry {
             final Context context, final String sipProfileName, final boolean enableProfile) {
         if (VERBOSE) log("startSipProfiles, start auto registration");
 
-        new Thread(new Runnable() {
+        SipUtil.execute(new Runnable() {
             @Override
             public void run() {
                 startSipProfiles(context, sipProfileName, enableProfile);
-            }}
-        ).start();
+            }
+        });
     }
 
     /**
-     * Loops through all SIP accounts from the SIP database, starts each service and registers
-     * each with the telecom framework. If a specific sipProfileName is specified, this will only
-     * register the associated SIP account.
+     * Loops through all SIP accounts from the SIP database and starts each of them in parallel
+     * with {@link #startSipProfileAsync}. If a specific sipProfileName is specified, this will only
+     * start the associated SIP account.
      *
      * @param context The context.
      * @param sipProfileName A specific SIP profile Name to start, or {@code null} to start all.
      * @param enableProfile Sip account should be enabled.
      */
     private void startSipProfiles(Context context, String sipProfileName, boolean enableProfile) {
-        final SipPreferences sipPreferences = new SipPreferences(context);
-        boolean isReceivingCalls = sipPreferences.isReceivingCallsEnabled();
-        TelecomManager telecomManager = TelecomManager.from(context);
-        SipManager sipManager = SipManager.newInstance(context);
         SipProfileDb profileDb = new SipProfileDb(context);
         List<SipProfile> sipProfileList = profileDb.retrieveSipProfileList();
 
         for (SipProfile profile : sipProfileList) {
-            // Register a PhoneAccount for the profile and optionally enable the primary
-            // profile.
             if (sipProfileName == null || sipProfileName.equals(profile.getProfileName())) {
-                PhoneAccount phoneAccount = SipUtil.createPhoneAccount(context, profile);
-                telecomManager.registerPhoneAccount(phoneAccount);
-                if (enableProfile) {
-                    telecomManager.enablePhoneAccount(phoneAccount.getAccountHandle(), true);
+                startSipProfileAsync(context, profile.getProfileName(), enableProfile);
+            }
+        }
+    }
+
+    /**
+     * Starts a SIP profile on a SIP background thread. A profile that is already waiting to be
+     * started is not queued again; the pending start also enables its account if either request
+     * asked for it.
+     *
+     * @param context The context.
+     * @param sipProfileName Name of the SIP profile.
+     * @param enableProfile Sip account should be enabled.
+     */
+    private void startSipProfileAsync(final Context context, final String sipProfileName,
+            boolean enableProfile) {
+        synchronized (mPendingStarts) {
+            Boolean pendingEnable = mPendingStarts.get(sipProfileName);
+            if (pendingEnable != null) {
+                if (VERBOSE) log("startSipProfileAsync, already pending: " + sipProfileName);
+                mPendingStarts.put(sipProfileName, pendingEnable || enableProfile);
+                return;
+            }
+            mPendingStarts.put(sipProfileName, enableProfile);
+        }
+
+        SipUtil.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean enable;
+                synchronized (mPendingStarts) {
+                    enable = mPendingStarts.remove(sipProfileName);
                 }
-                startSipServiceForProfile(profile, sipManager, context, isReceivingCalls);
+                startSipProfile(context, sipProfileName, enable);
             }
+        });
+    }
+
+    /**
+     * Registers a {@link PhoneAccount} for a SIP profile, optionally enables it, and starts its
+     * SIP service.
+     *
+     * @param context The context.
+     * @param sipProfileName Name of the SIP profile.
+     * @param enableProfile Sip account should be enabled.
+     */
+    private void startSipProfile(Context context, String sipProfileName, boolean enableProfile) {
+        // Look the profile up again, it may have been edited or deleted while this was queued.
+        SipProfile profile = new SipProfileDb(context).retrieveSipProfileFromName(sipProfileName);
+        if (profile == null) {
+            return;
+        }
+        boolean isReceivingCalls = new SipPreferences(context).isReceivingCallsEnabled();
+        TelecomManager telecomManager = TelecomManager.from(context);
+
+        PhoneAccount phoneAccount = SipUtil.createPhoneAccount(context, profile);
+        telecomManager.registerPhoneAccount(phoneAccount);
+        if (enableProfile) {
+            telecomManager.enablePhoneAccount(phoneAccount.getAccountHandle(), true);
         }
+        startSipServiceForProfile(profile, SipManager.newInstance(context), context,
+                isReceivingCalls);
     }
 
     /**
@@ -40,7 +40,6 @@ import com.android.internal.telephony.PhoneFactory;
 import com.android.internal.telephony.sip.SipPhone;
 import com.android.services.telephony.DisconnectCauseUtil;
 
-import java.util.List;
 import java.util.Objects;
 
 public final class SipConnectionService extends ConnectionService {
@@ -200,27 +199,17 @@ public final class SipConnectionService extends ConnectionService {
     }
 
     /**
-     * Searched for the specified profile in the SIP profile database.  This can take a long time
-     * in communicating with the database, so it is done asynchronously with a separate thread and a
-     * callback interface.
+     * Searched for the specified profile in the SIP profile database.  The first access reads the
+     * database from disk, so it is done asynchronously on a SIP background thread and a callback
+     * interface. Later lookups come from the in-memory index of the database.
      */
     private void findProfile(final String profileName, final IProfileFinderCallback callback) {
         if (VERBOSE) log("findProfile");
-        new Thread(new Runnable() {
+        SipUtil.execute(new Runnable() {
             @Override
             public void run() {
-                SipProfile profileToUse = null;
-                List<SipProfile> profileList = mSipProfileDb.retrieveSipProfileList();
-                if (profileList != null) {
-                    for (SipProfile profile : profileList) {
-                        if (Objects.equals(profileName, profile.getProfileName())) {
-                            profileToUse = profile;
-                            break;
-                        }
-                    }
-                }
-
-                final SipProfile profileFound = profileToUse;
+                final SipProfile profileFound =
+                        mSipProfileDb.retrieveSipProfileFromName(profileName);
                 mHandler.post(new Runnable() {
                     @Override
                     public void run() {
@@ -228,7 +217,7 @@ public final class SipConnectionService extends ConnectionService {
                     }
                 });
             }
-        }).start();
+        });
     }
 
     private SipPhone findPhoneForProfile(SipProfile profile) {
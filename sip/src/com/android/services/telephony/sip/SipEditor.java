@@ -372,7 +372,7 @@ public class SipEditor extends PreferenceActivity
         // storage; do finish() once everything goes fine.
         // newProfile may be null if the old profile is to be deleted rather
         // than being modified.
-        new Thread(new Runnable() {
+        SipUtil.execute(new Runnable() {
             public void run() {
                 try {
                     deleteAndUnregisterProfile(oldProfile);
@@ -384,7 +384,7 @@ public class SipEditor extends PreferenceActivity
                     showAlert(e);
                 }
             }
-        }, "SipEditor").start();
+        });
     }
 
     private String getProfileName() {
@@ -20,7 +20,9 @@ import com.android.internal.os.AtomicFile;
 
 import android.content.Context;
 import android.net.sip.SipProfile;
+import android.os.Parcel;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.EventLog;
 import android.util.Log;
 
@@ -31,10 +33,17 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Utility class that helps perform operations on the SipProfile database.
+ * <p>
+ * The profiles of each database directory are read from disk once and then kept in an index by
+ * name, which the writes below keep up to date. Lookups by name are map lookups after that.
+ * Callers change the profiles they get, as SipSettings does when it sets their calling uid, so the
+ * index hands out and stores copies.
  */
 class SipProfileDb {
     private static final String PREFIX = "[SipProfileDb] ";
@@ -50,6 +59,9 @@ class SipProfileDb {
     private SipPreferences mSipPreferences;
     private int mProfilesCount = -1;
 
+    // Profiles by name, per profiles directory. Guarded by SipProfileDb.class.
+    private static final Map<String, Map<String, SipProfile>> sProfileIndex = new ArrayMap<>();
+
     public SipProfileDb(Context context) {
         // Sip Profile Db should always reference CE storage.
         mContext = context.createCredentialProtectedStorageContext();
@@ -75,6 +87,7 @@ class SipProfileDb {
             }
             deleteProfile(profileFile);
             if (mProfilesCount < 0) retrieveSipProfileListInternal();
+            getIndexLocked().remove(p.getProfileName());
         }
     }
 
@@ -91,6 +104,9 @@ class SipProfileDb {
         if(dbDir.isDirectory()) {
             dbDir.delete();
         }
+        synchronized(SipProfileDb.class) {
+            sProfileIndex.remove(mProfilesDirectory);
+        }
         // Remove SharedPreferences file as well
         mSipPreferences.clearSharedPreferences();
     }
@@ -112,6 +128,7 @@ class SipProfileDb {
                 oos.writeObject(p);
                 oos.flush();
                 atomicFile.finishWrite(fos);
+                getIndexLocked().put(p.getProfileName(), copy(p));
             } catch (IOException e) {
                 atomicFile.failWrite(fos);
                 throw e;
@@ -128,16 +145,11 @@ class SipProfileDb {
     }
 
     private List<SipProfile> retrieveSipProfileListInternal() {
+        Map<String, SipProfile> index = getIndexLocked();
         List<SipProfile> sipProfileList = Collections.synchronizedList(
-                new ArrayList<SipProfile>());
-
-        File root = new File(mProfilesDirectory);
-        String[] dirs = root.list();
-        if (dirs == null) return sipProfileList;
-        for (String dir : dirs) {
-            SipProfile p = retrieveSipProfileFromName(dir);
-            if (p == null) continue;
-            sipProfileList.add(p);
+                new ArrayList<SipProfile>(index.size()));
+        for (SipProfile p : index.values()) {
+            sipProfileList.add(copy(p));
         }
         mProfilesCount = sipProfileList.size();
         return sipProfileList;
@@ -147,6 +159,56 @@ class SipProfileDb {
         if (TextUtils.isEmpty(name)) {
             return null;
         }
+        synchronized(SipProfileDb.class) {
+            SipProfile p = getIndexLocked().get(name);
+            return p != null ? copy(p) : null;
+        }
+    }
+
+    /**
+     * @return a copy of {@code p}. Its parcel holds every field, including the password.
+     */
+    private static SipProfile copy(SipProfile p) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            p.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return SipProfile.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @return the index of the profiles directory, read from disk if this is the first access.
+     * The index is not kept if the directory could not be listed, as it may not exist yet or be
+     * unreadable until the user unlocks, so it is read again on the next access.
+     * Must hold SipProfileDb.class.
+     */
+    private Map<String, SipProfile> getIndexLocked() {
+        Map<String, SipProfile> index = sProfileIndex.get(mProfilesDirectory);
+        if (index == null) {
+            index = new LinkedHashMap<>();
+            File root = new File(mProfilesDirectory);
+            String[] dirs = root.list();
+            if (dirs == null) {
+                return index;
+            }
+            for (String dir : dirs) {
+                SipProfile p = readSipProfileFromName(dir);
+                if (p != null) {
+                    index.put(p.getProfileName(), p);
+                }
+            }
+            sProfileIndex.put(mProfilesDirectory, index);
+        }
+        return index;
+    }
+
+    private SipProfile readSipProfileFromName(String name) {
+        if (TextUtils.isEmpty(name)) {
+            return null;
+        }
 
         File root = new File(mProfilesDirectory);
         File f = new File(new File(root, name), PROFILE_OBJ_FILE);
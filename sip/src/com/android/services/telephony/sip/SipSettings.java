@@ -156,7 +156,7 @@ public class SipSettings extends PreferenceActivity {
     protected void onActivityResult(final int requestCode, final int resultCode,
             final Intent intent) {
         if (resultCode != RESULT_OK && resultCode != RESULT_FIRST_USER) return;
-        new Thread() {
+        SipUtil.execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -175,11 +175,11 @@ public class SipSettings extends PreferenceActivity {
                     log("onActivityResult, can not handle the profile:  " + e);
                 }
             }
-        }.start();
+        });
     }
 
     private void updateProfilesStatus() {
-        new Thread(new Runnable() {
+        SipUtil.execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -188,7 +188,7 @@ public class SipSettings extends PreferenceActivity {
                     log("updateProfilesStatus, exception: " + e);
                 }
             }
-        }).start();
+        });
     }
 
     private String getProfileName(SipProfile profile) {
@@ -303,7 +303,7 @@ public class SipSettings extends PreferenceActivity {
 
     private void unregisterProfile(final SipProfile p) {
         // run it on background thread for better UI response
-        new Thread(new Runnable() {
+        SipUtil.execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -312,7 +312,7 @@ public class SipSettings extends PreferenceActivity {
                     log("unregisterProfile, unregister failed, SipService died? Exception: " + e);
                 }
             }
-        }, "unregisterProfile").start();
+        });
     }
 
     void deleteProfile(SipProfile p) {
@@ -38,6 +38,9 @@ import com.android.server.sip.SipService;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class SipUtil {
     static final String LOG_TAG = "SIP";
@@ -46,9 +49,29 @@ public class SipUtil {
     static final String EXTRA_PHONE_ACCOUNT =
             "com.android.services.telephony.sip.phone_account";
 
+    private static final int MAX_BACKGROUND_THREADS = 4;
+    private static final long BACKGROUND_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    // Shared by the SIP profile lookups and registrations, which used to start a thread each.
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(
+            MAX_BACKGROUND_THREADS, MAX_BACKGROUND_THREADS,
+            BACKGROUND_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
     private SipUtil() {
     }
 
+    /**
+     * Runs {@code runnable} on the bounded pool of SIP background threads.
+     */
+    static void execute(Runnable runnable) {
+        sExecutor.execute(runnable);
+    }
+
     public static boolean isVoipSupported(Context context) {
         return SipManager.isVoipSupported(context) &&
                 context.getResources().getBoolean(
@@ -10,6 +10,7 @@ import android.os.AsyncResult;
 import android.os.Handler;
 import android.os.Message;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.preference.ListPreference;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -25,6 +26,8 @@ public class CLIRListPreference extends ListPreference {
     private final MyHandler mHandler = new MyHandler();
     private Phone mPhone;
     private TimeConsumingPreferenceListener mTcpListener;
+    /* When the pending query was sent to the network, or 0 if it is answered from the cache. */
+    private long mQueryStartTime;
 
     int clirArray[];
 
@@ -40,6 +43,7 @@ public class CLIRListPreference extends ListPreference {
     protected void onDialogClosed(boolean positiveResult) {
         super.onDialogClosed(positiveResult);
 
+        SuppServiceQueryCache.invalidate(mPhone.getSubId(), SuppServiceQueryCache.QUERY_CLIR);
         mPhone.setOutgoingCallerIdDisplay(findIndexOfValue(getValue()),
                 mHandler.obtainMessage(MyHandler.MESSAGE_SET_CLIR));
         if (mTcpListener != null) {
@@ -52,8 +56,19 @@ public class CLIRListPreference extends ListPreference {
         mPhone = phone;
         mTcpListener = listener;
         if (!skipReading) {
-            mPhone.getOutgoingCallerIdDisplay(mHandler.obtainMessage(MyHandler.MESSAGE_GET_CLIR,
-                    MyHandler.MESSAGE_GET_CLIR, MyHandler.MESSAGE_GET_CLIR));
+            Object cached = SuppServiceQueryCache.get(mPhone.getSubId(),
+                    SuppServiceQueryCache.QUERY_CLIR);
+            if (cached != null) {
+                mQueryStartTime = 0;
+                mHandler.obtainMessage(MyHandler.MESSAGE_GET_CLIR, MyHandler.MESSAGE_GET_CLIR,
+                        MyHandler.MESSAGE_GET_CLIR, new AsyncResult(null, cached, null))
+                        .sendToTarget();
+            } else {
+                mQueryStartTime = SystemClock.elapsedRealtime();
+                mPhone.getOutgoingCallerIdDisplay(mHandler.obtainMessage(
+                        MyHandler.MESSAGE_GET_CLIR, MyHandler.MESSAGE_GET_CLIR,
+                        MyHandler.MESSAGE_GET_CLIR));
+            }
             if (mTcpListener != null) {
                 mTcpListener.onStarted(this, true);
             }
@@ -127,6 +142,11 @@ public class CLIRListPreference extends ListPreference {
 
         private void handleGetCLIRResponse(Message msg) {
             AsyncResult ar = (AsyncResult) msg.obj;
+            if (mQueryStartTime != 0) {
+                SuppServiceQueryCache.onQueryComplete(mPhone.getSubId(),
+                        SuppServiceQueryCache.QUERY_CLIR, mQueryStartTime, ar);
+                mQueryStartTime = 0;
+            }
 
             if (msg.arg2 == MESSAGE_SET_CLIR) {
                 mTcpListener.onFinished(CLIRListPreference.this, false);
@@ -163,6 +183,7 @@ public class CLIRListPreference extends ListPreference {
             }
             if (DBG) Log.d(LOG_TAG, "handleSetCallWaitingResponse: re get");
 
+            mQueryStartTime = SystemClock.elapsedRealtime();
             mPhone.getOutgoingCallerIdDisplay(obtainMessage(MESSAGE_GET_CLIR,
                     MESSAGE_SET_CLIR, MESSAGE_SET_CLIR, ar.exception));
         }
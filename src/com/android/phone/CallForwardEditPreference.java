@@ -12,6 +12,7 @@ import android.content.res.TypedArray;
 import android.os.AsyncResult;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.telephony.PhoneNumberUtils;
 import android.text.BidiFormatter;
@@ -61,6 +62,8 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
     private int mEndMinute;
     private int mStatus;
     private String mNumber;
+    /* When the pending query was sent to the network, or 0 if it is answered from the cache. */
+    private long mQueryStartTime;
 
     public CallForwardEditPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -98,11 +101,23 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
                     Log.d(LOG_TAG, "getCallForwardUncondTimer failed. Exception = " + e);
                 }
             } else {
-                mPhone.getCallForwardingOption(reason, mServiceClass,
-                        mHandler.obtainMessage(MyHandler.MESSAGE_GET_CF,
-                        // unused in this case
-                        CommandsInterface.CF_ACTION_DISABLE,
-                        MyHandler.MESSAGE_GET_CF, null));
+                Object cached = SuppServiceQueryCache.get(mPhone.getSubId(), getQuery());
+                if (cached != null) {
+                    if (DBG) Log.d(LOG_TAG, "init: using cached result for reason " + reason);
+                    mQueryStartTime = 0;
+                    mHandler.obtainMessage(MyHandler.MESSAGE_GET_CF,
+                            // unused in this case
+                            CommandsInterface.CF_ACTION_DISABLE,
+                            MyHandler.MESSAGE_GET_CF, new AsyncResult(null, cached, null))
+                            .sendToTarget();
+                } else {
+                    mQueryStartTime = SystemClock.elapsedRealtime();
+                    mPhone.getCallForwardingOption(reason, mServiceClass,
+                            mHandler.obtainMessage(MyHandler.MESSAGE_GET_CF,
+                            // unused in this case
+                            CommandsInterface.CF_ACTION_DISABLE,
+                            MyHandler.MESSAGE_GET_CF, null));
+                }
             }
             if (mTcpListener != null) {
                 mTcpListener.onStarted(this, true);
@@ -180,6 +195,7 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
                 // Display no forwarding number while we're waiting for
                 // confirmation
                 setSummaryOn("");
+                SuppServiceQueryCache.invalidate(mPhone.getSubId(), getQuery());
 
                 // the interface of Phone.setCallForwardingOption has error:
                 // should be action, reason...
@@ -353,6 +369,11 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
             mTcpListener.onFinished(CallForwardEditPreference.this, msg.arg2 != MESSAGE_SET_CF);
 
             AsyncResult ar = (AsyncResult) msg.obj;
+            if (mQueryStartTime != 0) {
+                SuppServiceQueryCache.onQueryComplete(mPhone.getSubId(), getQuery(),
+                        mQueryStartTime, ar);
+                mQueryStartTime = 0;
+            }
 
             callForwardInfo = null;
             if (ar.exception != null) {
@@ -429,11 +450,16 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
                 // setEnabled(false);
             }
             if (DBG) Log.d(LOG_TAG, "handleSetCFResponse: re get");
+            mQueryStartTime = SystemClock.elapsedRealtime();
             mPhone.getCallForwardingOption(reason, mServiceClass,
                     obtainMessage(MESSAGE_GET_CF, msg.arg1, MESSAGE_SET_CF, ar.exception));
         }
     }
 
+    private String getQuery() {
+        return SuppServiceQueryCache.callForwardingQuery(reason, mServiceClass);
+    }
+
     //used to check if timer infor is valid
     private boolean isTimerValid() {
         return mStartHour != 0 || mStartMinute != 0 || mEndHour != 0 || mEndMinute != 0;
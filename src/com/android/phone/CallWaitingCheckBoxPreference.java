@@ -9,6 +9,7 @@ import android.content.Context;
 import android.os.AsyncResult;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.preference.CheckBoxPreference;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -22,6 +23,8 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
     private final MyHandler mHandler = new MyHandler();
     private Phone mPhone;
     private TimeConsumingPreferenceListener mTcpListener;
+    /* When the pending query was sent to the network, or 0 if it is answered from the cache. */
+    private long mQueryStartTime;
 
     public CallWaitingCheckBoxPreference(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
@@ -41,8 +44,18 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
         mTcpListener = listener;
 
         if (!skipReading) {
-            mPhone.getCallWaiting(mHandler.obtainMessage(MyHandler.MESSAGE_GET_CALL_WAITING,
-                    MyHandler.MESSAGE_GET_CALL_WAITING, MyHandler.MESSAGE_GET_CALL_WAITING));
+            Object cached = SuppServiceQueryCache.get(mPhone.getSubId(),
+                    SuppServiceQueryCache.QUERY_CALL_WAITING);
+            if (cached != null) {
+                mQueryStartTime = 0;
+                mHandler.obtainMessage(MyHandler.MESSAGE_GET_CALL_WAITING,
+                        MyHandler.MESSAGE_GET_CALL_WAITING, MyHandler.MESSAGE_GET_CALL_WAITING,
+                        new AsyncResult(null, cached, null)).sendToTarget();
+            } else {
+                mQueryStartTime = SystemClock.elapsedRealtime();
+                mPhone.getCallWaiting(mHandler.obtainMessage(MyHandler.MESSAGE_GET_CALL_WAITING,
+                        MyHandler.MESSAGE_GET_CALL_WAITING, MyHandler.MESSAGE_GET_CALL_WAITING));
+            }
             if (mTcpListener != null) {
                 mTcpListener.onStarted(this, true);
             }
@@ -53,6 +66,8 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
     protected void onClick() {
         super.onClick();
 
+        SuppServiceQueryCache.invalidate(mPhone.getSubId(),
+                SuppServiceQueryCache.QUERY_CALL_WAITING);
         mPhone.setCallWaiting(isChecked(),
                 mHandler.obtainMessage(MyHandler.MESSAGE_SET_CALL_WAITING));
         if (mTcpListener != null) {
@@ -78,6 +93,11 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
 
         private void handleGetCallWaitingResponse(Message msg) {
             AsyncResult ar = (AsyncResult) msg.obj;
+            if (mQueryStartTime != 0) {
+                SuppServiceQueryCache.onQueryComplete(mPhone.getSubId(),
+                        SuppServiceQueryCache.QUERY_CALL_WAITING, mQueryStartTime, ar);
+                mQueryStartTime = 0;
+            }
 
             if (mTcpListener != null) {
                 if (msg.arg2 == MESSAGE_SET_CALL_WAITING) {
@@ -132,6 +152,7 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
             }
             if (DBG) Log.d(LOG_TAG, "handleSetCallWaitingResponse: re get");
 
+            mQueryStartTime = SystemClock.elapsedRealtime();
             mPhone.getCallWaiting(obtainMessage(MESSAGE_GET_CALL_WAITING,
                     MESSAGE_SET_CALL_WAITING, MESSAGE_SET_CALL_WAITING, ar.exception));
         }
@@ -4,6 +4,8 @@ package com.android.phone;
 import android.content.Context;
 
 import com.android.phone.vvm.omtp.utils.VvmDumpHandler;
+import com.android.services.telephony.CallSetupTracer;
+import com.android.services.telephony.PhoneCallEventDispatcher;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
@@ -15,6 +17,11 @@ public class DumpsysHandler {
 
     public static void dump(Context context, FileDescriptor fd, PrintWriter writer,
             String[] args) {
+        PhoneIdentityRegistry.dump(writer);
+        CallSetupTracer.dump(writer, args);
+        PhoneCallEventDispatcher.dump(writer);
+        SuppServiceQueryCache.dump(writer);
+        MobileNetworkSettings.dump(writer);
         // Dump OMTP visual voicemail log.
         VvmDumpHandler.dump(context, fd, writer, args);
     }
@@ -55,6 +55,11 @@ public class GsmUmtsAdditionalCallOptions extends TimeConsumingPreferenceActivit
                 mCWButton.init(this, false, mPhone);
             } else {
                 mCLIRButton.init(this, false, mPhone);
+                if (SuppServiceQueryCache.isParallelQueryAllowed(this)) {
+                    // The modem takes the queries together, don't chain them in onFinished().
+                    mInitIndex = mPreferences.size();
+                    mCWButton.init(this, false, mPhone);
+                }
             }
         } else {
             if (DBG) Log.d(LOG_TAG, "restore stored states");
@@ -176,7 +176,15 @@ public class GsmUmtsCallForwardOptions extends TimeConsumingPreferenceActivity
         if (mFirstResume) {
             if (mIcicle == null) {
                 if (DBG) Log.d(LOG_TAG, "start to init ");
-                mPreferences.get(mInitIndex).init(this, false, mPhone, mServiceClass);
+                if (SuppServiceQueryCache.isParallelQueryAllowed(this)) {
+                    // The modem takes the queries together, don't chain them in onFinished().
+                    mInitIndex = mPreferences.size();
+                    for (CallForwardEditPreference pref : mPreferences) {
+                        pref.init(this, false, mPhone, mServiceClass);
+                    }
+                } else {
+                    mPreferences.get(mInitIndex).init(this, false, mPhone, mServiceClass);
+                }
             } else {
                 mInitIndex = mPreferences.size();
 
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.phone;
+
+/**
+ * Latency histogram with fixed buckets in milliseconds, for dumpsys. Not thread safe.
+ */
+public class LatencyHistogram {
+    private final long[] mBucketLimits;
+
+    // The last bucket counts everything above the highest limit.
+    private final int[] mCounts;
+    private int mCount;
+    private long mTotal;
+    private long mMax;
+
+    /**
+     * @param bucketLimits the upper limits of the buckets, in increasing order.
+     */
+    public LatencyHistogram(long[] bucketLimits) {
+        mBucketLimits = bucketLimits;
+        mCounts = new int[bucketLimits.length + 1];
+    }
+
+    public void add(long millis) {
+        int bucket = 0;
+        while (bucket < mBucketLimits.length && millis > mBucketLimits[bucket]) {
+            bucket++;
+        }
+        mCounts[bucket]++;
+        mCount++;
+        mTotal += millis;
+        mMax = Math.max(mMax, millis);
+    }
+
+    @Override
+    public String toString() {
+        if (mCount == 0) {
+            return "n=0";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("n=").append(mCount)
+                .append(" avg=").append(mTotal / mCount)
+                .append("ms max=").append(mMax).append("ms [");
+        boolean first = true;
+        for (int i = 0; i < mCounts.length; i++) {
+            if (mCounts[i] == 0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(' ');
+            }
+            first = false;
+            sb.append(i < mBucketLimits.length ? "<=" + mBucketLimits[i]
+                    : ">" + mBucketLimits[mBucketLimits.length - 1])
+                    .append(':').append(mCounts[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
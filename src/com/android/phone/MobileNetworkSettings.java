@@ -24,6 +24,7 @@ import com.android.internal.telephony.TelephonyIntents;
 import com.android.internal.telephony.TelephonyProperties;
 import com.android.settingslib.RestrictedLockUtils;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -38,10 +39,12 @@ import android.content.IntentFilter;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.net.Uri;
 import android.os.AsyncResult;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.os.PersistableBundle;
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.os.UserHandle;
 import android.os.UserManager;
@@ -57,6 +60,7 @@ import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.TabHost.OnTabChangeListener;
@@ -135,7 +139,123 @@ public class MobileNetworkSettings extends PreferenceActivity
     private Preference mClickedPreference;
     private boolean mShow4GForLTE;
     private boolean mIsGlobalCdma;
+    private boolean mIsSupportTdscdma;
     private boolean mUnavailable;
+    private boolean mResumed;
+    private boolean mListeningToCallState;
+
+    // The loaded state of each subscription, kept while the activity is in the foreground so that
+    // switching tabs doesn't read it again.
+    private final SparseArray<BodySnapshot> mBodySnapshots = new SparseArray<>();
+    private BodyLoader mBodyLoader;
+
+    // Upper limits of the latency buckets of the body updates, in milliseconds.
+    private static final long[] BODY_BUCKET_LIMITS = {
+            5, 10, 25, 50, 100, 250, 500, 1000, 2500
+    };
+
+    // Timings of the body updates. Guarded by sBodyTimings.
+    private static final BodyTimings sBodyTimings = new BodyTimings();
+
+    /**
+     * The state {@link #bindBody} shows for one subscription. It comes from settings, the carrier
+     * config, IMS and the radio, several of which are binder calls, so it is read off the main
+     * thread and applied to the preferences in one pass. The call state and whether the phone is
+     * roaming change on their own, so they are read when binding rather than kept here.
+     */
+    private static final class BodySnapshot {
+        final int subId;
+        final int phoneType;
+        final boolean isLteOnCdma;
+        final boolean isGlobalCdma;
+        final boolean isWorldMode;
+        final boolean isSupportTdscdma;
+        final int settingsNetworkMode;
+        final PersistableBundle carrierConfig;
+        // Null unless the phone type is GSM or CDMA.
+        final int[] enabledNetworksEntriesAndValues;
+        final boolean missingDataServiceUrl;
+        final boolean isVolteAvailable;
+        final boolean isNonTtyOrTtyOnVolteEnabled;
+        final boolean isEnhanced4gLteModeEnabled;
+        final boolean hasImsPhone;
+        final boolean isDataRoamingEnabled;
+
+        /**
+         * Reads the state of {@code phone}. Must not be called on the main thread.
+         */
+        BodySnapshot(Context context, Phone phone) {
+            subId = phone.getSubId();
+            phoneType = phone.getPhoneType();
+            isLteOnCdma = phone.getLteOnCdmaMode() == PhoneConstants.LTE_ON_CDMA_TRUE;
+            isDataRoamingEnabled = phone.getDataRoamingEnabled();
+            hasImsPhone = phone.getImsPhone() != null;
+            settingsNetworkMode = android.provider.Settings.Global.getInt(
+                    phone.getContext().getContentResolver(),
+                    android.provider.Settings.Global.PREFERRED_NETWORK_MODE + subId,
+                    preferredNetworkMode);
+            carrierConfig = PhoneGlobals.getInstance().getCarrierConfigForSubId(subId);
+            isGlobalCdma = isGlobalCDMA(carrierConfig, isLteOnCdma);
+            isWorldMode = isWorldMode(context);
+            isSupportTdscdma = isSupportTdscdma(context, subId);
+            enabledNetworksEntriesAndValues = phoneType == PhoneConstants.PHONE_TYPE_CDMA
+                    || phoneType == PhoneConstants.PHONE_TYPE_GSM
+                    ? getDeviceNetworkEntriesAndValues(context, subId, settingsNetworkMode,
+                            carrierConfig, isLteOnCdma, phoneType)
+                    : null;
+            missingDataServiceUrl = TextUtils.isEmpty(
+                    android.provider.Settings.Global.getString(context.getContentResolver(),
+                            android.provider.Settings.Global.SETUP_PREPAID_DATA_SERVICE_URL));
+            isVolteAvailable = ImsManager.isVolteEnabledByPlatform(context)
+                    && ImsManager.isVolteProvisionedOnDevice(context);
+            isNonTtyOrTtyOnVolteEnabled = ImsManager.isNonTtyOrTtyOnVolteEnabled(context);
+            isEnhanced4gLteModeEnabled = isNonTtyOrTtyOnVolteEnabled
+                    && ImsManager.isEnhanced4gLteModeSettingEnabledByUser(context);
+        }
+    }
+
+    /**
+     * Loads the {@link BodySnapshot} of a phone and shows it if that phone is still the current
+     * one.
+     */
+    private class BodyLoader extends AsyncTask<Void, Void, BodySnapshot> {
+        private final Phone mLoaderPhone;
+        private final long mStartTime = SystemClock.elapsedRealtime();
+
+        BodyLoader(Phone phone) {
+            mLoaderPhone = phone;
+        }
+
+        @Override
+        protected BodySnapshot doInBackground(Void... params) {
+            return new BodySnapshot(getApplicationContext(), mLoaderPhone);
+        }
+
+        @Override
+        protected void onPostExecute(BodySnapshot snapshot) {
+            synchronized (sBodyTimings) {
+                sBodyTimings.loads.add(SystemClock.elapsedRealtime() - mStartTime);
+            }
+            if (mBodyLoader == this) {
+                mBodyLoader = null;
+            }
+            if (isDestroyed()) {
+                return;
+            }
+            mBodySnapshots.put(snapshot.subId, snapshot);
+            if (mPhone == mLoaderPhone) {
+                bindBody(snapshot);
+            }
+        }
+    }
+
+    private static class BodyTimings {
+        // From the request to the snapshot being ready, off the main thread.
+        final LatencyHistogram loads = new LatencyHistogram(BODY_BUCKET_LIMITS);
+        // Applying a snapshot to the preferences, on the main thread.
+        final LatencyHistogram binds = new LatencyHistogram(BODY_BUCKET_LIMITS);
+        int cacheHits;
+    }
 
     private final PhoneStateListener mPhoneStateListener = new PhoneStateListener() {
         /*
@@ -163,6 +283,7 @@ public class MobileNetworkSettings extends PreferenceActivity
             // When the radio changes (ex: CDMA->GSM), refresh all options.
             mGsmUmtsOptions = null;
             mCdmaOptions = null;
+            mBodySnapshots.clear();
             updateBody();
         }
     }
@@ -172,6 +293,7 @@ public class MobileNetworkSettings extends PreferenceActivity
     public void onClick(DialogInterface dialog, int which) {
         if (which == DialogInterface.BUTTON_POSITIVE) {
             mPhone.setDataRoamingEnabled(true);
+            invalidateBody();
             mOkClicked = true;
         } else {
             // Reset the toggle
@@ -365,6 +487,7 @@ public class MobileNetworkSettings extends PreferenceActivity
             }
         }
         updatePhone(currentTab);
+        mBodySnapshots.clear();
         updateBody();
         if (DBG) log("initializeSubscriptions:-");
     }
@@ -410,7 +533,7 @@ public class MobileNetworkSettings extends PreferenceActivity
             if (DBG) log("onTabChanged:");
             // The User has changed tab; update the body.
             updatePhone(Integer.parseInt(tabId));
-            updateBody();
+            showBody();
         }
     };
 
@@ -474,6 +597,10 @@ public class MobileNetworkSettings extends PreferenceActivity
 
         mLteDataServicePref = prefSet.findPreference(BUTTON_CDMA_LTE_DATA_SERVICE_KEY);
 
+        // Show nothing until the state of the subscription has been loaded and bound, since the
+        // carrier may hide some of the preferences.
+        prefSet.removeAll();
+
         // Initialize mActiveSubInfo
         int max = mSubscriptionManager.getActiveSubscriptionInfoCountMax();
         mActiveSubInfos = new ArrayList<SubscriptionInfo>(max);
@@ -493,6 +620,10 @@ public class MobileNetworkSettings extends PreferenceActivity
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (mBodyLoader != null) {
+            mBodyLoader.cancel(false);
+            mBodyLoader = null;
+        }
         unregisterReceiver(mPhoneChangeReceiver);
     }
 
@@ -512,25 +643,14 @@ public class MobileNetworkSettings extends PreferenceActivity
 
         // Set UI state in onResume because a user could go home, launch some
         // app to change this setting's backend, and re-launch this settings app
-        // and the UI state would be inconsistent with actual state
-        mButtonDataRoam.setChecked(mPhone.getDataRoamingEnabled());
-
-        if (getPreferenceScreen().findPreference(BUTTON_PREFERED_NETWORK_MODE) != null
-                || getPreferenceScreen().findPreference(BUTTON_ENABLED_NETWORKS_KEY) != null)  {
-            updatePreferredNetworkUIFromDb();
-        }
-
-        if (ImsManager.isVolteEnabledByPlatform(this)
-                && ImsManager.isVolteProvisionedOnDevice(this)) {
-            TelephonyManager tm = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
-            tm.listen(mPhoneStateListener, PhoneStateListener.LISTEN_CALL_STATE);
+        // and the UI state would be inconsistent with actual state. onPause dropped the
+        // snapshots, so the state is read again off the main thread, unless a load is already
+        // under way. Binding it starts listening to the call state if VoLTE is available.
+        mResumed = true;
+        if (mBodyLoader == null) {
+            showBody();
         }
 
-        // NOTE: Buttons will be enabled/disabled in mPhoneStateListener
-        boolean enh4glteMode = ImsManager.isEnhanced4gLteModeSettingEnabledByUser(this)
-                && ImsManager.isNonTtyOrTtyOnVolteEnabled(this);
-        mButton4glte.setChecked(enh4glteMode);
-
         mSubscriptionManager.addOnSubscriptionsChangedListener(mOnSubscriptionsChangeListener);
 
         if (DBG) log("onResume:-");
@@ -541,14 +661,66 @@ public class MobileNetworkSettings extends PreferenceActivity
         return mActiveSubInfos.size() > 0;
     }
 
+    /**
+     * Shows the current subscription, from its snapshot if one is cached and otherwise once it has
+     * been loaded.
+     */
+    private void showBody() {
+        BodySnapshot snapshot = mBodySnapshots.get(mPhone.getSubId());
+        if (snapshot == null) {
+            loadBody();
+            return;
+        }
+        synchronized (sBodyTimings) {
+            sBodyTimings.cacheHits++;
+        }
+        bindBody(snapshot);
+    }
+
+    /**
+     * Reads the state of the current subscription again and shows it.
+     */
     private void updateBody() {
+        invalidateBody();
+        loadBody();
+    }
+
+    /**
+     * Drops the cached state of the current subscription, after one of its settings was written.
+     */
+    private void invalidateBody() {
+        mBodySnapshots.remove(mPhone.getSubId());
+    }
+
+    /**
+     * Drops the cached state of the current subscription if it shows another network mode than
+     * {@code networkMode}, which was just written. Every bind writes the mode it shows, which
+     * leaves the cache valid.
+     */
+    private void invalidateBodyIfChanged(int networkMode) {
+        BodySnapshot snapshot = mBodySnapshots.get(mPhone.getSubId());
+        if (snapshot != null && snapshot.settingsNetworkMode != networkMode) {
+            invalidateBody();
+        }
+    }
+
+    private void loadBody() {
+        if (mBodyLoader != null) {
+            mBodyLoader.cancel(false);
+        }
+        mBodyLoader = new BodyLoader(mPhone);
+        mBodyLoader.execute();
+    }
+
+    private void bindBody(BodySnapshot snapshot) {
+        final long start = SystemClock.elapsedRealtime();
         final Context context = getApplicationContext();
         PreferenceScreen prefSet = getPreferenceScreen();
-        boolean isLteOnCdma = mPhone.getLteOnCdmaMode() == PhoneConstants.LTE_ON_CDMA_TRUE;
-        final int phoneSubId = mPhone.getSubId();
+        boolean isLteOnCdma = snapshot.isLteOnCdma;
+        final int phoneSubId = snapshot.subId;
 
         if (DBG) {
-            log("updateBody: isLteOnCdma=" + isLteOnCdma + " phoneSubId=" + phoneSubId);
+            log("bindBody: isLteOnCdma=" + isLteOnCdma + " phoneSubId=" + phoneSubId);
         }
 
         if (prefSet != null) {
@@ -559,14 +731,11 @@ public class MobileNetworkSettings extends PreferenceActivity
             prefSet.addPreference(mButton4glte);
         }
 
-        int settingsNetworkMode = android.provider.Settings.Global.getInt(
-                mPhone.getContext().getContentResolver(),
-                android.provider.Settings.Global.PREFERRED_NETWORK_MODE + phoneSubId,
-                preferredNetworkMode);
+        int settingsNetworkMode = snapshot.settingsNetworkMode;
 
-        PersistableBundle carrierConfig =
-                PhoneGlobals.getInstance().getCarrierConfigForSubId(mPhone.getSubId());
-        mIsGlobalCdma = isGlobalCDMA(phoneSubId, isLteOnCdma);
+        PersistableBundle carrierConfig = snapshot.carrierConfig;
+        mIsGlobalCdma = snapshot.isGlobalCdma;
+        mIsSupportTdscdma = snapshot.isSupportTdscdma;
         if (carrierConfig.getBoolean(CarrierConfigManager.KEY_HIDE_CARRIER_NETWORK_SETTINGS_BOOL)) {
             prefSet.removePreference(mButtonPreferredNetworkMode);
             prefSet.removePreference(mButtonEnabledNetworks);
@@ -577,11 +746,11 @@ public class MobileNetworkSettings extends PreferenceActivity
             prefSet.removePreference(mButtonPreferredNetworkMode);
             prefSet.removePreference(mButtonEnabledNetworks);
 
-            final int phoneType = mPhone.getPhoneType();
+            final int phoneType = snapshot.phoneType;
             if (phoneType == PhoneConstants.PHONE_TYPE_CDMA) {
                 mCdmaOptions = new CdmaOptions(this, prefSet, mPhone);
                 // In World mode force a refresh of GSM Options.
-                if (isWorldMode()) {
+                if (snapshot.isWorldMode) {
                     mGsmUmtsOptions = null;
                 }
             } else if (phoneType == PhoneConstants.PHONE_TYPE_GSM) {
@@ -603,12 +772,12 @@ public class MobileNetworkSettings extends PreferenceActivity
             mGsmUmtsOptions = new GsmUmtsOptions(this, prefSet, phoneSubId);
         } else {
             prefSet.removePreference(mButtonPreferredNetworkMode);
-            final int phoneType = mPhone.getPhoneType();
+            final int phoneType = snapshot.phoneType;
             if (phoneType == PhoneConstants.PHONE_TYPE_CDMA) {
                 mCdmaOptions = new CdmaOptions(this, prefSet, mPhone);
 
                 // In World mode force a refresh of GSM Options.
-                if (isWorldMode()) {
+                if (snapshot.isWorldMode) {
                     mGsmUmtsOptions = null;
                 }
             } else if (phoneType == PhoneConstants.PHONE_TYPE_GSM) {
@@ -617,7 +786,7 @@ public class MobileNetworkSettings extends PreferenceActivity
                 throw new IllegalStateException("Unexpected phone type: " + phoneType);
             }
 
-            int[] ev = getDeviceNetworkEntriesAndValues(this, mPhone.getSubId(), settingsNetworkMode);
+            int[] ev = snapshot.enabledNetworksEntriesAndValues;
             mButtonEnabledNetworks.setEntries(ev[0]);
             mButtonEnabledNetworks.setEntryValues(ev[1]);
             mButtonEnabledNetworks.setOnPreferenceChangeListener(this);
@@ -625,10 +794,7 @@ public class MobileNetworkSettings extends PreferenceActivity
         }
 
 
-        final boolean missingDataServiceUrl = TextUtils.isEmpty(
-                android.provider.Settings.Global.getString(getContentResolver(),
-                        android.provider.Settings.Global.SETUP_PREPAID_DATA_SERVICE_URL));
-        if (!isLteOnCdma || missingDataServiceUrl) {
+        if (!isLteOnCdma || snapshot.missingDataServiceUrl) {
             prefSet.removePreference(mLteDataServicePref);
         } else {
             android.util.Log.d(LOG_TAG, "keep ltePref");
@@ -636,8 +802,7 @@ public class MobileNetworkSettings extends PreferenceActivity
 
         // Enable enhanced 4G LTE mode settings depending on whether exists on platform
         // or in multi-sim cases, depending on whether ImsPhone exists for that subscription
-        if (!(ImsManager.isVolteEnabledByPlatform(this)
-                && ImsManager.isVolteProvisionedOnDevice(this)) || (mPhone.getImsPhone() == null)) {
+        if (!snapshot.isVolteAvailable || !snapshot.hasImsPhone) {
             Preference pref = prefSet.findPreference(BUTTON_4G_LTE_KEY);
             if (pref != null) {
                 prefSet.removePreference(pref);
@@ -663,7 +828,10 @@ public class MobileNetworkSettings extends PreferenceActivity
         }
 
         // Get the networkMode from Settings.System and displays it
-        mButtonDataRoam.setChecked(mPhone.getDataRoamingEnabled());
+        mButtonDataRoam.setChecked(snapshot.isDataRoamingEnabled);
+        // NOTE: Buttons will be enabled/disabled in mPhoneStateListener
+        mButton4glte.setChecked(snapshot.isEnhanced4gLteModeEnabled);
+        setListeningToCallState(mResumed && snapshot.isVolteAvailable);
         mButtonEnabledNetworks.setValue(Integer.toString(settingsNetworkMode));
         mButtonPreferredNetworkMode.setValue(Integer.toString(settingsNetworkMode));
         UpdatePreferredNetworkModeSummary(settingsNetworkMode);
@@ -682,10 +850,10 @@ public class MobileNetworkSettings extends PreferenceActivity
          * change dynamically such as when hot swapping sims.
          */
         boolean hasActiveSubscriptions = hasActiveSubscriptions();
-        TelephonyManager tm = (TelephonyManager) getSystemService(
-                Context.TELEPHONY_SERVICE);
-        boolean canChange4glte = (tm.getCallState() == TelephonyManager.CALL_STATE_IDLE) &&
-                ImsManager.isNonTtyOrTtyOnVolteEnabled(getApplicationContext()) &&
+        boolean isCallStateIdle = TelephonyManager.from(context).getCallState()
+                == TelephonyManager.CALL_STATE_IDLE;
+        boolean canChange4glte = isCallStateIdle &&
+                snapshot.isNonTtyOrTtyOnVolteEnabled &&
                 carrierConfig.getBoolean(CarrierConfigManager.KEY_EDITABLE_ENHANCED_4G_LTE_BOOL);
         boolean useVariant4glteTitle = carrierConfig.getBoolean(
                 CarrierConfigManager.KEY_ENHANCED_4G_LTE_TITLE_VARIANT_BOOL);
@@ -729,6 +897,9 @@ public class MobileNetworkSettings extends PreferenceActivity
         if (ps != null) {
             ps.setEnabled(hasActiveSubscriptions);
         }
+        synchronized (sBodyTimings) {
+            sBodyTimings.binds.add(SystemClock.elapsedRealtime() - start);
+        }
     }
 
     @Override
@@ -736,17 +907,34 @@ public class MobileNetworkSettings extends PreferenceActivity
         super.onPause();
         if (DBG) log("onPause:+");
 
-        if (ImsManager.isVolteEnabledByPlatform(this)
-                && ImsManager.isVolteProvisionedOnDevice(this)) {
-            TelephonyManager tm = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
-            tm.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
-        }
+        mResumed = false;
+        setListeningToCallState(false);
 
         mSubscriptionManager
             .removeOnSubscriptionsChangedListener(mOnSubscriptionsChangeListener);
+        // The state may change while we are in the background.
+        mBodySnapshots.clear();
+        if (mBodyLoader != null) {
+            mBodyLoader.cancel(false);
+            mBodyLoader = null;
+        }
         if (DBG) log("onPause:-");
     }
 
+    /**
+     * Starts or stops listening to the call state, which enables the 'Enhanced 4G LTE Mode' only
+     * while idle.
+     */
+    private void setListeningToCallState(boolean listen) {
+        if (listen == mListeningToCallState) {
+            return;
+        }
+        mListeningToCallState = listen;
+        TelephonyManager tm = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
+        tm.listen(mPhoneStateListener,
+                listen ? PhoneStateListener.LISTEN_CALL_STATE : PhoneStateListener.LISTEN_NONE);
+    }
+
     /**
      * Implemented to support onPreferenceChangeListener to look for preference
      * changes specifically on CLIR.
@@ -878,6 +1066,7 @@ public class MobileNetworkSettings extends PreferenceActivity
                         .setOnDismissListener(this);
             } else {
                 mPhone.setDataRoamingEnabled(false);
+                invalidateBody();
             }
             return true;
         }
@@ -915,12 +1104,14 @@ public class MobileNetworkSettings extends PreferenceActivity
                     android.provider.Settings.Global.putInt(mPhone.getContext().getContentResolver(),
                             android.provider.Settings.Global.PREFERRED_NETWORK_MODE + phoneSubId,
                             networkMode );
+                    invalidateBodyIfChanged(networkMode);
                 }
                 if (getPreferenceScreen().findPreference(BUTTON_ENABLED_NETWORKS_KEY) != null)  {
                     networkMode = Integer.parseInt(mButtonEnabledNetworks.getValue());
                     android.provider.Settings.Global.putInt(mPhone.getContext().getContentResolver(),
                             android.provider.Settings.Global.PREFERRED_NETWORK_MODE + phoneSubId,
                             networkMode );
+                    invalidateBodyIfChanged(networkMode);
                 }
             } else {
                 if (DBG) {
@@ -1160,7 +1351,7 @@ public class MobileNetworkSettings extends PreferenceActivity
             case Phone.NT_MODE_LTE_TDSCDMA_WCDMA:
             case Phone.NT_MODE_LTE_TDSCDMA_CDMA_EVDO_GSM_WCDMA:
             case Phone.NT_MODE_LTE_CDMA_EVDO_GSM_WCDMA:
-                if (isSupportTdscdma()) {
+                if (mIsSupportTdscdma) {
                     mButtonEnabledNetworks.setValue(
                             Integer.toString(Phone.NT_MODE_LTE_TDSCDMA_CDMA_EVDO_GSM_WCDMA));
                     mButtonEnabledNetworks.setSummary(R.string.network_lte);
@@ -1286,10 +1477,6 @@ public class MobileNetworkSettings extends PreferenceActivity
         }
     }
 
-    private boolean isSupportTdscdma() {
-        return isSupportTdscdma(this, mPhone.getSubId());
-    }
-
     private static boolean isWorldMode(Context context) {
         boolean worldModeOn = false;
         final TelephonyManager tm = (TelephonyManager)
@@ -1347,9 +1534,7 @@ public class MobileNetworkSettings extends PreferenceActivity
         }
     }
 
-    private static boolean isGlobalCDMA(int subId, boolean isLteOnCdma) {
-        PersistableBundle carrierConfig =
-                PhoneGlobals.getInstance().getCarrierConfigForSubId(subId);
+    private static boolean isGlobalCDMA(PersistableBundle carrierConfig, boolean isLteOnCdma) {
         return isLteOnCdma
                 && carrierConfig.getBoolean(CarrierConfigManager.KEY_SHOW_CDMA_CHOICES_BOOL);
     }
@@ -1373,6 +1558,13 @@ public class MobileNetworkSettings extends PreferenceActivity
                 == PhoneConstants.LTE_ON_CDMA_TRUE;
         final int phoneType = TelephonyManager.from(context).getCurrentPhoneType(subId);
 
+        return getDeviceNetworkEntriesAndValues(context, subId, settingsNetworkMode,
+                carrierConfig, isLteOnCdma, phoneType);
+    }
+
+    private static int[] getDeviceNetworkEntriesAndValues(Context context, int subId,
+            int settingsNetworkMode, PersistableBundle carrierConfig, boolean isLteOnCdma,
+            int phoneType) {
         int[] ev = new int[2];
         if (phoneType == PhoneConstants.PHONE_TYPE_CDMA) {
             int lteForced = android.provider.Settings.Global.getInt(
@@ -1423,7 +1615,7 @@ public class MobileNetworkSettings extends PreferenceActivity
             } else if (!context.getResources().getBoolean(com.android.phone.R.bool.config_enabled_lte)) {
                 ev[0] = com.android.phone.R.array.enabled_networks_except_lte_choices;
                 ev[1] = com.android.phone.R.array.enabled_networks_except_lte_values;
-            } else if (isGlobalCDMA(subId, isLteOnCdma)) {
+            } else if (isGlobalCDMA(carrierConfig, isLteOnCdma)) {
                 ev[0] = com.android.phone.R.array.enabled_networks_cdma_choices;
                 ev[1] = com.android.phone.R.array.enabled_networks_cdma_values;
             } else {
@@ -1441,4 +1633,11 @@ public class MobileNetworkSettings extends PreferenceActivity
         }
         return ev;
     }
+
+    static void dump(PrintWriter writer) {
+        synchronized (sBodyTimings) {
+            writer.println("MobileNetworkSettings body: load " + sBodyTimings.loads + ", bind "
+                    + sBodyTimings.binds + ", cached " + sBodyTimings.cacheHits);
+        }
+    }
 }
@@ -30,13 +30,23 @@ import android.os.RemoteException;
 import android.telephony.SubscriptionManager;
 import com.android.internal.telephony.Phone;
 import com.android.internal.telephony.PhoneFactory;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.SparseArray;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Service code used to assist in querying the network for service
  * availability.
+ *
+ * Each phone has its own scan, which callbacks for that phone join while
+ * it runs. Successful results are kept for a while, so reopening the
+ * network selection screen does not start another scan of several
+ * minutes.
  */
 public class NetworkQueryService extends Service {
     // debug data
@@ -46,19 +56,51 @@ public class NetworkQueryService extends Service {
     // static events
     private static final int EVENT_NETWORK_SCAN_COMPLETED = 100;
 
-    // static states indicating the query status of the service
-    private static final int QUERY_READY = -1;
-    private static final int QUERY_IS_RUNNING = -2;
-
     // error statuses that will be retured in the callback.
     public static final int QUERY_OK = 0;
     public static final int QUERY_EXCEPTION = 1;
 
     static final String ACTION_LOCAL_BINDER = "com.android.phone.intent.action.LOCAL_BINDER";
-    
-    /** state of the query service */
-    private int mState;
-    
+
+    /** how long the results of a successful scan are handed out again */
+    private static final long RESULT_CACHE_TTL_MILLIS = 2 * 60 * 1000;
+
+    /**
+     * A scan running on one phone and the callbacks waiting for it.
+     */
+    private static class ScanSession {
+        final long startTime = SystemClock.elapsedRealtime();
+        final RemoteCallbackList<INetworkQueryServiceCallback> callbacks =
+                new RemoteCallbackList<INetworkQueryServiceCallback>();
+    }
+
+    /**
+     * The results of the last successful scan on one phone.
+     */
+    private static class ScanResult {
+        final long time = SystemClock.elapsedRealtime();
+        final List<OperatorInfo> operators;
+
+        ScanResult(List<OperatorInfo> operators) {
+            this.operators = operators;
+        }
+    }
+
+    /**
+     * Running scans by phone id, also used to synchronize access to
+     * the results and the scan statistics.
+     */
+    private final SparseArray<ScanSession> mScans = new SparseArray<ScanSession>();
+    private final SparseArray<ScanResult> mResults = new SparseArray<ScanResult>();
+
+    // scan statistics, guarded by mScans.
+    private int mScanCount;
+    private int mFailedScanCount;
+    private int mCacheHitCount;
+    private long mTotalScanMillis;
+    private long mMaxScanMillis;
+    private long mLastScanMillis;
+
     /**
      * Class for clients to access.  Because we know this service always
      * runs in the same process as its clients, we don't need to deal with
@@ -82,74 +124,46 @@ public class NetworkQueryService extends Service {
                 // if the scan is complete, broadcast the results.
                 // to all registerd callbacks.
                 case EVENT_NETWORK_SCAN_COMPLETED:
-                    if (DBG) log("scan completed, broadcasting results");
-                    broadcastQueryResults((AsyncResult) msg.obj);
+                    if (DBG) log("scan completed on phone " + msg.arg1 + ", broadcasting results");
+                    broadcastQueryResults(msg.arg1, (AsyncResult) msg.obj);
                     break;
             }
         }
     };
-    
-    /** 
-     * List of callback objects, also used to synchronize access to 
-     * itself and to changes in state.
-     */
-    final RemoteCallbackList<INetworkQueryServiceCallback> mCallbacks =
-        new RemoteCallbackList<INetworkQueryServiceCallback> ();
-    
+
     /**
      * Implementation of the INetworkQueryService interface.
      */
     private final INetworkQueryService.Stub mBinder = new INetworkQueryService.Stub() {
-        
+
         /**
          * Starts a query with a INetworkQueryServiceCallback object if
-         * one has not been started yet.  Ignore the new query request
-         * if the query has been started already.  Either way, place the
-         * callback object in the queue to be notified upon request 
-         * completion.
+         * one has not been started yet on the phone.  Ignore the new
+         * query request if the query has been started already.  Either
+         * way, place the callback object in the queue to be notified
+         * upon request completion.  Recent results are handed out
+         * without a query.
          */
         public void startNetworkQuery(INetworkQueryServiceCallback cb, int phoneId) {
-            if (cb != null) {
-                // register the callback to the list of callbacks.
-                synchronized (mCallbacks) {
-                    mCallbacks.register(cb);
-                    if (DBG) log("registering callback " + cb.getClass().toString());
-                    
-                    switch (mState) {
-                        case QUERY_READY:
-                            // TODO: we may want to install a timeout here in case we
-                            // do not get a timely response from the RIL.
-                            Phone phone = PhoneFactory.getPhone(phoneId);
-                            if (phone != null) {
-                                phone.getAvailableNetworks(
-                                        mHandler.obtainMessage(EVENT_NETWORK_SCAN_COMPLETED));
-                                mState = QUERY_IS_RUNNING;
-                                if (DBG) log("starting new query");
-                            } else {
-                                if (DBG) {
-                                    log("phone is null");
-                                }
-                            }
-                            break;
-                            
-                        // do nothing if we're currently busy.
-                        case QUERY_IS_RUNNING:
-                            if (DBG) log("query already in progress");
-                            break;
-                        default:
-                    }
-                }
-            }
+            startQuery(cb, phoneId, true /* useCachedResults */);
+        }
+
+        /**
+         * Like {@link #startNetworkQuery}, but never hands out the
+         * results of an earlier query.
+         */
+        public void startNewNetworkQuery(INetworkQueryServiceCallback cb, int phoneId) {
+            startQuery(cb, phoneId, false /* useCachedResults */);
         }
-        
+
         /**
          * Stops a query with a INetworkQueryServiceCallback object as
          * a token.
          */
         public void stopNetworkQuery(INetworkQueryServiceCallback cb) {
-            // currently we just unregister the callback, since there is 
-            // no way to tell the RIL to terminate the query request.  
-            // This means that the RIL may still be busy after the stop 
+            // currently we just unregister the callback, since there is
+            // no way to tell the RIL to terminate the query request.
+            // This means that the RIL may still be busy after the stop
             // request was made, but the state tracking logic ensures
             // that the delay will only last for 1 request even with
             // repeated button presses in the NetworkSetting activity.
@@ -161,17 +175,63 @@ public class NetworkQueryService extends Service {
          */
         public void unregisterCallback(INetworkQueryServiceCallback cb) {
             if (cb != null) {
-                synchronized (mCallbacks) {
+                synchronized (mScans) {
                     if (DBG) log("unregistering callback " + cb.getClass().toString());
-                    mCallbacks.unregister(cb);
+                    for (int i = 0; i < mScans.size(); i++) {
+                        mScans.valueAt(i).callbacks.unregister(cb);
+                    }
                 }
             }
         }
     };
 
-    @Override
-    public void onCreate() {
-        mState = QUERY_READY;        
+    private void startQuery(INetworkQueryServiceCallback cb, int phoneId,
+            boolean useCachedResults) {
+        if (cb == null) {
+            return;
+        }
+        synchronized (mScans) {
+            if (useCachedResults) {
+                ScanResult result = mResults.get(phoneId);
+                if (result != null && SystemClock.elapsedRealtime() - result.time
+                        < RESULT_CACHE_TTL_MILLIS) {
+                    if (DBG) log("returning cached results for phone " + phoneId);
+                    mCacheHitCount++;
+                    try {
+                        cb.onQueryComplete(result.operators, QUERY_OK);
+                    } catch (RemoteException e) {
+                    }
+                    return;
+                }
+            }
+
+            ScanSession scan = mScans.get(phoneId);
+            if (scan != null) {
+                // do nothing but wait if we're currently busy.
+                if (DBG) log("query already in progress on phone " + phoneId);
+                scan.callbacks.register(cb);
+                return;
+            }
+
+            // TODO: we may want to install a timeout here in case we
+            // do not get a timely response from the RIL.
+            Phone phone = PhoneFactory.getPhone(phoneId);
+            if (phone == null) {
+                if (DBG) log("phone is null");
+                try {
+                    cb.onQueryComplete(null, QUERY_EXCEPTION);
+                } catch (RemoteException e) {
+                }
+                return;
+            }
+            scan = new ScanSession();
+            scan.callbacks.register(cb);
+            if (DBG) log("registering callback " + cb.getClass().toString());
+            mScans.put(phoneId, scan);
+            phone.getAvailableNetworks(
+                    mHandler.obtainMessage(EVENT_NETWORK_SCAN_COMPLETED, phoneId, 0));
+            if (DBG) log("starting new query on phone " + phoneId);
+        }
     }
 
     /**
@@ -180,7 +240,7 @@ public class NetworkQueryService extends Service {
     @Override
     public void onStart(Intent intent, int startId) {
     }
-    
+
     /**
      * Handle the bind request.
      */
@@ -195,41 +255,77 @@ public class NetworkQueryService extends Service {
     }
 
     /**
-     * Broadcast the results from the query to all registered callback
-     * objects. 
+     * Broadcast the results from the query to all callback objects
+     * registered for the phone.
      */
-    private void broadcastQueryResults (AsyncResult ar) {
-        // reset the state.
-        synchronized (mCallbacks) {
-            mState = QUERY_READY;
-            
+    private void broadcastQueryResults(int phoneId, AsyncResult ar) {
+        synchronized (mScans) {
+            // reset the state.
+            ScanSession scan = mScans.get(phoneId);
+            mScans.remove(phoneId);
+            if (scan == null) {
+                return;
+            }
+            long duration = SystemClock.elapsedRealtime() - scan.startTime;
+
             // see if we need to do any work.
             if (ar == null) {
                 if (DBG) log("AsyncResult is null.");
+                scan.callbacks.kill();
                 return;
             }
-    
+
             // TODO: we may need greater accuracy here, but for now, just a
             // simple status integer will suffice.
             int exception = (ar.exception == null) ? QUERY_OK : QUERY_EXCEPTION;
-            if (DBG) log("AsyncResult has exception " + exception);
-            
+            if (DBG) log("AsyncResult has exception " + exception + ", scan took " + duration
+                    + "ms");
+
+            List<OperatorInfo> operators = (ArrayList<OperatorInfo>) ar.result;
+            mScanCount++;
+            mTotalScanMillis += duration;
+            mMaxScanMillis = Math.max(mMaxScanMillis, duration);
+            mLastScanMillis = duration;
+            if (exception == QUERY_OK) {
+                mResults.put(phoneId, new ScanResult(operators));
+            } else {
+                mFailedScanCount++;
+            }
+
             // Make the calls to all the registered callbacks.
-            for (int i = (mCallbacks.beginBroadcast() - 1); i >= 0; i--) {
-                INetworkQueryServiceCallback cb = mCallbacks.getBroadcastItem(i); 
+            for (int i = (scan.callbacks.beginBroadcast() - 1); i >= 0; i--) {
+                INetworkQueryServiceCallback cb = scan.callbacks.getBroadcastItem(i);
                 if (DBG) log("broadcasting results to " + cb.getClass().toString());
                 try {
-                    cb.onQueryComplete((ArrayList<OperatorInfo>) ar.result, exception);
+                    cb.onQueryComplete(operators, exception);
                 } catch (RemoteException e) {
                 }
             }
-            
+
             // finish up.
-            mCallbacks.finishBroadcast();
+            scan.callbacks.finishBroadcast();
+            scan.callbacks.kill();
         }
     }
-    
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        synchronized (mScans) {
+            writer.println("NetworkQueryService:");
+            writer.println("  scans: " + mScanCount + ", failed: " + mFailedScanCount
+                    + ", cache hits: " + mCacheHitCount);
+            if (mScanCount > 0) {
+                writer.println("  scan duration: avg " + mTotalScanMillis / mScanCount
+                        + "ms, max " + mMaxScanMillis + "ms, last " + mLastScanMillis + "ms");
+            }
+            for (int i = 0; i < mScans.size(); i++) {
+                writer.println("  phone " + mScans.keyAt(i) + ": scanning for "
+                        + (SystemClock.elapsedRealtime() - mScans.valueAt(i).startTime) + "ms");
+            }
+        }
+    }
+
     private static void log(String msg) {
         Log.d(LOG_TAG, msg);
-    }    
+    }
 }
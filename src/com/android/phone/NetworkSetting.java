@@ -163,7 +163,7 @@ public class NetworkSetting extends PreferenceActivity
             if (DBG) log("connection created, binding local service.");
             mNetworkQueryService = ((NetworkQueryService.LocalBinder) service).getService();
             // as soon as it is bound, run a query.
-            loadNetworksList();
+            loadNetworksList(false /* forceNewQuery */);
         }
 
         /** Handle the task of cleaning up the local binding */
@@ -193,7 +193,7 @@ public class NetworkSetting extends PreferenceActivity
         boolean handled = false;
 
         if (preference == mSearchButton) {
-            loadNetworksList();
+            loadNetworksList(true /* forceNewQuery */);
             handled = true;
         } else if (preference == mAutoSelect) {
             selectNetworkAutomatic();
@@ -416,7 +416,11 @@ public class NetworkSetting extends PreferenceActivity
         }, 3000);
     }
 
-    private void loadNetworksList() {
+    /**
+     * @param forceNewQuery whether to query the network even if it has
+     * been queried recently.
+     */
+    private void loadNetworksList(boolean forceNewQuery) {
         if (DBG) log("load networks list...");
 
         if (mIsForeground) {
@@ -425,7 +429,11 @@ public class NetworkSetting extends PreferenceActivity
 
         // delegate query request to the service.
         try {
-            mNetworkQueryService.startNetworkQuery(mCallback, mPhoneId);
+            if (forceNewQuery) {
+                mNetworkQueryService.startNewNetworkQuery(mCallback, mPhoneId);
+            } else {
+                mNetworkQueryService.startNetworkQuery(mCallback, mPhoneId);
+            }
         } catch (RemoteException e) {
             log("loadNetworksList: exception from startNetworkQuery " + e);
             if (mIsForeground) {
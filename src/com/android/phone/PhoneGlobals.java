@@ -343,6 +343,8 @@ public class PhoneGlobals extends ContextWrapper {
 
             PhoneUtils.registerIccStatus(mHandler, EVENT_SIM_NETWORK_LOCKED);
 
+            PhoneIdentityRegistry.init(this);
+
             // register for MMI/USSD
             mCM.registerForMmiComplete(mHandler, MMI_COMPLETE, null);
 
@@ -425,7 +427,7 @@ public class PhoneGlobals extends ContextWrapper {
     }
 
     public static Phone getPhone(int subId) {
-        return PhoneFactory.getPhone(SubscriptionManager.getPhoneId(subId));
+        return PhoneFactory.getPhone(PhoneIdentityRegistry.getPhoneIdForSubId(subId));
     }
 
     /* package */ CallManager getCallManager() {
@@ -622,6 +624,8 @@ public class PhoneGlobals extends ContextWrapper {
     private void onMMIComplete(AsyncResult r) {
         if (VDBG) Log.d(LOG_TAG, "onMMIComplete()...");
         MmiCode mmiCode = (MmiCode) r.result;
+        // The code may have changed call forwarding or call waiting.
+        SuppServiceQueryCache.invalidateAll(mmiCode.getPhone().getSubId());
         PhoneUtils.displayMMIComplete(mmiCode.getPhone(), getInstance(), mmiCode, null, null);
     }
 
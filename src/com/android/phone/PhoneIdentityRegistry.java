@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.phone;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.telecom.PhoneAccountHandle;
+import android.telephony.SubscriptionManager;
+import android.telephony.SubscriptionManager.OnSubscriptionsChangedListener;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.android.internal.telephony.Phone;
+import com.android.internal.telephony.PhoneFactory;
+import com.android.internal.telephony.TelephonyIntents;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps between ICCIDs, subscription ids, phone ids and PSTN {@link PhoneAccountHandle}s without
+ * walking every {@link Phone}.
+ * <p>
+ * The mappings are rebuilt when the subscriptions or a SIM state change, and published as an
+ * immutable snapshot, so lookups take no lock. A hit is checked against the phone it points to,
+ * and a miss falls back to the slow search, so a snapshot that is briefly out of date costs time
+ * but never gives a wrong answer.
+ */
+public class PhoneIdentityRegistry {
+    private static class Snapshot {
+        final Map<String, Integer> phoneIdByIccId = new ArrayMap<>();
+        final SparseIntArray phoneIdBySubId = new SparseIntArray();
+        final SparseArray<PhoneAccountHandle> handleBySubId = new SparseArray<>();
+    }
+
+    private static volatile Snapshot sSnapshot = new Snapshot();
+
+    private static final AtomicLong sHits = new AtomicLong();
+    private static final AtomicLong sMisses = new AtomicLong();
+    private static final AtomicLong sRebuilds = new AtomicLong();
+
+    private PhoneIdentityRegistry() {}
+
+    /**
+     * Starts listening for the events that change the mappings. Must be called once the phones
+     * have been created.
+     */
+    static void init(Context context) {
+        SubscriptionManager.from(context).addOnSubscriptionsChangedListener(
+                new OnSubscriptionsChangedListener() {
+                    @Override
+                    public void onSubscriptionsChanged() {
+                        rebuild();
+                    }
+                });
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                rebuild();
+            }
+        }, new IntentFilter(TelephonyIntents.ACTION_SIM_STATE_CHANGED));
+        rebuild();
+    }
+
+    /**
+     * Rebuilds the mappings from the current phones.
+     */
+    static void rebuild() {
+        Snapshot snapshot = new Snapshot();
+        for (Phone phone : PhoneFactory.getPhones()) {
+            int phoneId = phone.getPhoneId();
+            int subId = phone.getSubId();
+            String iccId = phone.getFullIccSerialNumber();
+            if (!TextUtils.isEmpty(iccId)) {
+                snapshot.phoneIdByIccId.put(iccId, phoneId);
+            }
+            if (SubscriptionManager.isValidSubscriptionId(subId)) {
+                snapshot.phoneIdBySubId.put(subId, phoneId);
+                // The handle is made from the ICCID, don't cache one made without it.
+                if (!TextUtils.isEmpty(iccId)) {
+                    snapshot.handleBySubId.put(subId,
+                            PhoneUtils.makePstnPhoneAccountHandle(phone));
+                }
+            }
+        }
+        sSnapshot = snapshot;
+        sRebuilds.incrementAndGet();
+    }
+
+    /**
+     * @return the phone whose SIM has {@code iccId}, or null.
+     */
+    public static Phone getPhoneForIccId(String iccId) {
+        if (TextUtils.isEmpty(iccId)) {
+            return null;
+        }
+        Integer phoneId = sSnapshot.phoneIdByIccId.get(iccId);
+        if (phoneId != null) {
+            Phone phone = PhoneFactory.getPhone(phoneId);
+            if (phone != null && iccId.equals(phone.getFullIccSerialNumber())) {
+                sHits.incrementAndGet();
+                return phone;
+            }
+        }
+        sMisses.incrementAndGet();
+        for (Phone phone : PhoneFactory.getPhones()) {
+            if (iccId.equals(phone.getFullIccSerialNumber())) {
+                return phone;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the phone id of {@code subId}, or
+     * {@link SubscriptionManager#INVALID_PHONE_INDEX}.
+     */
+    public static int getPhoneIdForSubId(int subId) {
+        int phoneId = sSnapshot.phoneIdBySubId.get(subId,
+                SubscriptionManager.INVALID_PHONE_INDEX);
+        if (isPhoneForSubId(phoneId, subId)) {
+            sHits.incrementAndGet();
+            return phoneId;
+        }
+        sMisses.incrementAndGet();
+        return SubscriptionManager.getPhoneId(subId);
+    }
+
+    /**
+     * @return the PSTN phone account handle of {@code subId}, or null if there is no phone for
+     * it.
+     */
+    public static PhoneAccountHandle getPhoneAccountHandleForSubId(int subId) {
+        Snapshot snapshot = sSnapshot;
+        PhoneAccountHandle handle = snapshot.handleBySubId.get(subId);
+        if (handle != null && isPhoneForSubId(snapshot.phoneIdBySubId.get(subId,
+                SubscriptionManager.INVALID_PHONE_INDEX), subId)) {
+            sHits.incrementAndGet();
+            return handle;
+        }
+        sMisses.incrementAndGet();
+        // Calling PhoneUtils.makePstnPhoneAccountHandle() with a phoneId might throw a NPE if the
+        // phone object cannot be found, so the Phone object should be retrieved and checked here.
+        Phone phone = PhoneFactory.getPhone(SubscriptionManager.getPhoneId(subId));
+        if (phone == null) {
+            return null;
+        }
+        return PhoneUtils.makePstnPhoneAccountHandle(phone);
+    }
+
+    private static boolean isPhoneForSubId(int phoneId, int subId) {
+        if (phoneId == SubscriptionManager.INVALID_PHONE_INDEX) {
+            return false;
+        }
+        Phone phone = PhoneFactory.getPhone(phoneId);
+        return phone != null && phone.getSubId() == subId;
+    }
+
+    static void dump(PrintWriter writer) {
+        Snapshot snapshot = sSnapshot;
+        writer.println("PhoneIdentityRegistry:");
+        writer.println("  rebuilds: " + sRebuilds.get() + ", hits: " + sHits.get()
+                + ", misses: " + sMisses.get());
+        for (int i = 0; i < snapshot.phoneIdBySubId.size(); i++) {
+            writer.println("  subId " + snapshot.phoneIdBySubId.keyAt(i) + " -> phoneId "
+                    + snapshot.phoneIdBySubId.valueAt(i));
+        }
+        writer.println("  SIMs with ICCID: " + snapshot.phoneIdByIccId.size());
+    }
+}
@@ -1037,7 +1037,7 @@ public class PhoneInterfaceManager extends ITelephony.Stub {
 
     // returns phone associated with the subId.
     private Phone getPhone(int subId) {
-        return PhoneFactory.getPhone(mSubscriptionController.getPhoneId(subId));
+        return PhoneFactory.getPhone(PhoneIdentityRegistry.getPhoneIdForSubId(subId));
     }
 
     private UiccCard getUiccCardUsingSubId(int subId) {
@@ -2576,7 +2576,7 @@ public class PhoneInterfaceManager extends ITelephony.Stub {
     @Override
     public void setDataEnabled(int subId, boolean enable) {
         enforceModifyPermission();
-        int phoneId = mSubscriptionController.getPhoneId(subId);
+        int phoneId = PhoneIdentityRegistry.getPhoneIdForSubId(subId);
         if (DBG) log("getDataEnabled: subId=" + subId + " phoneId=" + phoneId);
         Phone phone = PhoneFactory.getPhone(phoneId);
         if (phone != null) {
@@ -2605,7 +2605,7 @@ public class PhoneInterfaceManager extends ITelephony.Stub {
             mApp.enforceCallingOrSelfPermission(android.Manifest.permission.MODIFY_PHONE_STATE,
                     null);
         }
-        int phoneId = mSubscriptionController.getPhoneId(subId);
+        int phoneId = PhoneIdentityRegistry.getPhoneIdForSubId(subId);
         if (DBG) log("getDataEnabled: subId=" + subId + " phoneId=" + phoneId);
         Phone phone = PhoneFactory.getPhone(phoneId);
         if (phone != null) {
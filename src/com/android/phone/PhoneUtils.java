@@ -2481,15 +2481,7 @@ public class PhoneUtils {
     }
 
     private static Phone getPhoneFromIccId(String iccId) {
-        if (!TextUtils.isEmpty(iccId)) {
-            for (Phone phone : PhoneFactory.getPhones()) {
-                String phoneIccId = phone.getFullIccSerialNumber();
-                if (iccId.equals(phoneIccId)) {
-                    return phone;
-                }
-            }
-        }
-        return null;
+        return PhoneIdentityRegistry.getPhoneForIccId(iccId);
     }
 
     /**
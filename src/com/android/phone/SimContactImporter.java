@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.accounts.Account;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import android.provider.ContactsContract.Data;
+import android.provider.ContactsContract.RawContacts;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Imports the contacts of a SIM ADN cursor into the contacts provider.
+ * <p>
+ * The contacts are committed in batches of up to {@link #DEFAULT_BATCH_SIZE} contacts, one
+ * {@link ContentResolver#applyBatch} each, instead of one transaction per contact. The batches have
+ * no yield points: at a yield point a busy provider commits the work so far, and the contacts of a
+ * batch that then failed could not be told apart from those already committed. As each batch is one
+ * transaction, its contacts are imported again one at a time if it fails, so a bad entry only
+ * loses itself.
+ */
+class SimContactImporter {
+    private static final String LOG_TAG = "SimContactImporter";
+
+    static final int DEFAULT_BATCH_SIZE = 50;
+
+    // The provider refuses more operations than this between two yield points, which without
+    // yield points is the whole batch. Its limit is 500, keep clear of it.
+    private static final int MAX_OPERATIONS_PER_BATCH = 400;
+
+    private static final ContentValues sEmptyContentValues = new ContentValues();
+
+    private static final String EXISTING_CONTACT_SELECTION = Data.MIMETYPE + "=? AND "
+            + Phone.NUMBER + "=? AND " + Data.DISPLAY_NAME + "=?";
+
+    /**
+     * Told about the progress of {@link #importAll}.
+     */
+    interface Listener {
+        /**
+         * Called after each batch with the number of rows handled so far.
+         */
+        void onProgress(int processed);
+
+        /**
+         * @return whether the import should stop before the next batch.
+         */
+        boolean isCanceled();
+    }
+
+    static class NamePhoneTypePair {
+        final String name;
+        final int phoneType;
+        public NamePhoneTypePair(String nameWithPhoneType) {
+            // Look for /W /H /M or /O at the end of the name signifying the type
+            int nameLen = nameWithPhoneType.length();
+            if (nameLen - 2 >= 0 && nameWithPhoneType.charAt(nameLen - 2) == '/') {
+                char c = Character.toUpperCase(nameWithPhoneType.charAt(nameLen - 1));
+                if (c == 'W') {
+                    phoneType = Phone.TYPE_WORK;
+                } else if (c == 'M' || c == 'O') {
+                    phoneType = Phone.TYPE_MOBILE;
+                } else if (c == 'H') {
+                    phoneType = Phone.TYPE_HOME;
+                } else {
+                    phoneType = Phone.TYPE_OTHER;
+                }
+                name = nameWithPhoneType.substring(0, nameLen - 2);
+            } else {
+                phoneType = Phone.TYPE_OTHER;
+                name = nameWithPhoneType;
+            }
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final Account mAccount;
+    private final int mBatchSize;
+    private final boolean mSkipExisting;
+
+    private int mImported;
+    private int mSkipped;
+    private int mFailed;
+    private int mTransactions;
+
+    /**
+     * @param account the account to add the contacts to, or null for the local one.
+     * @param batchSize the most contacts to commit in one transaction.
+     * @param skipExisting whether to leave out contacts whose name and number are already in the
+     *        contacts provider.
+     */
+    SimContactImporter(ContentResolver resolver, Account account, int batchSize,
+            boolean skipExisting) {
+        mResolver = resolver;
+        mAccount = account;
+        mBatchSize = batchSize;
+        mSkipExisting = skipExisting;
+    }
+
+    /**
+     * Imports the contact at the current position of {@code cursor}.
+     *
+     * @return whether it was imported.
+     */
+    boolean importOne(Cursor cursor) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        addOperations(cursor, operations);
+        return applyBatch(operations);
+    }
+
+    /**
+     * Imports every contact of {@code cursor}, from its first row.
+     */
+    void importAll(Cursor cursor, Listener listener) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        // The cursor positions of the contacts in the pending batch, to retry them one by one.
+        ArrayList<Integer> positions = new ArrayList<>();
+        int processed = 0;
+
+        cursor.moveToPosition(-1);
+        while (!listener.isCanceled() && cursor.moveToNext()) {
+            processed++;
+            if (mSkipExisting && exists(cursor)) {
+                mSkipped++;
+            } else {
+                positions.add(cursor.getPosition());
+                addOperations(cursor, operations);
+            }
+            if (positions.size() >= mBatchSize
+                    || operations.size() >= MAX_OPERATIONS_PER_BATCH) {
+                commit(cursor, operations, positions);
+                listener.onProgress(processed);
+            }
+        }
+        if (!positions.isEmpty() && !listener.isCanceled()) {
+            commit(cursor, operations, positions);
+        }
+        listener.onProgress(processed);
+        Log.i(LOG_TAG, "importAll: imported " + mImported + ", skipped " + mSkipped
+                + ", failed " + mFailed + " in " + mTransactions + " transactions");
+    }
+
+    int getImportedCount() {
+        return mImported;
+    }
+
+    int getSkippedCount() {
+        return mSkipped;
+    }
+
+    int getFailedCount() {
+        return mFailed;
+    }
+
+    int getTransactionCount() {
+        return mTransactions;
+    }
+
+    private void commit(Cursor cursor, ArrayList<ContentProviderOperation> operations,
+            ArrayList<Integer> positions) {
+        if (applyBatch(operations)) {
+            mImported += positions.size();
+        } else {
+            int position = cursor.getPosition();
+            for (int contactPosition : positions) {
+                if (cursor.moveToPosition(contactPosition) && importOne(cursor)) {
+                    mImported++;
+                } else {
+                    mFailed++;
+                }
+            }
+            cursor.moveToPosition(position);
+        }
+        operations.clear();
+        positions.clear();
+    }
+
+    /**
+     * Builds the operations inserting the contact at the current position of {@code cursor}.
+     * The data rows refer back to the raw contact, which is the first operation added.
+     */
+    private void addOperations(Cursor cursor, ArrayList<ContentProviderOperation> operations) {
+        final NamePhoneTypePair namePhoneTypePair =
+                new NamePhoneTypePair(cursor.getString(ADNList.NAME_COLUMN));
+        final String phoneNumber = cursor.getString(ADNList.NUMBER_COLUMN);
+        final String emailAddresses = cursor.getString(ADNList.EMAILS_COLUMN);
+        final int rawContactIndex = operations.size();
+
+        ContentProviderOperation.Builder builder =
+                ContentProviderOperation.newInsert(RawContacts.CONTENT_URI);
+        if (mAccount != null) {
+            builder.withValue(RawContacts.ACCOUNT_NAME, mAccount.name);
+            builder.withValue(RawContacts.ACCOUNT_TYPE, mAccount.type);
+        } else {
+            builder.withValues(sEmptyContentValues);
+        }
+        operations.add(builder.build());
+
+        builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
+        builder.withValueBackReference(StructuredName.RAW_CONTACT_ID, rawContactIndex);
+        builder.withValue(Data.MIMETYPE, StructuredName.CONTENT_ITEM_TYPE);
+        builder.withValue(StructuredName.DISPLAY_NAME, namePhoneTypePair.name);
+        operations.add(builder.build());
+
+        builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
+        builder.withValueBackReference(Phone.RAW_CONTACT_ID, rawContactIndex);
+        builder.withValue(Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE);
+        builder.withValue(Phone.TYPE, namePhoneTypePair.phoneType);
+        builder.withValue(Phone.NUMBER, phoneNumber);
+        builder.withValue(Data.IS_PRIMARY, 1);
+        operations.add(builder.build());
+
+        if (!TextUtils.isEmpty(emailAddresses)) {
+            for (String emailAddress : emailAddresses.split(",")) {
+                builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
+                builder.withValueBackReference(Email.RAW_CONTACT_ID, rawContactIndex);
+                builder.withValue(Data.MIMETYPE, Email.CONTENT_ITEM_TYPE);
+                builder.withValue(Email.TYPE, Email.TYPE_MOBILE);
+                builder.withValue(Email.DATA, emailAddress);
+                operations.add(builder.build());
+            }
+        }
+    }
+
+    private boolean applyBatch(ArrayList<ContentProviderOperation> operations) {
+        mTransactions++;
+        try {
+            final ContentProviderResult[] results =
+                    mResolver.applyBatch(ContactsContract.AUTHORITY, operations);
+            // Without yield points, the batch either all succeeds or all fails.
+            return results.length > 0;
+        } catch (RemoteException e) {
+            Log.e(LOG_TAG, String.format("%s: %s", e.toString(), e.getMessage()));
+        } catch (OperationApplicationException e) {
+            Log.e(LOG_TAG, String.format("%s: %s", e.toString(), e.getMessage()));
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a contact with the name and number at the current position of
+     * {@code cursor} is already in the contacts provider.
+     */
+    private boolean exists(Cursor cursor) {
+        String name = new NamePhoneTypePair(cursor.getString(ADNList.NAME_COLUMN)).name;
+        String number = cursor.getString(ADNList.NUMBER_COLUMN);
+        if (TextUtils.isEmpty(name) || TextUtils.isEmpty(number)) {
+            return false;
+        }
+        Cursor existing = mResolver.query(Data.CONTENT_URI, new String[] { Data._ID },
+                EXISTING_CONTACT_SELECTION,
+                new String[] { Phone.CONTENT_ITEM_TYPE, number, name }, null);
+        if (existing == null) {
+            return false;
+        }
+        try {
+            return existing.getCount() > 0;
+        } finally {
+            existing.close();
+        }
+    }
+}
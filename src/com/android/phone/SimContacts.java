@@ -19,27 +19,13 @@ package com.android.phone;
 import android.accounts.Account;
 import android.app.ActionBar;
 import android.app.ProgressDialog;
-import android.content.ContentProviderOperation;
-import android.content.ContentProviderResult;
-import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnCancelListener;
 import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
-import android.content.OperationApplicationException;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.RemoteException;
-import android.provider.ContactsContract;
-import android.provider.ContactsContract.CommonDataKinds.Email;
-import android.provider.ContactsContract.CommonDataKinds.GroupMembership;
-import android.provider.ContactsContract.CommonDataKinds.Phone;
-import android.provider.ContactsContract.CommonDataKinds.StructuredName;
-import android.provider.ContactsContract.Data;
-import android.provider.ContactsContract.RawContacts;
 import android.telecom.PhoneAccount;
 import android.telephony.SubscriptionManager;
 import android.text.TextUtils;
@@ -56,51 +42,22 @@ import android.widget.SimpleCursorAdapter;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
-
 /**
  * SIM Address Book UI for the Phone app.
  */
 public class SimContacts extends ADNList {
     private static final String LOG_TAG = "SimContacts";
 
-    static final ContentValues sEmptyContentValues = new ContentValues();
-
     private static final int MENU_IMPORT_ONE = 1;
     private static final int MENU_IMPORT_ALL = 2;
     private ProgressDialog mProgressDialog;
 
     private Account mAccount;
 
-    private static class NamePhoneTypePair {
-        final String name;
-        final int phoneType;
-        public NamePhoneTypePair(String nameWithPhoneType) {
-            // Look for /W /H /M or /O at the end of the name signifying the type
-            int nameLen = nameWithPhoneType.length();
-            if (nameLen - 2 >= 0 && nameWithPhoneType.charAt(nameLen - 2) == '/') {
-                char c = Character.toUpperCase(nameWithPhoneType.charAt(nameLen - 1));
-                if (c == 'W') {
-                    phoneType = Phone.TYPE_WORK;
-                } else if (c == 'M' || c == 'O') {
-                    phoneType = Phone.TYPE_MOBILE;
-                } else if (c == 'H') {
-                    phoneType = Phone.TYPE_HOME;
-                } else {
-                    phoneType = Phone.TYPE_OTHER;
-                }
-                name = nameWithPhoneType.substring(0, nameLen - 2);
-            } else {
-                phoneType = Phone.TYPE_OTHER;
-                name = nameWithPhoneType;
-            }
-        }
-    }
-
     private class ImportAllSimContactsThread extends Thread
             implements OnCancelListener, OnClickListener {
 
-        boolean mCanceled = false;
+        volatile boolean mCanceled = false;
 
         public ImportAllSimContactsThread() {
             super("ImportAllSimContactsThread");
@@ -108,14 +65,19 @@ public class SimContacts extends ADNList {
 
         @Override
         public void run() {
-            final ContentValues emptyContentValues = new ContentValues();
-            final ContentResolver resolver = getContentResolver();
+            final SimContactImporter importer = new SimContactImporter(getContentResolver(),
+                    mAccount, SimContactImporter.DEFAULT_BATCH_SIZE, false /* skipExisting */);
+            importer.importAll(mCursor, new SimContactImporter.Listener() {
+                @Override
+                public void onProgress(int processed) {
+                    mProgressDialog.setProgress(processed);
+                }
 
-            mCursor.moveToPosition(-1);
-            while (!mCanceled && mCursor.moveToNext()) {
-                actuallyImportOneSimContact(mCursor, resolver, mAccount);
-                mProgressDialog.incrementProgressBy(1);
-            }
+                @Override
+                public boolean isCanceled() {
+                    return mCanceled;
+                }
+            });
 
             mProgressDialog.dismiss();
             finish();
@@ -135,84 +97,12 @@ public class SimContacts extends ADNList {
         }
     }
 
-    private static boolean actuallyImportOneSimContact(
-            final Cursor cursor, final ContentResolver resolver, Account account) {
-        final NamePhoneTypePair namePhoneTypePair =
-            new NamePhoneTypePair(cursor.getString(NAME_COLUMN));
-        final String name = namePhoneTypePair.name;
-        final int phoneType = namePhoneTypePair.phoneType;
-        final String phoneNumber = cursor.getString(NUMBER_COLUMN);
-        final String emailAddresses = cursor.getString(EMAILS_COLUMN);
-        final String[] emailAddressArray;
-        if (!TextUtils.isEmpty(emailAddresses)) {
-            emailAddressArray = emailAddresses.split(",");
-        } else {
-            emailAddressArray = null;
-        }
-
-        final ArrayList<ContentProviderOperation> operationList =
-            new ArrayList<ContentProviderOperation>();
-        ContentProviderOperation.Builder builder =
-            ContentProviderOperation.newInsert(RawContacts.CONTENT_URI);
-        String myGroupsId = null;
-        if (account != null) {
-            builder.withValue(RawContacts.ACCOUNT_NAME, account.name);
-            builder.withValue(RawContacts.ACCOUNT_TYPE, account.type);
-        } else {
-            builder.withValues(sEmptyContentValues);
-        }
-        operationList.add(builder.build());
-
-        builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
-        builder.withValueBackReference(StructuredName.RAW_CONTACT_ID, 0);
-        builder.withValue(Data.MIMETYPE, StructuredName.CONTENT_ITEM_TYPE);
-        builder.withValue(StructuredName.DISPLAY_NAME, name);
-        operationList.add(builder.build());
-
-        builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
-        builder.withValueBackReference(Phone.RAW_CONTACT_ID, 0);
-        builder.withValue(Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE);
-        builder.withValue(Phone.TYPE, phoneType);
-        builder.withValue(Phone.NUMBER, phoneNumber);
-        builder.withValue(Data.IS_PRIMARY, 1);
-        operationList.add(builder.build());
-
-        if (emailAddresses != null) {
-            for (String emailAddress : emailAddressArray) {
-                builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
-                builder.withValueBackReference(Email.RAW_CONTACT_ID, 0);
-                builder.withValue(Data.MIMETYPE, Email.CONTENT_ITEM_TYPE);
-                builder.withValue(Email.TYPE, Email.TYPE_MOBILE);
-                builder.withValue(Email.DATA, emailAddress);
-                operationList.add(builder.build());
-            }
-        }
-
-        if (myGroupsId != null) {
-            builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
-            builder.withValueBackReference(GroupMembership.RAW_CONTACT_ID, 0);
-            builder.withValue(Data.MIMETYPE, GroupMembership.CONTENT_ITEM_TYPE);
-            builder.withValue(GroupMembership.GROUP_SOURCE_ID, myGroupsId);
-            operationList.add(builder.build());
-        }
-
-        try {
-            final ContentProviderResult[] results = resolver.applyBatch(ContactsContract.AUTHORITY,
-                    operationList);
-            return results.length > 0; // Batch operations either all succeed or all fail.
-        } catch (RemoteException e) {
-            Log.e(LOG_TAG, String.format("%s: %s", e.toString(), e.getMessage()));
-        } catch (OperationApplicationException e) {
-            Log.e(LOG_TAG, String.format("%s: %s", e.toString(), e.getMessage()));
-        }
-        return false;
-    }
-
     private void importOneSimContact(int position) {
-        final ContentResolver resolver = getContentResolver();
         final Context context = getApplicationContext();
         if (mCursor.moveToPosition(position)) {
-            if (actuallyImportOneSimContact(mCursor, resolver, mAccount)){
+            final SimContactImporter importer = new SimContactImporter(getContentResolver(),
+                    mAccount, 1 /* batchSize */, false /* skipExisting */);
+            if (importer.importOne(mCursor)) {
                 Toast.makeText(context, R.string.singleContactImportedMsg, Toast.LENGTH_SHORT)
                         .show();
             } else {
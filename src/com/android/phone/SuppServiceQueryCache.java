@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.phone;
+
+import android.content.Context;
+import android.os.AsyncResult;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Remembers the results of the supplementary service queries made by the call settings screens,
+ * and times them.
+ * <p>
+ * Each query goes to the network and can take seconds, and the screens make one per preference
+ * every time they are opened. Results are kept per subscription and query for
+ * {@link #TTL_MILLIS}, so a screen reopened soon after shows them at once. The preferences
+ * drop the result of a query before they change the setting behind it, and the query made after
+ * the change stores the new one. A completed MMI code, such as one dialed to change call
+ * forwarding or call waiting, drops all the results of its subscription. Changes made from
+ * elsewhere, like another device or the carrier, show up once the results expire.
+ */
+final class SuppServiceQueryCache {
+
+    static final long TTL_MILLIS = 60 * 1000;
+
+    static final String QUERY_CALL_WAITING = "CW";
+    static final String QUERY_CLIR = "CLIR";
+
+    private static class Entry {
+        final Object result;
+        final long time;
+
+        Entry(Object result, long time) {
+            this.result = result;
+            this.time = time;
+        }
+    }
+
+    // Upper limits of the round trip buckets, in milliseconds.
+    private static final long[] BUCKET_LIMITS = {
+            100, 250, 500, 1000, 2500, 5000, 10000, 30000
+    };
+
+    // Both guarded by sEntries.
+    private static final ArrayMap<String, Entry> sEntries = new ArrayMap<>();
+    private static final Map<String, LatencyHistogram> sTimings = new ArrayMap<>();
+
+    private SuppServiceQueryCache() {}
+
+    /**
+     * @return the name of the call forwarding query for {@code reason} and {@code serviceClass}.
+     */
+    static String callForwardingQuery(int reason, int serviceClass) {
+        return "CF reason " + reason + " class " + serviceClass;
+    }
+
+    /**
+     * @return whether the call settings screens may send their queries to the network together
+     * rather than one after another.
+     */
+    static boolean isParallelQueryAllowed(Context context) {
+        return context.getResources().getBoolean(R.bool.config_parallel_supp_service_queries);
+    }
+
+    /**
+     * @return the result of {@code query} on {@code subId} if it is recent enough, or null.
+     */
+    static Object get(int subId, String query) {
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(getKey(subId, query));
+            if (entry == null || SystemClock.elapsedRealtime() - entry.time >= TTL_MILLIS) {
+                return null;
+            }
+            return entry.result;
+        }
+    }
+
+    /**
+     * Records the reply to {@code query} on {@code subId}, sent to the network at
+     * {@code startTime}, and keeps its result if it succeeded. An empty array, as a call
+     * forwarding query may return, is shown as an error and not kept either.
+     */
+    static void onQueryComplete(int subId, String query, long startTime, AsyncResult ar) {
+        long now = SystemClock.elapsedRealtime();
+        long roundTrip = now - startTime;
+        synchronized (sEntries) {
+            LatencyHistogram timing = sTimings.get(query);
+            if (timing == null) {
+                timing = new LatencyHistogram(BUCKET_LIMITS);
+                sTimings.put(query, timing);
+            }
+            timing.add(roundTrip);
+
+            String key = getKey(subId, query);
+            if (ar.exception == null && !(ar.userObj instanceof Throwable) && ar.result != null
+                    && !(ar.result instanceof Object[] && ((Object[]) ar.result).length == 0)) {
+                sEntries.put(key, new Entry(ar.result, now));
+            } else {
+                sEntries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drops the result of {@code query} on {@code subId}, before the setting is changed.
+     */
+    static void invalidate(int subId, String query) {
+        synchronized (sEntries) {
+            sEntries.remove(getKey(subId, query));
+        }
+    }
+
+    /**
+     * Drops all the results of {@code subId}, after an MMI code may have changed any of them.
+     */
+    static void invalidateAll(int subId) {
+        String prefix = getKey(subId, "");
+        synchronized (sEntries) {
+            for (int i = sEntries.size() - 1; i >= 0; i--) {
+                if (sEntries.keyAt(i).startsWith(prefix)) {
+                    sEntries.removeAt(i);
+                }
+            }
+        }
+    }
+
+    private static String getKey(int subId, String query) {
+        return subId + " " + query;
+    }
+
+    static void dump(PrintWriter writer) {
+        synchronized (sEntries) {
+            writer.println("SuppServiceQueryCache: " + sEntries.size() + " results cached");
+            for (Map.Entry<String, LatencyHistogram> entry : sTimings.entrySet()) {
+                writer.println("  " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+    }
+}
@@ -17,10 +17,8 @@
 package com.android.phone;
 
 import android.annotation.Nullable;
-import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
-import android.net.Uri;
 import android.provider.VoicemailContract;
 import android.provider.VoicemailContract.Status;
 import android.telecom.PhoneAccountHandle;
@@ -84,28 +82,33 @@ public class VoicemailStatus {
         }
 
         /**
-         * Apply the changes to the {@link VoicemailStatus} {@link #Editor}.
+         * Apply the changes to the {@link VoicemailStatus} {@link #Editor}. They are written by
+         * {@link VoicemailStatusWriter}, merged with the other changes to the account, when the
+         * current task ends or shortly after.
          *
-         * @return {@code true} if the changes were successfully applied, {@code false} otherwise.
+         * @return {@code true} if the changes will be written, {@code false} otherwise.
          */
         public boolean apply() {
             if (mPhoneAccountHandle == null) {
                 return false;
             }
-            mValues.put(Status.PHONE_ACCOUNT_COMPONENT_NAME,
-                    mPhoneAccountHandle.getComponentName().flattenToString());
-            mValues.put(Status.PHONE_ACCOUNT_ID, mPhoneAccountHandle.getId());
-            ContentResolver contentResolver = mContext.getContentResolver();
-            Uri statusUri = VoicemailContract.Status.buildSourceUri(mContext.getPackageName());
-            try {
-                contentResolver.insert(statusUri, mValues);
-            } catch (IllegalArgumentException iae) {
-                VvmLog.e(TAG, "apply :: failed to insert content resolver ", iae);
-                mValues.clear();
+            VoicemailStatusWriter.queue(mContext, mPhoneAccountHandle, mValues);
+            mValues.clear();
+            return true;
+        }
+
+        /**
+         * Apply the changes, and any waiting for the account, to the database now.
+         *
+         * @return {@code true} if the changes were successfully applied, {@code false} otherwise.
+         */
+        public boolean applyNow() {
+            if (mPhoneAccountHandle == null) {
                 return false;
             }
+            boolean written = VoicemailStatusWriter.write(mContext, mPhoneAccountHandle, mValues);
             mValues.clear();
-            return true;
+            return written;
         }
 
         public ContentValues getValues() {
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.phone;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.provider.VoicemailContract;
+import android.provider.VoicemailContract.Status;
+import android.telecom.PhoneAccountHandle;
+import android.util.ArrayMap;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.phone.vvm.omtp.VvmLog;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Writes the voicemail status of each account behind its {@link VoicemailStatus.Editor}s.
+ * <p>
+ * A task handling one operation applies many intermediate states, each of which used to be an
+ * insert into the voicemail status table and a change notification to its observers. The values
+ * applied are now merged per account, later values replacing earlier ones, and written when the
+ * task ends, or {@link #FLUSH_DELAY_MILLIS} after the first of them so the user still sees
+ * progress during long tasks. Values already written during the current task are not written
+ * again; the table may be cleared by others in between tasks, so that is forgotten when a task
+ * ends.
+ */
+public class VoicemailStatusWriter {
+
+    private static final String TAG = "VvmStatusWriter";
+
+    static final long FLUSH_DELAY_MILLIS = 500;
+
+    private static final int MSG_FLUSH = 1;
+
+    private static class Pending {
+        Context context;
+        final ContentValues values = new ContentValues();
+    }
+
+    // Held while writing, so the writes of an account are not reordered. Taken before sPending.
+    private static final Object sWriteLock = new Object();
+
+    // Guarded by sPending.
+    private static final Map<PhoneAccountHandle, Pending> sPending = new ArrayMap<>();
+    private static Handler sHandler;
+    private static int sApplies;
+
+    // Guarded by sWriteLock. What was last written for each account during the current task.
+    private static final Map<PhoneAccountHandle, ContentValues> sWritten = new ArrayMap<>();
+    private static int sWrites;
+    private static int sWritesSkipped;
+
+    private VoicemailStatusWriter() {}
+
+    /**
+     * Merges {@code values} into those waiting to be written for {@code phoneAccountHandle}.
+     */
+    static void queue(Context context, PhoneAccountHandle phoneAccountHandle,
+            ContentValues values) {
+        synchronized (sPending) {
+            sApplies++;
+            Pending pending = sPending.get(phoneAccountHandle);
+            if (pending == null) {
+                pending = new Pending();
+                sPending.put(phoneAccountHandle, pending);
+            }
+            pending.context = context;
+            pending.values.putAll(values);
+            Handler handler = getHandler();
+            if (!handler.hasMessages(MSG_FLUSH)) {
+                handler.sendEmptyMessageDelayed(MSG_FLUSH, FLUSH_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code values}, after those waiting for {@code phoneAccountHandle}, now.
+     *
+     * @return {@code false} if the provider refused them.
+     */
+    static boolean write(Context context, PhoneAccountHandle phoneAccountHandle,
+            ContentValues values) {
+        synchronized (sWriteLock) {
+            Pending pending;
+            synchronized (sPending) {
+                sApplies++;
+                pending = sPending.remove(phoneAccountHandle);
+            }
+            if (pending == null) {
+                pending = new Pending();
+            }
+            pending.context = context;
+            pending.values.putAll(values);
+            return writeLocked(phoneAccountHandle, pending);
+        }
+    }
+
+    /**
+     * Writes the values waiting for every account now, and forgets what was written. Called when
+     * a task ends.
+     */
+    public static void flush() {
+        synchronized (sWriteLock) {
+            flushLocked();
+            sWritten.clear();
+        }
+    }
+
+    private static void flushLocked() {
+        ArrayList<PhoneAccountHandle> phoneAccountHandles;
+        synchronized (sPending) {
+            if (sPending.isEmpty()) {
+                return;
+            }
+            phoneAccountHandles = new ArrayList<>(sPending.keySet());
+        }
+        for (PhoneAccountHandle phoneAccountHandle : phoneAccountHandles) {
+            Pending pending;
+            synchronized (sPending) {
+                pending = sPending.remove(phoneAccountHandle);
+            }
+            if (pending != null) {
+                writeLocked(phoneAccountHandle, pending);
+            }
+        }
+    }
+
+    /**
+     * Must hold sWriteLock.
+     */
+    private static boolean writeLocked(PhoneAccountHandle phoneAccountHandle, Pending pending) {
+        ContentValues written = sWritten.get(phoneAccountHandle);
+        if (written != null && containsAll(written, pending.values)) {
+            sWritesSkipped++;
+            return true;
+        }
+
+        pending.values.put(Status.PHONE_ACCOUNT_COMPONENT_NAME,
+                phoneAccountHandle.getComponentName().flattenToString());
+        pending.values.put(Status.PHONE_ACCOUNT_ID, phoneAccountHandle.getId());
+        Uri statusUri = VoicemailContract.Status.buildSourceUri(pending.context.getPackageName());
+        try {
+            pending.context.getContentResolver().insert(statusUri, pending.values);
+        } catch (IllegalArgumentException iae) {
+            VvmLog.e(TAG, "write :: failed to insert content resolver ", iae);
+            // The table may now hold anything.
+            sWritten.remove(phoneAccountHandle);
+            return false;
+        }
+        sWrites++;
+        if (written == null) {
+            written = new ContentValues();
+            sWritten.put(phoneAccountHandle, written);
+        }
+        written.putAll(pending.values);
+        return true;
+    }
+
+    private static boolean containsAll(ContentValues written, ContentValues values) {
+        for (String key : values.keySet()) {
+            if (!written.containsKey(key) || !Objects.equals(written.get(key), values.get(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Must hold sPending.
+     */
+    private static Handler getHandler() {
+        if (sHandler == null) {
+            HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sHandler = new Handler(thread.getLooper()) {
+                @Override
+                public void handleMessage(Message msg) {
+                    if (msg.what == MSG_FLUSH) {
+                        synchronized (sWriteLock) {
+                            flushLocked();
+                        }
+                    }
+                }
+            };
+        }
+        return sHandler;
+    }
+
+    public static void dump(IndentingPrintWriter writer) {
+        synchronized (sWriteLock) {
+            synchronized (sPending) {
+                writer.println("VoicemailStatusWriter: applies " + sApplies + ", writes " + sWrites
+                        + ", redundant writes skipped " + sWritesSkipped + ", accounts pending "
+                        + sPending.size());
+            }
+        }
+    }
+}
@@ -47,6 +47,11 @@ public class FetchProfile extends ArrayList<Fetchable> {
          */
         ENVELOPE,
 
+        /**
+         * Download only the size of the message.
+         */
+        SIZE,
+
         /**
          * Download the structure of the message. This maps directly to IMAP's BODYSTRUCTURE
          * and may map to other providers.
@@ -20,12 +20,15 @@ import android.net.Network;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.phone.common.mail.store.ImapStore;
+import com.android.phone.common.mail.store.imap.ImapTracer;
 import com.android.phone.common.mail.utils.LogUtils;
 import com.android.phone.vvm.omtp.OmtpEvents;
 import com.android.phone.vvm.omtp.imap.ImapHelper;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -66,6 +69,8 @@ public class MailTransport {
     private final int mFlags;
     private SocketCreator mSocketCreator;
     private InetSocketAddress mAddress;
+    private long mBytesSent;
+    private long mBytesReceived;
 
     public MailTransport(Context context, ImapHelper imapHelper, Network network, String address,
             int port, int flags) {
@@ -103,6 +108,7 @@ public class MailTransport {
 
         List<InetSocketAddress> socketAddresses = new ArrayList<InetSocketAddress>();
 
+        long startTime = ImapTracer.now();
         if (mNetwork == null) {
             socketAddresses.add(new InetSocketAddress(mHost, mPort));
         } else {
@@ -121,13 +127,16 @@ public class MailTransport {
                 throw new MessagingException(MessagingException.IOERROR, ioe.toString());
             }
         }
+        ImapTracer.recordPhase(ImapTracer.PHASE_DNS, startTime);
 
         boolean success = false;
         while (socketAddresses.size() > 0) {
             mSocket = createSocket();
             try {
                 mAddress = socketAddresses.remove(0);
+                startTime = ImapTracer.now();
                 mSocket.connect(mAddress, SOCKET_CONNECT_TIMEOUT);
+                ImapTracer.recordPhase(ImapTracer.PHASE_TCP, startTime);
 
                 if (canTrySslSecurity()) {
                     /*
@@ -137,8 +146,7 @@ public class MailTransport {
                      */
                     reopenTls();
                 } else {
-                    mIn = new BufferedInputStream(mSocket.getInputStream(), 1024);
-                    mOut = new BufferedOutputStream(mSocket.getOutputStream(), 512);
+                    createStreams();
                     mSocket.setSoTimeout(SOCKET_READ_TIMEOUT);
                 }
                 success = true;
@@ -201,6 +209,7 @@ public class MailTransport {
     public void reopenTls() throws MessagingException {
         try {
             LogUtils.d(TAG, "open: converting to TLS socket");
+            long startTime = ImapTracer.now();
             mSocket = HttpsURLConnection.getDefaultSSLSocketFactory()
                     .createSocket(mSocket, mAddress.getHostName(), mAddress.getPort(), true);
             // After the socket connects to an SSL server, confirm that the hostname is as
@@ -209,9 +218,8 @@ public class MailTransport {
                 verifyHostname(mSocket, mHost);
             }
             mSocket.setSoTimeout(SOCKET_READ_TIMEOUT);
-            mIn = new BufferedInputStream(mSocket.getInputStream(), 1024);
-            mOut = new BufferedOutputStream(mSocket.getOutputStream(), 512);
-
+            createStreams();
+            ImapTracer.recordPhase(ImapTracer.PHASE_TLS, startTime);
         } catch (SSLException e) {
             LogUtils.d(TAG, e.toString());
             throw new CertificateValidationException(e.getMessage(), e);
@@ -221,6 +229,28 @@ public class MailTransport {
         }
     }
 
+    /**
+     * Creates buffered streams over {@link #mSocket} that count the bytes sent and received.
+     */
+    private void createStreams() throws IOException {
+        mIn = new BufferedInputStream(new CountingInputStream(mSocket.getInputStream()), 1024);
+        mOut = new BufferedOutputStream(new CountingOutputStream(mSocket.getOutputStream()), 512);
+    }
+
+    /**
+     * @return the number of bytes written to the socket, including before a TLS upgrade.
+     */
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    /**
+     * @return the number of bytes read from the socket, including before a TLS upgrade.
+     */
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
     /**
      * Lightweight version of SSLCertificateSocketFactory.verifyHostname, which provides this
      * service but is not in the public API.
@@ -344,4 +374,56 @@ public class MailTransport {
         }
         return ret;
     }
+
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                onBytesReceived(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                onBytesReceived(count);
+            }
+            return count;
+        }
+
+        private void onBytesReceived(int count) {
+            mBytesReceived += count;
+            ImapTracer.onBytesReceived(count);
+        }
+    }
+
+    private class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            onBytesSent(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            onBytesSent(len);
+        }
+
+        private void onBytesSent(int count) {
+            mBytesSent += count;
+            ImapTracer.onBytesSent(count);
+        }
+    }
 }
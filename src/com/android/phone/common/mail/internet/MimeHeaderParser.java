@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.phone.common.mail.internet;
+
+import com.android.phone.common.mail.MessagingException;
+
+/**
+ * Single pass parser for a block of header fields with no body, such as the literal returned for
+ * {@code BODY[HEADER.FIELDS (...)]}.
+ *
+ * <p>Unlike {@link org.apache.james.mime4j.MimeStreamParser} it doesn't build a body descriptor or
+ * a body, and folded values are unfolded while they are copied. Values end up in the same form
+ * mime4j followed by {@link MimeUtility#unfold(String)} would produce, so later unfolding is a
+ * no-op.
+ */
+public class MimeHeaderParser {
+
+    private MimeHeaderParser() {}
+
+    /**
+     * Parses the header fields in {@code s} into {@code header}.
+     *
+     * @return false if {@code s} is not a plain header block (for example it has content after the
+     * terminating empty line). {@code header} may be partially filled in that case.
+     */
+    public static boolean parse(String s, MimeHeader header) throws MessagingException {
+        final int length = s.length();
+        final StringBuilder value = new StringBuilder();
+        String name = null;
+        int pos = 0;
+        while (pos < length) {
+            int lineEnd = s.indexOf('\n', pos);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > pos && s.charAt(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            int cr = s.indexOf('\r', pos);
+            if (cr >= 0 && cr < contentEnd) {
+                // Bare CR. Leave it to mime4j's EOL conversion.
+                return false;
+            }
+            final int lineStart = pos;
+            pos = lineEnd + 1;
+
+            if (contentEnd == lineStart) {
+                // Empty line: end of the header. Only trailing white space may follow.
+                addField(header, name, value);
+                return isBlank(s, pos, length);
+            }
+
+            if (!isFieldChar(s.charAt(lineStart))) {
+                // Continuation of a folded field. As in mime4j, any line that can't start a field
+                // continues the previous one, and invalid fields are ignored along with their
+                // continuation lines.
+                if (name != null) {
+                    value.append(s, lineStart, contentEnd);
+                }
+                continue;
+            }
+
+            addField(header, name, value);
+            name = null;
+            int colon = s.indexOf(':', lineStart);
+            if (colon < 0 || colon >= contentEnd || !isValidName(s, lineStart, colon)) {
+                continue;
+            }
+            // Like MimeMessage's mime4j handler, keep the name untrimmed.
+            name = s.substring(lineStart, colon);
+            value.append(s, colon + 1, contentEnd);
+        }
+        addField(header, name, value);
+        return true;
+    }
+
+    private static void addField(MimeHeader header, String name, StringBuilder value)
+            throws MessagingException {
+        if (name != null) {
+            header.addHeader(name, value.toString().trim());
+        }
+        value.setLength(0);
+    }
+
+    /**
+     * @return whether the name is made of printable ASCII other than ':', ignoring white space
+     * before the colon. This matches mime4j's check.
+     */
+    private static boolean isValidName(String s, int start, int end) {
+        // mime4j trims the name before checking it.
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isFieldChar(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFieldChar(char c) {
+        return c >= 0x21 && c <= 0x7e && c != ':';
+    }
+
+    private static boolean isBlank(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
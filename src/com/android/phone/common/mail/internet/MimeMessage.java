@@ -23,6 +23,7 @@ import com.android.phone.common.mail.MessagingException;
 import com.android.phone.common.mail.Multipart;
 import com.android.phone.common.mail.Part;
 import com.android.phone.common.mail.utils.LogUtils;
+import com.android.phone.common.mail.utils.MailDateParser;
 
 import org.apache.james.mime4j.BodyDescriptor;
 import org.apache.james.mime4j.ContentHandler;
@@ -151,6 +152,48 @@ public class MimeMessage extends Message {
         mComplete = !parser.getPrematureEof();
     }
 
+    /**
+     * Replaces the header of this message with the header fields in {@code header}, a header
+     * block with no body such as the one returned by an IMAP header fetch. This is much cheaper
+     * than {@link #parse(InputStream)} since the content is not run through
+     * {@link MimeStreamParser}; addresses and dates are still only parsed on demand.
+     *
+     * <p>As with {@link #parse(InputStream)}, a multipart message gets an empty
+     * {@link MimeMultipart} body, set through {@link #setBody(Body)}. Other messages are left
+     * without a body.
+     *
+     * @return false if the header could not be handled, in which case the message is unchanged
+     * and {@link #parse(InputStream)} should be used instead.
+     */
+    public boolean parseHeaderFields(String header) throws MessagingException {
+        final MimeHeader mimeHeader = new MimeHeader();
+        if (!MimeHeaderParser.parse(header, mimeHeader)) {
+            return false;
+        }
+        Body body = null;
+        final String contentType = mimeHeader.getFirstHeader(MimeHeader.HEADER_CONTENT_TYPE);
+        if (contentType != null && contentType.regionMatches(true, 0, "multipart/", 0, 10)) {
+            try {
+                body = new MimeMultipart(contentType);
+            } catch (MessagingException e) {
+                // mime4j can't handle it either, let parse() report it the usual way.
+                return false;
+            }
+        }
+
+        mHeader = mimeHeader;
+        mInhibitLocalMessageId = true;
+        mFrom = null;
+        mTo = null;
+        mCc = null;
+        mBcc = null;
+        mReplyTo = null;
+        mSentDate = null;
+        setBody(body);
+        mComplete = true;
+        return true;
+    }
+
     /**
      * Return the internal mHeader value, with very lazy initialization.
      * The goal is to save memory by not creating the headers until needed.
@@ -170,31 +213,46 @@ public class MimeMessage extends Message {
     @Override
     public Date getSentDate() throws MessagingException {
         if (mSentDate == null) {
-            try {
-                DateTimeField field = (DateTimeField)Field.parse("Date: "
-                        + MimeUtility.unfoldAndDecode(getFirstHeader("Date")));
-                mSentDate = field.getDate();
-                // TODO: We should make it more clear what exceptions can be thrown here,
-                // and whether they reflect a normal or error condition.
-            } catch (Exception e) {
+            mSentDate = parseDateHeader("Date");
+            if (mSentDate == null) {
                 LogUtils.v(LogUtils.TAG, "Message missing Date header");
             }
         }
         if (mSentDate == null) {
             // If we still don't have a date, fall back to "Delivery-date"
-            try {
-                DateTimeField field = (DateTimeField)Field.parse("Date: "
-                        + MimeUtility.unfoldAndDecode(getFirstHeader("Delivery-date")));
-                mSentDate = field.getDate();
-                // TODO: We should make it more clear what exceptions can be thrown here,
-                // and whether they reflect a normal or error condition.
-            } catch (Exception e) {
+            mSentDate = parseDateHeader("Delivery-date");
+            if (mSentDate == null) {
                 LogUtils.v(LogUtils.TAG, "Message also missing Delivery-Date header");
             }
         }
         return mSentDate;
     }
 
+    /**
+     * Parses the first header named {@code name} as a date. Dates {@link MailDateParser} can't
+     * handle are handed to mime4j's {@link DateTimeField}.
+     *
+     * @return the date, or null if the header is missing or malformed.
+     */
+    private Date parseDateHeader(String name) throws MessagingException {
+        String value = MimeUtility.unfoldAndDecode(getFirstHeader(name));
+        if (value == null) {
+            return null;
+        }
+        Date date = MailDateParser.parseDate(value);
+        if (date != null) {
+            return date;
+        }
+        // TODO: We should make it more clear what exceptions can be thrown here,
+        // and whether they reflect a normal or error condition.
+        try {
+            DateTimeField field = (DateTimeField)Field.parse("Date: " + value);
+            return field.getDate();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     @Override
     public void setSentDate(Date sentDate) throws MessagingException {
         setHeader("Date", DATE_FORMAT.format(sentDate));
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.phone.common.mail.internet;
+
+import com.android.phone.common.mail.MessagingException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams the top level parts of a multipart message one at a time.
+ *
+ * <p>Unlike {@link MimeMessage#parse(InputStream)}, no {@link com.android.phone.common.mail.Body}
+ * is created for the parts. The caller looks at each part's header and either reads its content
+ * through {@link #getDecodedInputStream()} or moves on with {@link #next()}, in which case the
+ * content is skipped without being stored anywhere. Boundaries are found with a
+ * Boyer-Moore-Horspool search over a single reusable buffer, so memory use doesn't depend on the
+ * size of the message.
+ *
+ * <p>As with {@link MimeMessage#parse(InputStream)}, which runs the message through
+ * {@link org.apache.james.mime4j.EOLConvertingInputStream}, delimiters may be preceded by a bare
+ * LF as well as by CRLF.
+ *
+ * <p>Nested multiparts are returned as opaque parts.
+ */
+public class MimePartIterator {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final InputStream mIn;
+    private final MimeHeader mMessageHeader;
+    private final PartInputStream mPartInputStream = new PartInputStream();
+
+    // "\n--" + boundary, and the Boyer-Moore-Horspool shift table for it. A CR before the
+    // delimiter belongs to it too.
+    private byte[] mDelimiter;
+    private int[] mShift;
+
+    private byte[] mBuffer;
+    private int mStart;
+    private int mEnd;
+    // No delimiter starts in the buffer before this index.
+    private int mScanFrom;
+    private boolean mEof;
+
+    // Whether mStart is inside a part (or the preamble) rather than right after a delimiter.
+    private boolean mInPart;
+    private boolean mDone;
+    private MimeHeader mPartHeader;
+
+    /**
+     * Reads the message header from {@code in} and positions the iterator before the first part.
+     */
+    public MimePartIterator(InputStream in) throws IOException, MessagingException {
+        mIn = in;
+        mBuffer = new byte[BUFFER_SIZE];
+        mMessageHeader = readHeader();
+
+        String contentType = mMessageHeader.getFirstHeader(MimeHeader.HEADER_CONTENT_TYPE);
+        String boundary = null;
+        if (contentType != null && contentType.regionMatches(true, 0, "multipart/", 0, 10)) {
+            boundary = MimeUtility.getHeaderParameter(contentType, "boundary");
+        }
+        if (boundary == null || boundary.isEmpty()) {
+            mDone = true;
+            return;
+        }
+        setDelimiter("\n--" + boundary);
+        // Whatever precedes the first boundary is the preamble.
+        startBody();
+    }
+
+    /**
+     * @return the header of the message itself.
+     */
+    public MimeHeader getMessageHeader() {
+        return mMessageHeader;
+    }
+
+    /**
+     * Skips the rest of the current part, if any, and moves to the next one.
+     *
+     * @return false if there are no more parts, or the message isn't multipart.
+     */
+    public boolean next() throws IOException, MessagingException {
+        if (mDone) {
+            return false;
+        }
+        if (mInPart) {
+            while (mPartInputStream.skip(Long.MAX_VALUE) > 0) {
+            }
+            if (mDone) {
+                return false;
+            }
+        }
+
+        // Right after "\n--boundary". A following "--" marks the close delimiter; otherwise
+        // the rest of the line is transport padding.
+        if (peekByte() == '-') {
+            readByte();
+            if (peekByte() == '-') {
+                mDone = true;
+                return false;
+            }
+        }
+        int c;
+        while ((c = readByte()) != -1 && c != '\n') {
+        }
+        if (c == -1) {
+            mDone = true;
+            return false;
+        }
+
+        mPartHeader = readHeader();
+        startBody();
+        return true;
+    }
+
+    /**
+     * @return the header of the current part.
+     */
+    public MimeHeader getHeader() {
+        return mPartHeader;
+    }
+
+    /**
+     * @return the lower cased MIME type of the current part.
+     */
+    public String getMimeType() throws MessagingException {
+        String contentType = mPartHeader.getFirstHeader(MimeHeader.HEADER_CONTENT_TYPE);
+        if (contentType == null) {
+            return "text/plain";
+        }
+        return MimeUtility.getHeaderParameter(contentType, null).toLowerCase();
+    }
+
+    /**
+     * @return the content of the current part with its transfer encoding removed. The stream is
+     * only valid until the next call to {@link #next()}.
+     */
+    public InputStream getDecodedInputStream() throws MessagingException {
+        return MimeUtility.getInputStreamForContentTransferEncoding(mPartInputStream,
+                mPartHeader.getFirstHeader(MimeHeader.HEADER_CONTENT_TRANSFER_ENCODING));
+    }
+
+    private void setDelimiter(String delimiter) {
+        mDelimiter = new byte[delimiter.length()];
+        for (int i = 0; i < mDelimiter.length; i++) {
+            mDelimiter[i] = (byte) delimiter.charAt(i);
+        }
+        final int last = mDelimiter.length - 1;
+        mShift = new int[256];
+        for (int i = 0; i < mShift.length; i++) {
+            mShift[i] = mDelimiter.length;
+        }
+        for (int i = 0; i < last; i++) {
+            mShift[mDelimiter[i] & 0xFF] = last - i;
+        }
+        if (mBuffer.length < mDelimiter.length * 2) {
+            mBuffer = new byte[mDelimiter.length * 2];
+        }
+    }
+
+    /**
+     * Called at the start of a body. The line break that belongs to the delimiter of an empty body
+     * has already been consumed as the end of the header, so check for a bare "--boundary" first.
+     */
+    private void startBody() throws IOException {
+        mScanFrom = mStart;
+        final int length = mDelimiter.length - 1;
+        while (mEnd - mStart < length && fill()) {
+        }
+        if (mEnd - mStart >= length) {
+            int i = 0;
+            while (i < length && mBuffer[mStart + i] == mDelimiter[i + 1]) {
+                i++;
+            }
+            if (i == length) {
+                mStart += length;
+                mScanFrom = mStart;
+                mInPart = false;
+                return;
+            }
+        }
+        mInPart = true;
+    }
+
+    /**
+     * @return the index in the buffer of the next delimiter, or -1 if the buffered data doesn't
+     * contain a complete one.
+     */
+    private int findDelimiter() {
+        final int length = mDelimiter.length;
+        int i = Math.max(mScanFrom, mStart);
+        while (i + length <= mEnd) {
+            int j = length - 1;
+            while (j >= 0 && mBuffer[i + j] == mDelimiter[j]) {
+                j--;
+            }
+            if (j < 0) {
+                mScanFrom = i;
+                return i;
+            }
+            i += mShift[mBuffer[i + length - 1] & 0xFF];
+        }
+        mScanFrom = i;
+        return -1;
+    }
+
+    /**
+     * @return the number of bytes of the current part that are buffered and can be consumed,
+     * 0 if the part has ended, or -1 if more input is needed to tell.
+     */
+    private int available() {
+        int match = findDelimiter();
+        if (match >= 0) {
+            if (match > mStart && mBuffer[match - 1] == '\r') {
+                match--;
+            }
+            return match - mStart;
+        }
+        if (mEof) {
+            return mEnd - mStart;
+        }
+        // The tail of the buffer, and the CR before it, may be the beginning of a delimiter.
+        int safe = Math.min(mEnd - mStart, mScanFrom - mStart);
+        if (safe > 0 && mBuffer[mStart + safe - 1] == '\r') {
+            safe--;
+        }
+        return safe > 0 ? safe : -1;
+    }
+
+    /**
+     * Moves the buffered data to the front of the buffer and reads more after it.
+     *
+     * @return false at the end of the stream.
+     */
+    private boolean fill() throws IOException {
+        if (mEof) {
+            return false;
+        }
+        if (mStart > 0) {
+            System.arraycopy(mBuffer, mStart, mBuffer, 0, mEnd - mStart);
+            mEnd -= mStart;
+            mScanFrom = Math.max(0, mScanFrom - mStart);
+            mStart = 0;
+        }
+        int n = mIn.read(mBuffer, mEnd, mBuffer.length - mEnd);
+        if (n < 0) {
+            mEof = true;
+            return false;
+        }
+        mEnd += n;
+        return true;
+    }
+
+    private int peekByte() throws IOException {
+        if (mStart == mEnd && !fill()) {
+            return -1;
+        }
+        // fill() may return without data on a 0 byte read.
+        return mStart < mEnd ? mBuffer[mStart] & 0xFF : peekByte();
+    }
+
+    private int readByte() throws IOException {
+        int c = peekByte();
+        if (c != -1) {
+            mStart++;
+        }
+        return c;
+    }
+
+    /**
+     * Reads header lines up to and including the empty line that ends them.
+     */
+    private MimeHeader readHeader() throws IOException, MessagingException {
+        StringBuilder sb = new StringBuilder();
+        int lineStart = 0;
+        int c;
+        while ((c = readByte()) != -1) {
+            if (c == '\n') {
+                int lineEnd = sb.length();
+                if (lineEnd > lineStart && sb.charAt(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                if (lineEnd == lineStart) {
+                    break;
+                }
+                sb.setLength(lineEnd);
+                sb.append("\r\n");
+                lineStart = sb.length();
+            } else {
+                sb.append((char) c);
+            }
+        }
+        // Bare CRs aren't meaningful in a header, treat them as white space.
+        for (int i = 0; i < sb.length(); i++) {
+            if (sb.charAt(i) == '\r' && (i + 1 >= sb.length() || sb.charAt(i + 1) != '\n')) {
+                sb.setCharAt(i, ' ');
+            }
+        }
+        MimeHeader header = new MimeHeader();
+        MimeHeaderParser.parse(sb.toString(), header);
+        return header;
+    }
+
+    /**
+     * Raw content of the current part, ending before the next delimiter.
+     */
+    private class PartInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            if (consume(1) <= 0) {
+                return -1;
+            }
+            return mBuffer[mStart - 1] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = consume(len);
+            if (n <= 0) {
+                return -1;
+            }
+            System.arraycopy(mBuffer, mStart - n, b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n) {
+                int count = consume((int) Math.min(n - skipped, Integer.MAX_VALUE));
+                if (count <= 0) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return mInPart ? Math.max(0, MimePartIterator.this.available()) : 0;
+        }
+
+        /**
+         * Consumes up to {@code max} buffered bytes of the part.
+         *
+         * @return the number of bytes consumed, which end at mStart, or 0 at the end of the part.
+         */
+        private int consume(int max) throws IOException {
+            if (!mInPart) {
+                return 0;
+            }
+            int count;
+            while ((count = MimePartIterator.this.available()) < 0) {
+                fill();
+            }
+            if (count == 0) {
+                endPart();
+                return 0;
+            }
+            count = Math.min(count, max);
+            mStart += count;
+            return count;
+        }
+
+        private void endPart() {
+            mInPart = false;
+            int start = mStart;
+            if (start < mEnd && mBuffer[start] == '\r') {
+                start++;
+            }
+            if (start + mDelimiter.length <= mEnd) {
+                mStart = start + mDelimiter.length;
+                mScanFrom = mStart;
+            } else {
+                // Truncated message: the stream ended without a delimiter.
+                mDone = true;
+            }
+        }
+    }
+}
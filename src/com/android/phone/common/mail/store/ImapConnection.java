@@ -26,6 +26,7 @@ import com.android.phone.common.mail.store.imap.DigestMd5Utils;
 import com.android.phone.common.mail.store.imap.ImapConstants;
 import com.android.phone.common.mail.store.imap.ImapResponse;
 import com.android.phone.common.mail.store.imap.ImapResponseParser;
+import com.android.phone.common.mail.store.imap.ImapTracer;
 import com.android.phone.common.mail.store.imap.ImapUtility;
 import com.android.phone.common.mail.utils.LogUtils;
 import com.android.phone.vvm.omtp.OmtpEvents;
@@ -49,6 +50,8 @@ public class ImapConnection {
     private MailTransport mTransport;
     private ImapResponseParser mParser;
     private Set<String> mCapabilities = new ArraySet<>();
+    // The command waiting for its tagged response, if any.
+    private ImapTracer.Command mPendingCommand;
 
     static final String IMAP_REDACTED_LOG = "[IMAP command redacted]";
 
@@ -122,7 +125,9 @@ public class ImapConnection {
             maybeDoStartTls();
 
             // LOGIN
+            long startTime = ImapTracer.now();
             doLogin();
+            ImapTracer.recordPhase(ImapTracer.PHASE_AUTH, startTime);
         } catch (SSLException e) {
             LogUtils.d(TAG, "SSLException ", e);
             mImapStore.getImapHelper().handleEvent(OmtpEvents.DATA_SSL_EXCEPTION);
@@ -139,10 +144,10 @@ public class ImapConnection {
     void logout() {
         try {
             sendCommand(ImapConstants.LOGOUT, false);
-            if (!mParser.readResponse(true).is(0, ImapConstants.BYE)) {
+            if (!readTracedResponse(true).is(0, ImapConstants.BYE)) {
                 VvmLog.e(TAG, "Server did not respond LOGOUT with BYE");
             }
-            if (!mParser.readResponse(false).isOk()) {
+            if (!readTracedResponse(false).isOk()) {
                 VvmLog.e(TAG, "Server did not respond OK after LOGOUT");
             }
         } catch (IOException | MessagingException e) {
@@ -163,6 +168,7 @@ public class ImapConnection {
         destroyResponses();
         mParser = null;
         mImapStore = null;
+        abandonPendingCommand();
     }
 
     /**
@@ -336,7 +342,44 @@ public class ImapConnection {
     }
 
     public ImapResponse readResponse() throws IOException, MessagingException {
-        return mParser.readResponse(false);
+        return readTracedResponse(false);
+    }
+
+    /**
+     * Reads a response and passes it to the trace of the pending command, which is finished when
+     * its tagged response arrives or reading fails.
+     */
+    private ImapResponse readTracedResponse(boolean byeExpected)
+            throws IOException, MessagingException {
+        ImapTracer.Command command = mPendingCommand;
+        if (command == null) {
+            return mParser.readResponse(byeExpected);
+        }
+        ImapResponse response;
+        try {
+            response = mParser.readResponse(byeExpected);
+        } catch (IOException | MessagingException e) {
+            mPendingCommand = null;
+            command.finish(e.getClass().getSimpleName());
+            throw e;
+        }
+        command.onResponse();
+        if (response.isTagged()) {
+            mPendingCommand = null;
+            command.finish(response.getStatusOrEmpty().getString());
+        }
+        return response;
+    }
+
+    /**
+     * Finishes the trace of the pending command, whose tagged response won't be read.
+     */
+    private void abandonPendingCommand() {
+        ImapTracer.Command command = mPendingCommand;
+        if (command != null) {
+            mPendingCommand = null;
+            command.finish(ImapTracer.STATUS_ABANDONED);
+        }
     }
 
     public List<ImapResponse> executeSimpleCommand(String command)
@@ -373,6 +416,8 @@ public class ImapConnection {
         }
         String tag = Integer.toString(mNextCommandTag.incrementAndGet());
         String commandToSend = tag + " " + command;
+        abandonPendingCommand();
+        mPendingCommand = ImapTracer.startCommand(tag, command, mTransport);
         mTransport.writeLine(commandToSend, (sensitive ? IMAP_REDACTED_LOG : command));
         return tag;
     }
@@ -395,7 +440,7 @@ public class ImapConnection {
         final List<ImapResponse> responses = new ArrayList<ImapResponse>();
         ImapResponse response;
         do {
-            response = mParser.readResponse(false);
+            response = readTracedResponse(false);
             responses.add(response);
         } while (!(response.isTagged() || response.isContinuationRequest()));
 
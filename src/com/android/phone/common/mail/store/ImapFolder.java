@@ -33,6 +33,7 @@ import com.android.phone.common.mail.internet.BinaryTempFileBody;
 import com.android.phone.common.mail.internet.MimeBodyPart;
 import com.android.phone.common.mail.internet.MimeHeader;
 import com.android.phone.common.mail.internet.MimeMultipart;
+import com.android.phone.common.mail.internet.MimePartIterator;
 import com.android.phone.common.mail.internet.MimeUtility;
 import com.android.phone.common.mail.store.ImapStore.ImapException;
 import com.android.phone.common.mail.store.ImapStore.ImapMessage;
@@ -41,6 +42,7 @@ import com.android.phone.common.mail.store.imap.ImapElement;
 import com.android.phone.common.mail.store.imap.ImapList;
 import com.android.phone.common.mail.store.imap.ImapResponse;
 import com.android.phone.common.mail.store.imap.ImapString;
+import com.android.phone.common.mail.store.imap.ImapTempFileLiteral;
 import com.android.phone.common.mail.utils.LogUtils;
 import com.android.phone.common.mail.utils.Utility;
 import com.android.phone.vvm.omtp.OmtpEvents;
@@ -85,6 +87,22 @@ public class ImapFolder {
         public void messageRetrieved(Message message);
     }
 
+    /**
+     * Callback for {@link #fetchBodyParts}.
+     */
+    public interface BodyPartListener {
+        /**
+         * Called for each top level part of a fetched message, in order. Parts that are not read
+         * are skipped without being stored.
+         *
+         * @param mimeType the lower cased MIME type of the part.
+         * @param parts positioned on the part. Its streams are only valid during the call.
+         * @return false to skip the remaining parts of the message.
+         */
+        public boolean bodyPartRetrieved(Message message, String mimeType,
+                MimePartIterator parts) throws IOException, MessagingException;
+    }
+
     private void destroyResponses() {
         if (mConnection != null) {
             mConnection.destroyResponses();
@@ -261,6 +279,7 @@ public class ImapFolder {
          * FLAGS     - UID FETCH (FLAGS)
          * ENVELOPE  - UID FETCH (INTERNALDATE UID RFC822.SIZE FLAGS BODY.PEEK[
          *                            HEADER.FIELDS (date subject from content-type to cc)])
+         * SIZE      - UID FETCH (RFC822.SIZE)
          * STRUCTURE - UID FETCH (BODYSTRUCTURE)
          * BODY_SANE - UID FETCH (BODY.PEEK[]<0.N>) where N = max bytes returned
          * BODY      - UID FETCH (BODY.PEEK[])
@@ -278,6 +297,9 @@ public class ImapFolder {
             fetchFields.add(ImapConstants.RFC822_SIZE);
             fetchFields.add(ImapConstants.FETCH_FIELD_HEADERS);
         }
+        if (fp.contains(FetchProfile.Item.SIZE)) {
+            fetchFields.add(ImapConstants.RFC822_SIZE);
+        }
         if (fp.contains(FetchProfile.Item.STRUCTURE)) {
             fetchFields.add(ImapConstants.BODYSTRUCTURE);
         }
@@ -350,7 +372,12 @@ public class ImapFolder {
 
                         message.setInternalDate(internalDate);
                         message.setSize(size);
-                        message.parse(Utility.streamFromAsciiString(header));
+                        if (!message.parseHeaderFields(header)) {
+                            message.parse(Utility.streamFromAsciiString(header));
+                        }
+                    } else if (fp.contains(FetchProfile.Item.SIZE)) {
+                        message.setSize(fetchList.getKeyedStringOrEmpty(
+                                ImapConstants.RFC822_SIZE).getNumberOrZero());
                     }
                     if (fp.contains(FetchProfile.Item.STRUCTURE)) {
                         ImapList bs = fetchList.getKeyedListOrEmpty(
@@ -374,8 +401,7 @@ public class ImapFolder {
                         message.parse(bodyStream);
                     }
                     if (fetchPart != null) {
-                        InputStream bodyStream =
-                                fetchList.getKeyedStringOrEmpty("BODY[", true).getAsStream();
+                        ImapString bodyString = fetchList.getKeyedStringOrEmpty("BODY[", true);
                         String encodings[] = fetchPart.getHeader(
                                 MimeHeader.HEADER_CONTENT_TRANSFER_ENCODING);
 
@@ -389,11 +415,7 @@ public class ImapFolder {
                         }
 
                         try {
-                            // TODO Don't create 2 temp files.
-                            // decodeBody creates BinaryTempFileBody, but we could avoid this
-                            // if we implement ImapStringBody.
-                            // (We'll need to share a temp file.  Protect it with a ref-count.)
-                            message.setBody(decodeBody(mStore.getContext(), bodyStream,
+                            message.setBody(decodeBody(mStore.getContext(), bodyString,
                                     contentTransferEncoding, fetchPart.getSize(), listener));
                         } catch(Exception e) {
                             // TODO: Figure out what kinds of exceptions might actually be thrown
@@ -417,15 +439,78 @@ public class ImapFolder {
         }
     }
 
+    /**
+     * Fetches the whole body of {@code messages} and hands their top level parts to
+     * {@code listener} as they are parsed. Unlike fetching {@link FetchProfile.Item#BODY}, no
+     * {@link Body} is built, so parts the listener doesn't read cost no temp files or memory.
+     */
+    public void fetchBodyParts(Message[] messages, BodyPartListener listener)
+            throws MessagingException {
+        if (messages.length == 0) {
+            return;
+        }
+        checkOpen();
+        HashMap<String, Message> messageMap = new HashMap<String, Message>();
+        for (Message m : messages) {
+            messageMap.put(m.getUid(), m);
+        }
+
+        try {
+            mConnection.sendCommand(String.format(Locale.US,
+                    ImapConstants.UID_FETCH + " %s (%s %s)", ImapStore.joinMessageUids(messages),
+                    ImapConstants.UID, ImapConstants.FETCH_FIELD_BODY_PEEK), false);
+            ImapResponse response;
+            do {
+                response = null;
+                try {
+                    response = mConnection.readResponse();
+
+                    if (!response.isDataResponse(1, ImapConstants.FETCH)) {
+                        continue; // Ignore
+                    }
+                    final ImapList fetchList = response.getListOrEmpty(2);
+                    final String uid = fetchList.getKeyedStringOrEmpty(ImapConstants.UID)
+                            .getString();
+                    if (TextUtils.isEmpty(uid)) continue;
+
+                    Message message = messageMap.get(uid);
+                    if (message == null) continue;
+
+                    InputStream bodyStream =
+                            fetchList.getKeyedStringOrEmpty("BODY[]", true).getAsStream();
+                    MimePartIterator parts = new MimePartIterator(bodyStream);
+                    while (parts.next()) {
+                        if (!listener.bodyPartRetrieved(message, parts.getMimeType(), parts)) {
+                            break;
+                        }
+                    }
+                } finally {
+                    destroyResponses();
+                }
+            } while (!response.isTagged());
+        } catch (IOException ioe) {
+            mStore.getImapHelper().handleEvent(OmtpEvents.DATA_GENERIC_IMAP_IOE);
+            throw ioExceptionHandler(mConnection, ioe);
+        }
+    }
+
     /**
      * Removes any content transfer encoding from the stream and returns a Body.
      * This code is taken/condensed from MimeUtility.decodeBody
      */
-    private static Body decodeBody(Context context,InputStream in, String contentTransferEncoding,
-            int size, MessageRetrievalListener listener) throws IOException {
-        // Get a properly wrapped input stream
-        in = MimeUtility.getInputStreamForContentTransferEncoding(in, contentTransferEncoding);
+    private static Body decodeBody(Context context, ImapString literal,
+            String contentTransferEncoding, int size, MessageRetrievalListener listener)
+            throws IOException {
         BinaryTempFileBody tempBody = new BinaryTempFileBody();
+        if (literal instanceof ImapTempFileLiteral
+                && isIdentityEncoding(contentTransferEncoding)) {
+            // Nothing to decode, so the literal's temp file can become the body as is.
+            tempBody.setFile(((ImapTempFileLiteral) literal).detachFile().getAbsolutePath());
+            return tempBody;
+        }
+        // Get a properly wrapped input stream
+        InputStream in = MimeUtility.getInputStreamForContentTransferEncoding(
+                literal.getAsStream(), contentTransferEncoding);
         OutputStream out = tempBody.getOutputStream();
         try {
             byte[] buffer = new byte[COPY_BUFFER_SIZE];
@@ -444,6 +529,15 @@ public class ImapFolder {
         return tempBody;
     }
 
+    /**
+     * @return whether {@code contentTransferEncoding} leaves the content unchanged.
+     */
+    private static boolean isIdentityEncoding(String contentTransferEncoding) {
+        String encoding = MimeUtility.getHeaderParameter(contentTransferEncoding, null);
+        return "7bit".equalsIgnoreCase(encoding) || "8bit".equalsIgnoreCase(encoding)
+                || "binary".equalsIgnoreCase(encoding);
+    }
+
     public String[] getPermanentFlags() {
         return PERMANENT_FLAGS;
     }
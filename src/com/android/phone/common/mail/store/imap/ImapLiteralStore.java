@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone.common.mail.store.imap;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.phone.common.mail.TempDirectory;
+import com.android.phone.common.mail.utils.LogUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides where IMAP literals are stored and keeps the storage they use.
+ *
+ * <p>Literals are kept on the heap as long as they fit under the per literal threshold of the
+ * {@link ImapResponseParser} and the heap budget shared by all connections. Everything else is
+ * spilled to a temp file. Temp files are returned to a small pool when their literal is destroyed
+ * so the next spill doesn't have to create a new one.
+ */
+public class ImapLiteralStore {
+    private static final String TAG = "ImapLiteralStore";
+
+    /** Heap budget for literals across all connections. */
+    private static final long MEMORY_BUDGET = 4 * 1024 * 1024;
+
+    /** Temp files kept around for reuse. */
+    private static final int MAX_POOLED_FILES = 4;
+
+    private static final AtomicLong sBytesInMemory = new AtomicLong();
+    private static final AtomicLong sPeakBytesInMemory = new AtomicLong();
+    private static final AtomicLong sBytesKeptInMemory = new AtomicLong();
+    private static final AtomicLong sBytesSpilled = new AtomicLong();
+    private static final AtomicLong sTempFilesCreated = new AtomicLong();
+    private static final AtomicLong sTempFilesReused = new AtomicLong();
+    private static final AtomicLong sTempFilesHandedOff = new AtomicLong();
+
+    private static final ArrayDeque<File> sFilePool = new ArrayDeque<File>();
+
+    private ImapLiteralStore() {}
+
+    /**
+     * Reserves heap budget for a literal of {@code size} bytes.
+     *
+     * @return false if the literal should be spilled to a temp file instead.
+     */
+    /* package */ static boolean reserveMemory(int size) {
+        while (true) {
+            long current = sBytesInMemory.get();
+            // A literal that doesn't fit anyway is allowed in when nothing else is held, so a
+            // small budget can't force every literal to disk.
+            if (current > 0 && current + size > MEMORY_BUDGET) {
+                return false;
+            }
+            if (sBytesInMemory.compareAndSet(current, current + size)) {
+                long peak;
+                while ((peak = sPeakBytesInMemory.get()) < current + size
+                        && !sPeakBytesInMemory.compareAndSet(peak, current + size)) {
+                }
+                sBytesKeptInMemory.addAndGet(size);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns heap budget reserved with {@link #reserveMemory}.
+     */
+    /* package */ static void releaseMemory(int size) {
+        sBytesInMemory.addAndGet(-size);
+    }
+
+    /**
+     * @return an empty temp file, reused from the pool if possible.
+     */
+    /* package */ static File obtainTempFile(int size) throws IOException {
+        sBytesSpilled.addAndGet(size);
+        synchronized (sFilePool) {
+            File file = sFilePool.poll();
+            if (file != null) {
+                sTempFilesReused.incrementAndGet();
+                return file;
+            }
+        }
+        sTempFilesCreated.incrementAndGet();
+        return File.createTempFile("imap", ".tmp", TempDirectory.getTempDirectory());
+    }
+
+    /**
+     * Truncates {@code file} and returns it to the pool, or deletes it if the pool is full.
+     */
+    /* package */ static void recycleTempFile(File file) {
+        boolean pooled = false;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(0);
+            } finally {
+                raf.close();
+            }
+            synchronized (sFilePool) {
+                if (sFilePool.size() < MAX_POOLED_FILES) {
+                    sFilePool.add(file);
+                    pooled = true;
+                }
+            }
+        } catch (IOException e) {
+            LogUtils.w(TAG, "Unable to recycle temp file: " + e.getMessage());
+        }
+        if (!pooled && file.exists()) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Records that a temp file was given to a body instead of being copied.
+     */
+    /* package */ static void onTempFileHandedOff() {
+        sTempFilesHandedOff.incrementAndGet();
+    }
+
+    /**
+     * Deletes the pooled temp files.
+     */
+    @VisibleForTesting
+    public static void clearPool() {
+        synchronized (sFilePool) {
+            for (File file : sFilePool) {
+                file.delete();
+            }
+            sFilePool.clear();
+        }
+    }
+
+    public static void dump(IndentingPrintWriter writer) {
+        writer.println("IMAP literal storage:");
+        writer.increaseIndent();
+        writer.println("memory budget: " + MEMORY_BUDGET);
+        writer.println("bytes in memory: " + sBytesInMemory.get()
+                + " (peak " + sPeakBytesInMemory.get() + ")");
+        writer.println("bytes kept in memory: " + sBytesKeptInMemory.get());
+        writer.println("bytes spilled: " + sBytesSpilled.get());
+        writer.println("temp files created: " + sTempFilesCreated.get()
+                + ", reused: " + sTempFilesReused.get()
+                + ", handed off: " + sTempFilesHandedOff.get());
+        synchronized (sFilePool) {
+            writer.println("pooled temp files: " + sFilePool.size());
+        }
+        writer.decreaseIndent();
+    }
+}
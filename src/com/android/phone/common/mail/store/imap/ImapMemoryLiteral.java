@@ -26,6 +26,9 @@ import java.io.UnsupportedEncodingException;
 
 /**
  * Subclass of {@link ImapString} used for literals backed by an in-memory byte array.
+ *
+ * The heap it uses must have been reserved with {@link ImapLiteralStore#reserveMemory(int)}; it
+ * is released on {@link #destroy()}.
  */
 public class ImapMemoryLiteral extends ImapString {
     private final String TAG = "ImapMemoryLiteral";
@@ -50,6 +53,9 @@ public class ImapMemoryLiteral extends ImapString {
 
     @Override
     public void destroy() {
+        if (mData != null) {
+            ImapLiteralStore.releaseMemory(mData.length);
+        }
         mData = null;
         super.destroy();
     }
@@ -35,7 +35,8 @@ public class ImapResponseParser {
     private static final String TAG = "ImapResponseParser";
 
     /**
-     * Literal larger than this will be stored in temp file.
+     * Literal larger than this will be stored in temp file. Smaller literals may be spilled too
+     * when the heap budget of {@link ImapLiteralStore} is used up.
      */
     public static final int LITERAL_KEEP_IN_MEMORY_THRESHOLD = 2 * 1024 * 1024;
 
@@ -423,10 +424,14 @@ public class ImapResponseParser {
         expect('\r');
         expect('\n');
         FixedLengthInputStream in = new FixedLengthInputStream(mIn, size);
-        if (size > mLiteralKeepInMemoryThreshold) {
+        if (size > mLiteralKeepInMemoryThreshold || !ImapLiteralStore.reserveMemory(size)) {
             return new ImapTempFileLiteral(in);
-        } else {
+        }
+        try {
             return new ImapMemoryLiteral(in);
+        } catch (IOException | RuntimeException e) {
+            ImapLiteralStore.releaseMemory(size);
+            throw e;
         }
     }
 }
\ No newline at end of file
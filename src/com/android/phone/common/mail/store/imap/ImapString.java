@@ -16,14 +16,12 @@
 
 package com.android.phone.common.mail.store.imap;
 
+import com.android.phone.common.mail.utils.MailDateParser;
 import com.android.phone.vvm.omtp.VvmLog;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
 
 /**
  * Class represents an IMAP "element" that is not a list.
@@ -54,12 +52,6 @@ public abstract class ImapString extends ImapElement {
         }
     };
 
-    // This is used only for parsing IMAP's FETCH ENVELOPE command, in which
-    // en_US-like date format is used like "01-Jan-2009 11:20:39 -0800", so this should be
-    // handled by Locale.US
-    private final static SimpleDateFormat DATE_TIME_FORMAT =
-            new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss Z", Locale.US);
-
     private boolean mIsInteger;
     private int mParsedInteger;
     private Date mParsedDate;
@@ -124,7 +116,8 @@ public abstract class ImapString extends ImapElement {
     }
 
     /**
-     * @return whether it can be parsed as a date using {@link #DATE_TIME_FORMAT}.
+     * @return whether it can be parsed as a date like "01-Jan-2009 11:20:39 -0800", the format
+     * used by IMAP's INTERNALDATE. See {@link MailDateParser}.
      */
     public final boolean isDate() {
         if (mParsedDate != null) {
@@ -133,13 +126,14 @@ public abstract class ImapString extends ImapElement {
         if (isEmpty()) {
             return false;
         }
-        try {
-            mParsedDate = DATE_TIME_FORMAT.parse(getString());
-            return true;
-        } catch (ParseException e) {
-            VvmLog.w("ImapString", getString() + " can't be parsed as a date.");
+        final String s = getString();
+        long millis = MailDateParser.parse(s, 0, s.length());
+        if (millis == MailDateParser.INVALID) {
+            VvmLog.w("ImapString", s + " can't be parsed as a date.");
             return false;
         }
+        mParsedDate = new Date(millis);
+        return true;
     }
 
     /**
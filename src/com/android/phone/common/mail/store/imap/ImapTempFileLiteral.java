@@ -16,7 +16,6 @@
 package com.android.phone.common.mail.store.imap;
 
 import com.android.phone.common.mail.FixedLengthInputStream;
-import com.android.phone.common.mail.TempDirectory;
 import com.android.phone.common.mail.utils.Utility;
 import com.android.phone.common.mail.utils.LogUtils;
 
@@ -32,19 +31,20 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
- * Subclass of {@link ImapString} used for literals backed by a temp file.
+ * Subclass of {@link ImapString} used for literals backed by a temp file. The file comes from,
+ * and goes back to, the {@link ImapLiteralStore} pool.
  */
 public class ImapTempFileLiteral extends ImapString {
     private final String TAG = "ImapTempFileLiteral";
 
-    /* package for test */ final File mFile;
+    /* package for test */ File mFile;
 
     /** Size is purely for toString() */
     private final int mSize;
 
     /* package */  ImapTempFileLiteral(FixedLengthInputStream stream) throws IOException {
         mSize = stream.getLength();
-        mFile = File.createTempFile("imap", ".tmp", TempDirectory.getTempDirectory());
+        mFile = ImapLiteralStore.obtainTempFile(mSize);
 
         // Unfortunately, we can't really use deleteOnExit(), because temp filenames are random
         // so it'd simply cause a memory leak.
@@ -99,11 +99,25 @@ public class ImapTempFileLiteral extends ImapString {
         }
     }
 
+    /**
+     * Gives up ownership of the temp file so its content can be used without a copy, for example
+     * as the file of a {@link com.android.phone.common.mail.internet.BinaryTempFileBody}. The
+     * literal can't be read afterwards.
+     */
+    public File detachFile() {
+        checkNotDestroyed();
+        File file = mFile;
+        mFile = null;
+        ImapLiteralStore.onTempFileHandedOff();
+        destroy();
+        return file;
+    }
+
     @Override
     public void destroy() {
         try {
-            if (!isDestroyed() && mFile.exists()) {
-                mFile.delete();
+            if (!isDestroyed() && mFile != null && mFile.exists()) {
+                ImapLiteralStore.recycleTempFile(mFile);
             }
         } catch (RuntimeException re) {
             // Just log and ignore.
@@ -118,6 +132,6 @@ public class ImapTempFileLiteral extends ImapString {
     }
 
     public boolean tempFileExistsForTest() {
-        return mFile.exists();
+        return mFile != null && mFile.exists();
     }
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone.common.mail.store.imap;
+
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.LocalLog;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.phone.LatencyHistogram;
+import com.android.phone.common.mail.MailTransport;
+
+import java.io.FileDescriptor;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects wire level statistics of the IMAP client for dumpsys.
+ *
+ * <p>For every command name (LOGIN, SELECT, UID FETCH...) the round trip time and the time until
+ * the first response line are kept in histograms, along with the bytes sent and received. The
+ * phases of opening a connection (DNS, TCP, TLS and authentication) have their own histograms.
+ * The last few commands are also kept in a bounded log. Only command names are recorded, never
+ * their arguments.
+ */
+public class ImapTracer {
+
+    public static final String PHASE_DNS = "DNS";
+    public static final String PHASE_TCP = "TCP";
+    public static final String PHASE_TLS = "TLS";
+    public static final String PHASE_AUTH = "AUTH";
+
+    /** Status of a command whose tagged response was never read. */
+    public static final String STATUS_ABANDONED = "ABANDONED";
+
+    private static final int MAX_RECENT_COMMANDS = 50;
+
+    // Upper limits of the latency buckets, in milliseconds.
+    private static final long[] BUCKET_LIMITS = {
+            10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000
+    };
+
+    private static final LocalLog sRecentCommands = new LocalLog(MAX_RECENT_COMMANDS);
+
+    // Guarded by themselves.
+    private static final Map<String, CommandStats> sCommandStats = new ArrayMap<>();
+    private static final Map<String, LatencyHistogram> sPhaseStats = new ArrayMap<>();
+
+    private static final AtomicLong sBytesSent = new AtomicLong();
+    private static final AtomicLong sBytesReceived = new AtomicLong();
+
+    private ImapTracer() {}
+
+    /**
+     * @return the current time to pass to {@link #recordPhase(String, long)}.
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Records that a phase of opening a connection that started at {@code startTime} is done.
+     */
+    public static void recordPhase(String phase, long startTime) {
+        long elapsed = now() - startTime;
+        synchronized (sPhaseStats) {
+            LatencyHistogram histogram = sPhaseStats.get(phase);
+            if (histogram == null) {
+                histogram = new LatencyHistogram(BUCKET_LIMITS);
+                sPhaseStats.put(phase, histogram);
+            }
+            histogram.add(elapsed);
+        }
+    }
+
+    public static void onBytesSent(int count) {
+        sBytesSent.addAndGet(count);
+    }
+
+    public static void onBytesReceived(int count) {
+        sBytesReceived.addAndGet(count);
+    }
+
+    /**
+     * Starts tracing {@code command}, which is about to be written to {@code transport}.
+     */
+    public static Command startCommand(String tag, String command, MailTransport transport) {
+        return new Command(tag, getCommandName(command), transport);
+    }
+
+    /**
+     * @return the command name, including the command following "UID".
+     */
+    /* package */ static String getCommandName(String command) {
+        int end = command.indexOf(' ');
+        if (end < 0) {
+            return command.toUpperCase();
+        }
+        if (end == ImapConstants.UID.length()
+                && command.regionMatches(true, 0, ImapConstants.UID, 0, end)) {
+            int next = command.indexOf(' ', end + 1);
+            end = next < 0 ? command.length() : next;
+        }
+        return command.substring(0, end).toUpperCase();
+    }
+
+    /**
+     * A command that has been sent and is waiting for its tagged response.
+     */
+    public static class Command {
+        private final String mTag;
+        private final String mName;
+        private final MailTransport mTransport;
+        private final long mStartTime;
+        private final long mStartBytesSent;
+        private final long mStartBytesReceived;
+        private long mFirstResponseTime = -1;
+
+        private Command(String tag, String name, MailTransport transport) {
+            mTag = tag;
+            mName = name;
+            mTransport = transport;
+            mStartTime = now();
+            mStartBytesSent = transport.getBytesSent();
+            mStartBytesReceived = transport.getBytesReceived();
+        }
+
+        /**
+         * Called for every response read while the command is pending.
+         */
+        public void onResponse() {
+            if (mFirstResponseTime < 0) {
+                mFirstResponseTime = now();
+            }
+        }
+
+        /**
+         * Records the command as done, with {@code status} being the status of the tagged
+         * response or a description of the error.
+         */
+        public void finish(String status) {
+            long elapsed = now() - mStartTime;
+            long firstResponse = mFirstResponseTime < 0 ? -1 : mFirstResponseTime - mStartTime;
+            long sent = mTransport.getBytesSent() - mStartBytesSent;
+            long received = mTransport.getBytesReceived() - mStartBytesReceived;
+
+            synchronized (sCommandStats) {
+                CommandStats stats = sCommandStats.get(mName);
+                if (stats == null) {
+                    stats = new CommandStats();
+                    sCommandStats.put(mName, stats);
+                }
+                stats.roundTrip.add(elapsed);
+                if (firstResponse >= 0) {
+                    stats.firstResponse.add(firstResponse);
+                }
+                stats.bytesSent += sent;
+                stats.bytesReceived += received;
+                if (!ImapConstants.OK.equals(status)) {
+                    stats.failures++;
+                }
+            }
+
+            sRecentCommands.log(mTag + " " + mName + " " + status + " " + elapsed
+                    + "ms (first response " + firstResponse + "ms) " + sent + "B out "
+                    + received + "B in");
+        }
+    }
+
+    private static class CommandStats {
+        final LatencyHistogram roundTrip = new LatencyHistogram(BUCKET_LIMITS);
+        final LatencyHistogram firstResponse = new LatencyHistogram(BUCKET_LIMITS);
+        long bytesSent;
+        long bytesReceived;
+        int failures;
+    }
+
+    public static void dump(FileDescriptor fd, IndentingPrintWriter writer, String[] args) {
+        writer.println("IMAP traffic: " + sBytesSent.get() + "B sent, " + sBytesReceived.get()
+                + "B received");
+        writer.println("Connection phases:");
+        writer.increaseIndent();
+        synchronized (sPhaseStats) {
+            for (Map.Entry<String, LatencyHistogram> entry : sPhaseStats.entrySet()) {
+                writer.println(entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        writer.decreaseIndent();
+        writer.println("Commands:");
+        writer.increaseIndent();
+        synchronized (sCommandStats) {
+            for (Map.Entry<String, CommandStats> entry : sCommandStats.entrySet()) {
+                CommandStats stats = entry.getValue();
+                writer.println(entry.getKey() + ": " + stats.bytesSent + "B out, "
+                        + stats.bytesReceived + "B in, " + stats.failures + " failed");
+                writer.increaseIndent();
+                writer.println("round trip: " + stats.roundTrip);
+                writer.println("first response: " + stats.firstResponse);
+                writer.decreaseIndent();
+            }
+        }
+        writer.decreaseIndent();
+        writer.println("Recent commands:");
+        writer.increaseIndent();
+        sRecentCommands.dump(fd, writer, args);
+        writer.decreaseIndent();
+    }
+}
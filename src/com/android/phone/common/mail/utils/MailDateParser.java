@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.phone.common.mail.utils;
+
+import java.util.Date;
+
+/**
+ * Reentrant parser for the date formats found in IMAP responses and mail headers.
+ *
+ * <p>Handles the IMAP INTERNALDATE form ({@code "01-Jan-2009 11:20:39 -0800"}) and the RFC 822 /
+ * RFC 2822 date-time ({@code "Thu, 1 Jan 2009 11:20:39 -0800 (PST)"}), including the obsolete
+ * named and military zones, two and three digit years and comments. It works directly on a
+ * character range and keeps no state, so it can be used from any thread without locking, and
+ * it does not allocate unless a {@link Date} is requested.
+ *
+ * <p>Results match {@link org.apache.james.mime4j.field.datetime.DateTime}: fields are not range
+ * checked (out of range values roll over like a lenient {@link java.util.Calendar}) and military
+ * zones are treated as UTC.
+ */
+public final class MailDateParser {
+
+    /** Returned by {@link #parse(CharSequence, int, int)} when the input is not a date. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
+    private static final String[] MONTHS = {
+            "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"
+    };
+
+    private static final String[] DAYS_OF_WEEK = {
+            "mon", "tue", "wed", "thu", "fri", "sat", "sun"
+    };
+
+    // Obsolete zone names from RFC 822 and their offsets in minutes.
+    private static final String[] ZONE_NAMES = {
+            "ut", "gmt", "utc", "est", "edt", "cst", "cdt", "mst", "mdt", "pst", "pdt"
+    };
+    private static final int[] ZONE_OFFSETS = {
+            0, 0, 0, -5 * 60, -4 * 60, -6 * 60, -5 * 60, -7 * 60, -6 * 60, -8 * 60, -7 * 60
+    };
+
+    private MailDateParser() {}
+
+    /**
+     * @return the parsed date, or null if {@code s} is null or not a date.
+     */
+    public static Date parseDate(String s) {
+        if (s == null) {
+            return null;
+        }
+        long millis = parse(s, 0, s.length());
+        return millis == INVALID ? null : new Date(millis);
+    }
+
+    /**
+     * Parses the date in {@code s} between {@code start} (inclusive) and {@code end}
+     * (exclusive).
+     *
+     * @return milliseconds since the epoch, or {@link #INVALID} if the range is not a date.
+     */
+    public static long parse(CharSequence s, int start, int end) {
+        int pos = skipSpace(s, start, end);
+
+        // Optional day of week, which is only valid when followed by a comma.
+        if (pos < end && isLetter(s.charAt(pos))) {
+            int wordEnd = skipLetters(s, pos, end);
+            if (indexOf(DAYS_OF_WEEK, s, pos, wordEnd) < 0) {
+                return INVALID;
+            }
+            pos = skipSpace(s, wordEnd, end);
+            if (pos >= end || s.charAt(pos) != ',') {
+                return INVALID;
+            }
+            pos = skipSpace(s, pos + 1, end);
+        }
+
+        // Day, month and year, separated by white space (RFC 822) or '-' (IMAP).
+        int numberEnd = skipDigits(s, pos, end);
+        if (numberEnd == pos) {
+            return INVALID;
+        }
+        int day = parseInt(s, pos, numberEnd);
+        pos = skipSeparator(s, numberEnd, end);
+
+        int wordEnd = skipLetters(s, pos, end);
+        int month = indexOf(MONTHS, s, pos, wordEnd) + 1;
+        if (month == 0) {
+            return INVALID;
+        }
+        pos = skipSeparator(s, wordEnd, end);
+
+        numberEnd = skipDigits(s, pos, end);
+        if (numberEnd == pos) {
+            return INVALID;
+        }
+        int year = toYear(parseInt(s, pos, numberEnd), numberEnd - pos);
+        pos = skipSpace(s, numberEnd, end);
+
+        // hh:mm[:ss]
+        numberEnd = skipDigits(s, pos, end);
+        if (numberEnd == pos) {
+            return INVALID;
+        }
+        int hour = parseInt(s, pos, numberEnd);
+        pos = skipSpace(s, numberEnd, end);
+        if (pos >= end || s.charAt(pos) != ':') {
+            return INVALID;
+        }
+        pos = skipSpace(s, pos + 1, end);
+        numberEnd = skipDigits(s, pos, end);
+        if (numberEnd == pos) {
+            return INVALID;
+        }
+        int minute = parseInt(s, pos, numberEnd);
+        pos = skipSpace(s, numberEnd, end);
+        int second = 0;
+        if (pos < end && s.charAt(pos) == ':') {
+            pos = skipSpace(s, pos + 1, end);
+            numberEnd = skipDigits(s, pos, end);
+            if (numberEnd == pos) {
+                return INVALID;
+            }
+            second = parseInt(s, pos, numberEnd);
+            pos = skipSpace(s, numberEnd, end);
+        }
+
+        // Zone: [+-]hhmm, a named zone, or a military zone letter. "GMT+0800" is also accepted.
+        if (pos >= end) {
+            return INVALID;
+        }
+        int offsetMinutes;
+        char c = s.charAt(pos);
+        if (c == '+' || c == '-') {
+            pos = skipSpace(s, pos + 1, end);
+            numberEnd = skipDigits(s, pos, end);
+            if (numberEnd == pos) {
+                return INVALID;
+            }
+            offsetMinutes = toOffsetMinutes(parseInt(s, pos, numberEnd));
+            if (c == '-') {
+                offsetMinutes = -offsetMinutes;
+            }
+            pos = numberEnd;
+        } else if (isLetter(c)) {
+            wordEnd = skipLetters(s, pos, end);
+            int zone = indexOf(ZONE_NAMES, s, pos, wordEnd);
+            if (zone >= 0) {
+                offsetMinutes = ZONE_OFFSETS[zone];
+            } else if (wordEnd - pos == 1 && c != 'j' && c != 'J') {
+                // Military zones are ambiguous in practice and are treated as UTC.
+                offsetMinutes = 0;
+            } else {
+                return INVALID;
+            }
+            pos = wordEnd;
+            if (offsetMinutes == 0 && pos < end
+                    && (s.charAt(pos) == '+' || s.charAt(pos) == '-')) {
+                numberEnd = skipDigits(s, pos + 1, end);
+                if (numberEnd == pos + 1) {
+                    return INVALID;
+                }
+                offsetMinutes = toOffsetMinutes(parseInt(s, pos + 1, numberEnd));
+                if (s.charAt(pos) == '-') {
+                    offsetMinutes = -offsetMinutes;
+                }
+                pos = numberEnd;
+            }
+        } else {
+            return INVALID;
+        }
+
+        if (skipSpace(s, pos, end) != end) {
+            return INVALID;
+        }
+
+        long days = daysFromCivil(year, month) + day - 1;
+        long minutes = ((days * 24) + hour) * 60 + minute - offsetMinutes;
+        return (minutes * 60 + second) * 1000;
+    }
+
+    /**
+     * Applies the same two and three digit year windowing as mime4j.
+     */
+    private static int toYear(int year, int digits) {
+        switch (digits) {
+            case 1:
+            case 2:
+                return year < 50 ? 2000 + year : 1900 + year;
+            case 3:
+                return 1900 + year;
+            default:
+                return year;
+        }
+    }
+
+    /**
+     * Converts an offset written as hhmm to minutes.
+     */
+    private static int toOffsetMinutes(int hhmm) {
+        return (hhmm / 100) * 60 + hhmm % 100;
+    }
+
+    /**
+     * @return the number of days from 1970-01-01 to the first day of {@code month} in
+     * {@code year}, in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * @return the index of the entry in {@code words} that case-insensitively equals the range,
+     * or -1.
+     */
+    private static int indexOf(String[] words, CharSequence s, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            if (word.length() != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && Character.toLowerCase(s.charAt(start + j)) == word.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseInt(CharSequence s, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int skipLetters(CharSequence s, int pos, int end) {
+        while (pos < end && isLetter(s.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipDigits(CharSequence s, int pos, int end) {
+        // Anything longer than 9 digits would overflow and isn't a valid field anyway.
+        int limit = Math.min(end, pos + 9);
+        while (pos < limit && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Skips a '-' date separator or white space.
+     */
+    private static int skipSeparator(CharSequence s, int pos, int end) {
+        pos = skipSpace(s, pos, end);
+        if (pos < end && s.charAt(pos) == '-') {
+            pos = skipSpace(s, pos + 1, end);
+        }
+        return pos;
+    }
+
+    /**
+     * Skips white space and (possibly nested) comments.
+     */
+    private static int skipSpace(CharSequence s, int pos, int end) {
+        int depth = 0;
+        while (pos < end) {
+            char c = s.charAt(pos);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && depth > 0) {
+                depth--;
+            } else if (c == '\\' && depth > 0) {
+                pos++;
+            } else if (depth == 0 && c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                break;
+            }
+            pos++;
+        }
+        return depth == 0 ? pos : end + 1;
+    }
+}
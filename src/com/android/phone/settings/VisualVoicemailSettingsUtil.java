@@ -18,6 +18,7 @@ package com.android.phone.settings;
 import android.content.Context;
 import android.telecom.PhoneAccountHandle;
 import com.android.phone.R;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigCache;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.VisualVoicemailPreferences;
 import com.android.phone.vvm.omtp.sync.OmtpVvmSourceManager;
@@ -36,7 +37,7 @@ public class VisualVoicemailSettingsUtil {
         new VisualVoicemailPreferences(context, phoneAccount).edit()
                 .putBoolean(IS_ENABLED_KEY, isEnabled)
                 .apply();
-        OmtpVvmCarrierConfigHelper config = new OmtpVvmCarrierConfigHelper(context, phoneAccount);
+        OmtpVvmCarrierConfigHelper config = OmtpVvmCarrierConfigCache.get(context, phoneAccount);
         if (isEnabled) {
             OmtpVvmSourceManager.getInstance(context).addPhoneStateListener(phoneAccount);
             config.startActivation();
@@ -61,7 +62,7 @@ public class VisualVoicemailSettingsUtil {
             // getBoolean(). The "false" here should never be actually used.
             return prefs.getBoolean(IS_ENABLED_KEY, false);
         }
-        return new OmtpVvmCarrierConfigHelper(context,
+        return OmtpVvmCarrierConfigCache.get(context,
                 PhoneAccountHandleConverter.toSubId(phoneAccount)).isEnabledByDefault();
     }
 
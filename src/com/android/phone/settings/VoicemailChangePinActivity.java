@@ -52,6 +52,7 @@ import com.android.phone.common.mail.MessagingException;
 import com.android.phone.vvm.omtp.OmtpConstants;
 import com.android.phone.vvm.omtp.OmtpConstants.ChangePinResult;
 import com.android.phone.vvm.omtp.OmtpEvents;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigCache;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.VisualVoicemailPreferences;
 import com.android.phone.vvm.omtp.VvmLog;
@@ -344,7 +345,7 @@ public class VoicemailChangePinActivity extends Activity implements OnClickListe
         super.onCreate(savedInstanceState);
 
         mPhoneAccountHandle = getIntent().getParcelableExtra(EXTRA_PHONE_ACCOUNT_HANDLE);
-        mConfig = new OmtpVvmCarrierConfigHelper(this, mPhoneAccountHandle);
+        mConfig = OmtpVvmCarrierConfigCache.get(this, mPhoneAccountHandle);
         setContentView(R.layout.voicemail_change_pin);
         setTitle(R.string.change_pin_title);
 
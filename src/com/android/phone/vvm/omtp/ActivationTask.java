@@ -132,7 +132,7 @@ public class ActivationTask extends BaseTask {
             return;
         }
 
-        OmtpVvmCarrierConfigHelper helper = new OmtpVvmCarrierConfigHelper(getContext(), subId);
+        OmtpVvmCarrierConfigHelper helper = OmtpVvmCarrierConfigCache.get(getContext(), subId);
         if (!helper.isValid()) {
             VvmLog.i(TAG, "VVM not supported on subId " + subId);
             VoicemailStatus.disable(getContext(), phoneAccountHandle);
@@ -145,7 +145,7 @@ public class ActivationTask extends BaseTask {
         // a good chance of being started up.
         if (!VoicemailStatus.edit(getContext(), phoneAccountHandle)
             .setType(helper.getVvmType())
-            .apply()) {
+            .applyNow()) {
             VvmLog.e(TAG, "Failed to configure content provider - " + helper.getVvmType());
             fail();
         }
@@ -245,7 +245,7 @@ public class ActivationTask extends BaseTask {
                 OmtpVvmSourceManager.getInstance(context);
 
         if (OmtpConstants.SUCCESS.equals(message.getReturnCode())) {
-            OmtpVvmCarrierConfigHelper helper = new OmtpVvmCarrierConfigHelper(context, subId);
+            OmtpVvmCarrierConfigHelper helper = OmtpVvmCarrierConfigCache.get(context, subId);
             helper.handleEvent(status, OmtpEvents.CONFIG_REQUEST_STATUS_SUCCESS);
 
             // Save the IMAP credentials in preferences so they are persistent and can be retrieved.
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.android.phone.vvm.omtp;
+
+import android.content.Context;
+import android.telecom.PhoneAccountHandle;
+import android.telephony.CarrierConfigManager;
+import android.telephony.SubscriptionManager;
+import android.util.SparseArray;
+
+import com.android.internal.telephony.TelephonyIntents;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.phone.vvm.omtp.utils.PhoneAccountHandleConverter;
+
+/**
+ * Keeps one {@link OmtpVvmCarrierConfigHelper} per subscription.
+ * <p>
+ * Building a helper reads the carrier config over binder, which merges a full bundle, and looks up
+ * the SIM operator and the telephony config. The helper only depends on those, so it is built once
+ * per subscription and shared until {@link SimChangeReceiver} tells of a
+ * {@link CarrierConfigManager#ACTION_CARRIER_CONFIG_CHANGED} or
+ * {@link TelephonyIntents#ACTION_SIM_STATE_CHANGED}.
+ */
+public class OmtpVvmCarrierConfigCache {
+
+    private static final String TAG = "VvmConfigCache";
+
+    // All guarded by sHelpers.
+    private static final SparseArray<OmtpVvmCarrierConfigHelper> sHelpers = new SparseArray<>();
+    private static int sHits;
+    private static int sMisses;
+    private static int sInvalidations;
+
+    private OmtpVvmCarrierConfigCache() {}
+
+    /**
+     * @return the helper of {@code subId}. It is only shared if {@code subId} is valid.
+     */
+    public static OmtpVvmCarrierConfigHelper get(Context context, int subId) {
+        if (!SubscriptionManager.isValidSubscriptionId(subId)) {
+            return new OmtpVvmCarrierConfigHelper(context, subId);
+        }
+        int invalidations;
+        synchronized (sHelpers) {
+            OmtpVvmCarrierConfigHelper helper = sHelpers.get(subId);
+            if (helper != null) {
+                sHits++;
+                return helper;
+            }
+            sMisses++;
+            invalidations = sInvalidations;
+        }
+        // Built outside of the lock, as it makes binder calls. It is not kept if the config
+        // changed meanwhile, since it may have read the old one.
+        Context appContext = context.getApplicationContext();
+        OmtpVvmCarrierConfigHelper helper = new OmtpVvmCarrierConfigHelper(
+                appContext != null ? appContext : context, subId);
+        synchronized (sHelpers) {
+            if (invalidations == sInvalidations) {
+                sHelpers.put(subId, helper);
+            }
+        }
+        return helper;
+    }
+
+    /**
+     * @return the helper of the subscription of {@code phoneAccountHandle}.
+     */
+    public static OmtpVvmCarrierConfigHelper get(Context context,
+            PhoneAccountHandle phoneAccountHandle) {
+        return get(context, PhoneAccountHandleConverter.toSubId(phoneAccountHandle));
+    }
+
+    /**
+     * Drops the helper of {@code subId}, after its carrier config changed.
+     */
+    public static void invalidate(int subId) {
+        synchronized (sHelpers) {
+            sHelpers.remove(subId);
+            sInvalidations++;
+        }
+        VvmLog.d(TAG, "invalidated subId " + subId);
+    }
+
+    /**
+     * Drops all the helpers, after a SIM change.
+     */
+    public static void invalidateAll() {
+        synchronized (sHelpers) {
+            sHelpers.clear();
+            sInvalidations++;
+        }
+        VvmLog.d(TAG, "invalidated all");
+    }
+
+    public static void dump(IndentingPrintWriter writer) {
+        synchronized (sHelpers) {
+            writer.println("OmtpVvmCarrierConfigCache: " + sHelpers.size() + " cached, hits "
+                    + sHits + ", misses " + sMisses + ", invalidations " + sInvalidations);
+        }
+    }
+}
@@ -35,6 +35,7 @@ import com.android.phone.vvm.omtp.protocol.VisualVoicemailProtocolFactory;
 import com.android.phone.vvm.omtp.sms.StatusMessage;
 import com.android.phone.vvm.omtp.utils.PhoneAccountHandleConverter;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Set;
 
 /**
@@ -96,20 +97,27 @@ public class OmtpVvmCarrierConfigHelper {
     private final VisualVoicemailProtocol mProtocol;
     private final PersistableBundle mTelephonyConfig;
 
-    private PhoneAccountHandle mPhoneAccountHandle;
+    // Resolved once, as the helper may be shared through OmtpVvmCarrierConfigCache.
+    private final Set<String> mCarrierVvmPackageNames;
+    private final Set<String> mDisabledCapabilities;
+    private final boolean mCellularDataRequired;
+    private final boolean mPrefetchEnabled;
+    private final int mApplicationPort;
+    private final String mDestinationNumber;
+    private final int mSslPort;
+    private final String mClientPrefix;
+    private final boolean mLegacyModeEnabled;
+
+    // Resolved on first use, as the account may not exist yet when the helper is built. Volatile
+    // since cached helpers are shared between threads; racing threads resolve the same handle.
+    private volatile PhoneAccountHandle mPhoneAccountHandle;
 
+    /**
+     * Prefer {@link OmtpVvmCarrierConfigCache#get(Context, int)}, which does not read the carrier
+     * config again while it has not changed.
+     */
     public OmtpVvmCarrierConfigHelper(Context context, int subId) {
-        mContext = context;
-        mSubId = subId;
-        mCarrierConfig = getCarrierConfig();
-
-        TelephonyManager telephonyManager =
-                (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
-        mTelephonyConfig = new TelephonyVvmConfigManager(context.getResources())
-                .getConfig(telephonyManager.getSimOperator(subId));
-
-        mVvmType = getVvmType();
-        mProtocol = VisualVoicemailProtocolFactory.create(mContext.getResources(), mVvmType);
+        this(context, subId, getCarrierConfig(context, subId), getTelephonyConfig(context, subId));
     }
 
     public OmtpVvmCarrierConfigHelper(Context context, PhoneAccountHandle handle) {
@@ -120,12 +128,28 @@ public class OmtpVvmCarrierConfigHelper {
     @VisibleForTesting
     OmtpVvmCarrierConfigHelper(Context context, PersistableBundle carrierConfig,
             PersistableBundle telephonyConfig) {
+        this(context, 0, carrierConfig, telephonyConfig);
+    }
+
+    private OmtpVvmCarrierConfigHelper(Context context, int subId,
+            PersistableBundle carrierConfig, PersistableBundle telephonyConfig) {
         mContext = context;
-        mSubId = 0;
+        mSubId = subId;
         mCarrierConfig = carrierConfig;
         mTelephonyConfig = telephonyConfig;
-        mVvmType = getVvmType();
+        mVvmType = (String) getValue(KEY_VVM_TYPE_STRING);
         mProtocol = VisualVoicemailProtocolFactory.create(mContext.getResources(), mVvmType);
+
+        mCarrierVvmPackageNames = resolveCarrierVvmPackageNames();
+        mDisabledCapabilities = resolveDisabledCapabilities();
+        mCellularDataRequired = (boolean) getValue(KEY_VVM_CELLULAR_DATA_REQUIRED_BOOL, false);
+        mPrefetchEnabled = (boolean) getValue(KEY_VVM_PREFETCH_BOOL, true);
+        mApplicationPort = (int) getValue(KEY_VVM_PORT_NUMBER_INT, 0);
+        mDestinationNumber = (String) getValue(KEY_VVM_DESTINATION_NUMBER_STRING);
+        mSslPort = (int) getValue(KEY_VVM_SSL_PORT_NUMBER_INT, 0);
+        String prefix = (String) getValue(KEY_VVM_CLIENT_PREFIX_STRING);
+        mClientPrefix = prefix != null ? prefix : "//VVM";
+        mLegacyModeEnabled = (boolean) getValue(KEY_VVM_LEGACY_MODE_ENABLED_BOOL, false);
     }
 
     public Context getContext() {
@@ -138,13 +162,15 @@ public class OmtpVvmCarrierConfigHelper {
 
     @Nullable
     public PhoneAccountHandle getPhoneAccountHandle() {
-        if (mPhoneAccountHandle == null) {
-            mPhoneAccountHandle = PhoneAccountHandleConverter.fromSubId(mSubId);
-            if (mPhoneAccountHandle == null) {
+        PhoneAccountHandle phoneAccountHandle = mPhoneAccountHandle;
+        if (phoneAccountHandle == null) {
+            phoneAccountHandle = PhoneAccountHandleConverter.fromSubId(mSubId);
+            if (phoneAccountHandle == null) {
                 VvmLog.e(TAG, "null phone account for subId " + mSubId);
             }
+            mPhoneAccountHandle = phoneAccountHandle;
         }
-        return mPhoneAccountHandle;
+        return phoneAccountHandle;
     }
 
     /**
@@ -157,7 +183,7 @@ public class OmtpVvmCarrierConfigHelper {
 
     @Nullable
     public String getVvmType() {
-        return (String) getValue(KEY_VVM_TYPE_STRING);
+        return mVvmType;
     }
 
     @Nullable
@@ -175,6 +201,11 @@ public class OmtpVvmCarrierConfigHelper {
 
     @Nullable
     public Set<String> getCarrierVvmPackageNames() {
+        return mCarrierVvmPackageNames;
+    }
+
+    @Nullable
+    private Set<String> resolveCarrierVvmPackageNames() {
         Set<String> names = getCarrierVvmPackageNames(mCarrierConfig);
         if (names != null) {
             return names;
@@ -197,7 +228,7 @@ public class OmtpVvmCarrierConfigHelper {
         if (names.isEmpty()) {
             return null;
         }
-        return names;
+        return Collections.unmodifiableSet(names);
     }
 
     /**
@@ -225,21 +256,21 @@ public class OmtpVvmCarrierConfigHelper {
     }
 
     public boolean isCellularDataRequired() {
-        return (boolean) getValue(KEY_VVM_CELLULAR_DATA_REQUIRED_BOOL, false);
+        return mCellularDataRequired;
     }
 
     public boolean isPrefetchEnabled() {
-        return (boolean) getValue(KEY_VVM_PREFETCH_BOOL, true);
+        return mPrefetchEnabled;
     }
 
 
     public int getApplicationPort() {
-        return (int) getValue(KEY_VVM_PORT_NUMBER_INT, 0);
+        return mApplicationPort;
     }
 
     @Nullable
     public String getDestinationNumber() {
-        return (String) getValue(KEY_VVM_DESTINATION_NUMBER_STRING);
+        return mDestinationNumber;
     }
 
     /**
@@ -250,7 +281,7 @@ public class OmtpVvmCarrierConfigHelper {
      * TODO: make config public and add to CarrierConfigManager
      */
     public int getSslPort() {
-        return (int) getValue(KEY_VVM_SSL_PORT_NUMBER_INT, 0);
+        return mSslPort;
     }
 
     /**
@@ -265,6 +296,11 @@ public class OmtpVvmCarrierConfigHelper {
      */
     @Nullable
     public Set<String> getDisabledCapabilities() {
+        return mDisabledCapabilities;
+    }
+
+    @Nullable
+    private Set<String> resolveDisabledCapabilities() {
         Set<String> disabledCapabilities = getDisabledCapabilities(mCarrierConfig);
         if (disabledCapabilities != null) {
             return disabledCapabilities;
@@ -283,15 +319,11 @@ public class OmtpVvmCarrierConfigHelper {
         ArraySet<String> result = new ArraySet<String>();
         result.addAll(
                 Arrays.asList(bundle.getStringArray(KEY_VVM_DISABLED_CAPABILITIES_STRING_ARRAY)));
-        return result;
+        return Collections.unmodifiableSet(result);
     }
 
     public String getClientPrefix() {
-        String prefix = (String) getValue(KEY_VVM_CLIENT_PREFIX_STRING);
-        if (prefix != null) {
-            return prefix;
-        }
-        return "//VVM";
+        return mClientPrefix;
     }
 
     /**
@@ -306,7 +338,7 @@ public class OmtpVvmCarrierConfigHelper {
      * function without the data cost.
      */
     public boolean isLegacyModeEnabled() {
-        return (boolean) getValue(KEY_VVM_LEGACY_MODE_ENABLED_BOOL, false);
+        return mLegacyModeEnabled;
     }
 
     public void startActivation() {
@@ -397,21 +429,21 @@ public class OmtpVvmCarrierConfigHelper {
     }
 
     @Nullable
-    private PersistableBundle getCarrierConfig() {
-        if (!SubscriptionManager.isValidSubscriptionId(mSubId)) {
+    private static PersistableBundle getCarrierConfig(Context context, int subId) {
+        if (!SubscriptionManager.isValidSubscriptionId(subId)) {
             VvmLog
                     .w(TAG, "Invalid subscriptionId or subscriptionId not provided in intent.");
             return null;
         }
 
         CarrierConfigManager carrierConfigManager = (CarrierConfigManager)
-                mContext.getSystemService(Context.CARRIER_CONFIG_SERVICE);
+                context.getSystemService(Context.CARRIER_CONFIG_SERVICE);
         if (carrierConfigManager == null) {
             VvmLog.w(TAG, "No carrier config service found.");
             return null;
         }
 
-        PersistableBundle config = carrierConfigManager.getConfigForSubId(mSubId);
+        PersistableBundle config = carrierConfigManager.getConfigForSubId(subId);
 
         if (TextUtils.isEmpty(config.getString(CarrierConfigManager.KEY_VVM_TYPE_STRING))) {
             return null;
@@ -419,6 +451,14 @@ public class OmtpVvmCarrierConfigHelper {
         return config;
     }
 
+    @Nullable
+    private static PersistableBundle getTelephonyConfig(Context context, int subId) {
+        TelephonyManager telephonyManager =
+                (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        return new TelephonyVvmConfigManager(context.getResources())
+                .getConfig(telephonyManager.getSimOperator(subId));
+    }
+
     @Nullable
     private Object getValue(String key) {
         return getValue(key, null);
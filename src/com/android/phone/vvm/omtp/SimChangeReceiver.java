@@ -56,6 +56,8 @@ public class SimChangeReceiver extends BroadcastReceiver {
 
         switch (action) {
             case TelephonyIntents.ACTION_SIM_STATE_CHANGED:
+                // The SIM operator, and so the config, may be different.
+                OmtpVvmCarrierConfigCache.invalidateAll();
                 if (IccCardConstants.INTENT_VALUE_ICC_ABSENT.equals(
                         intent.getStringExtra(IccCardConstants.INTENT_KEY_ICC_STATE))) {
                     VvmLog.i(TAG, "Sim removed, removing inactive accounts");
@@ -67,10 +69,12 @@ public class SimChangeReceiver extends BroadcastReceiver {
                         SubscriptionManager.INVALID_SUBSCRIPTION_ID);
 
                 if (!SubscriptionManager.isValidSubscriptionId(subId)) {
+                    OmtpVvmCarrierConfigCache.invalidateAll();
                     VvmLog.i(TAG, "Received SIM change for invalid subscription id.");
                     return;
                 }
                 VvmLog.d(TAG, "Carrier config changed");
+                OmtpVvmCarrierConfigCache.invalidate(subId);
                 if (UserManager.get(context).isUserUnlocked() && !isCryptKeeperMode()) {
                     processSubId(context, subId);
                 } else {
@@ -91,7 +95,7 @@ public class SimChangeReceiver extends BroadcastReceiver {
         }
 
         OmtpVvmCarrierConfigHelper carrierConfigHelper =
-                new OmtpVvmCarrierConfigHelper(context, subId);
+                OmtpVvmCarrierConfigCache.get(context, subId);
         if (carrierConfigHelper.isValid()) {
             if (VisualVoicemailSettingsUtil.isEnabled(context, phoneAccount)) {
                 VvmLog.i(TAG, "Sim state or carrier config changed for " + subId);
@@ -15,31 +15,64 @@
  */
 package com.android.phone.vvm.omtp;
 
-import android.util.LocalLog;
 import android.util.Log;
 
 import com.android.internal.util.IndentingPrintWriter;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.Locale;
 
 /**
  * Helper methods for adding to OMTP visual voicemail local logs.
+ * <p>
+ * The local log keeps the parts of each entry in a ring of preallocated arrays and only joins and
+ * formats them when it is dumped.
  */
 public class VvmLog {
 
     private static final int MAX_OMTP_VVM_LOGS = 100;
 
-    private static final LocalLog sLocalLog = new LocalLog(MAX_OMTP_VVM_LOGS);
+    // Guarded by sTimes.
+    private static final long[] sTimes = new long[MAX_OMTP_VVM_LOGS];
+    private static final String[] sTags = new String[MAX_OMTP_VVM_LOGS];
+    private static final String[] sLogs = new String[MAX_OMTP_VVM_LOGS];
+    private static final Throwable[] sThrowables = new Throwable[MAX_OMTP_VVM_LOGS];
+    private static int sNext;
+    private static int sSize;
 
     public static void log(String tag, String log) {
-        sLocalLog.log(tag + ": " + log);
+        log(tag, log, null);
+    }
+
+    private static void log(String tag, String log, Throwable e) {
+        long now = System.currentTimeMillis();
+        synchronized (sTimes) {
+            sTimes[sNext] = now;
+            sTags[sNext] = tag;
+            sLogs[sNext] = log;
+            sThrowables[sNext] = e;
+            sNext = (sNext + 1) % MAX_OMTP_VVM_LOGS;
+            sSize = Math.min(sSize + 1, MAX_OMTP_VVM_LOGS);
+        }
     }
 
     public static void dump(FileDescriptor fd, PrintWriter printwriter, String[] args) {
         IndentingPrintWriter indentingPrintWriter = new IndentingPrintWriter(printwriter, "  ");
         indentingPrintWriter.increaseIndent();
-        sLocalLog.dump(fd, indentingPrintWriter, args);
+        synchronized (sTimes) {
+            int index = (sNext - sSize + MAX_OMTP_VVM_LOGS) % MAX_OMTP_VVM_LOGS;
+            for (int i = 0; i < sSize; i++) {
+                long time = sTimes[index];
+                String entry = String.format(Locale.US, "%tm-%td %tH:%tM:%tS.%tL - %s: %s",
+                        time, time, time, time, time, time, sTags[index], sLogs[index]);
+                if (sThrowables[index] != null) {
+                    entry += " " + sThrowables[index];
+                }
+                indentingPrintWriter.println(entry);
+                index = (index + 1) % MAX_OMTP_VVM_LOGS;
+            }
+        }
         indentingPrintWriter.decreaseIndent();
     }
 
@@ -49,7 +82,7 @@ public class VvmLog {
     }
 
     public static int e(String tag, String log, Throwable e) {
-        log(tag, log + " " + e);
+        log(tag, log, e);
         return Log.e(tag, log, e);
     }
 
@@ -59,7 +92,7 @@ public class VvmLog {
     }
 
     public static int w(String tag, String log, Throwable e) {
-        log(tag, log + " " + e);
+        log(tag, log, e);
         return Log.w(tag, log, e);
     }
 
@@ -69,7 +102,7 @@ public class VvmLog {
     }
 
     public static int i(String tag, String log, Throwable e) {
-        log(tag, log + " " + e);
+        log(tag, log, e);
         return Log.i(tag, log, e);
     }
 
@@ -79,7 +112,7 @@ public class VvmLog {
     }
 
     public static int d(String tag, String log, Throwable e) {
-        log(tag, log + " " + e);
+        log(tag, log, e);
         return Log.d(tag, log, e);
     }
 
@@ -89,7 +122,7 @@ public class VvmLog {
     }
 
     public static int v(String tag, String log, Throwable e) {
-        log(tag, log + " " + e);
+        log(tag, log, e);
         return Log.v(tag, log, e);
     }
 
@@ -99,7 +132,7 @@ public class VvmLog {
     }
 
     public static int wtf(String tag, String log, Throwable e) {
-        log(tag, log + " " + e);
+        log(tag, log, e);
         return Log.wtf(tag, log, e);
     }
 }
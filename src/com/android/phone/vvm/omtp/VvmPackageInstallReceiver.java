@@ -53,7 +53,7 @@ public class VvmPackageInstallReceiver extends BroadcastReceiver {
                 continue;
             }
 
-            OmtpVvmCarrierConfigHelper carrierConfigHelper = new OmtpVvmCarrierConfigHelper(
+            OmtpVvmCarrierConfigHelper carrierConfigHelper = OmtpVvmCarrierConfigCache.get(
                     context, PhoneUtils.getSubIdForPhoneAccountHandle(phoneAccount));
             if (carrierConfigHelper.getCarrierVvmPackageNames() == null) {
                 continue;
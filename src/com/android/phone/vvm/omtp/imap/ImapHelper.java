@@ -35,6 +35,7 @@ import com.android.phone.common.mail.MessagingException;
 import com.android.phone.common.mail.Multipart;
 import com.android.phone.common.mail.TempDirectory;
 import com.android.phone.common.mail.internet.MimeMessage;
+import com.android.phone.common.mail.internet.MimePartIterator;
 import com.android.phone.common.mail.store.ImapConnection;
 import com.android.phone.common.mail.store.ImapFolder;
 import com.android.phone.common.mail.store.ImapStore;
@@ -44,6 +45,7 @@ import com.android.phone.common.mail.utils.LogUtils;
 import com.android.phone.vvm.omtp.OmtpConstants;
 import com.android.phone.vvm.omtp.OmtpConstants.ChangePinResult;
 import com.android.phone.vvm.omtp.OmtpEvents;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigCache;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.VisualVoicemailPreferences;
 import com.android.phone.vvm.omtp.VvmLog;
@@ -55,9 +57,17 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import libcore.io.IoUtils;
+import org.apache.commons.io.IOUtils;
 
 /**
  * A helper interface to abstract commands sent across IMAP interface for a given account.
@@ -66,6 +76,10 @@ public class ImapHelper implements Closeable {
 
     private static final String TAG = "ImapHelper";
 
+    // Prefetched payloads waiting for the provider write before fetching blocks on writing.
+    private static final int MAX_PENDING_PAYLOAD_WRITES = 2;
+    private static final long PAYLOAD_WRITE_TIMEOUT_MILLIS = 60 * 1000;
+
     private ImapFolder mFolder;
     private ImapStore mImapStore;
 
@@ -93,7 +107,7 @@ public class ImapHelper implements Closeable {
     public ImapHelper(Context context, PhoneAccountHandle phoneAccount, Network network,
         VoicemailStatus.Editor status)
         throws InitializingException {
-        this(context, new OmtpVvmCarrierConfigHelper(context,
+        this(context, OmtpVvmCarrierConfigCache.get(context,
             PhoneUtils.getSubIdForPhoneAccountHandle(phoneAccount)), phoneAccount, network, status);
     }
 
@@ -335,7 +349,8 @@ public class ImapHelper implements Closeable {
     }
 
     /**
-     * Fetches the body of the given message and returns the parsed voicemail payload.
+     * Fetches the body of the given message and returns the parsed voicemail payload. Only the
+     * audio part is read; the other parts are skipped as the body streams in.
      *
      * @throws MessagingException if fetching the body of the message fails
      */
@@ -344,12 +359,82 @@ public class ImapHelper implements Closeable {
         LogUtils.d(TAG, "Fetching message body for " + message.getUid());
 
         MessageBodyFetchedListener listener = new MessageBodyFetchedListener();
+        mFolder.fetchBodyParts(new Message[]{message}, listener);
+        return listener.getVoicemailPayload();
+    }
 
-        FetchProfile fetchProfile = new FetchProfile();
-        fetchProfile.add(FetchProfile.Item.BODY);
+    /**
+     * Fetches the payloads of several voicemails with a single SELECT and a single UID FETCH.
+     * Each payload is handed to its callback on a worker thread as soon as it is decoded, so the
+     * provider writes overlap with reading the following messages. At most
+     * {@link #MAX_PENDING_PAYLOAD_WRITES} payloads wait for the worker; beyond that the writes
+     * happen on the calling thread.
+     *
+     * @param callbacks the callback of each voicemail, keyed by UID, in the order the voicemails
+     * should be fetched.
+     * @param byteBudget the maximum total size of the messages to fetch. Voicemails that don't
+     * fit are skipped and can still be fetched on demand.
+     * @return whether the fetch completed, even if some voicemails were skipped.
+     */
+    public boolean fetchVoicemailPayloads(Map<String, VoicemailFetchedCallback> callbacks,
+            long byteBudget) {
+        if (callbacks.isEmpty()) {
+            return true;
+        }
+        ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING_PAYLOAD_WRITES),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            mFolder = openImapFolder(ImapFolder.MODE_READ_WRITE);
+            if (mFolder == null) {
+                // This means we were unable to successfully open the folder.
+                return false;
+            }
+            Message[] messages = mFolder.getMessages(
+                    callbacks.keySet().toArray(new String[callbacks.size()]));
 
-        mFolder.fetch(new Message[]{message}, fetchProfile, listener);
-        return listener.getVoicemailPayload();
+            FetchProfile fetchProfile = new FetchProfile();
+            fetchProfile.add(FetchProfile.Item.SIZE);
+            mFolder.fetch(messages, fetchProfile, null);
+
+            List<Message> selected = new ArrayList<>();
+            long totalSize = 0;
+            for (Message message : messages) {
+                int size = message.getSize();
+                if (size == 0) {
+                    // Not on the server anymore.
+                    continue;
+                }
+                if (totalSize + size > byteBudget) {
+                    LogUtils.d(TAG, "Skipping prefetch of " + message.getUid() + ", " + size
+                            + " bytes is over budget");
+                    continue;
+                }
+                totalSize += size;
+                selected.add(message);
+            }
+            LogUtils.d(TAG, "Prefetching " + selected.size() + " of " + messages.length
+                    + " voicemails, " + totalSize + " bytes");
+
+            PayloadPrefetchListener listener = new PayloadPrefetchListener(callbacks, writer);
+            mFolder.fetchBodyParts(selected.toArray(new Message[selected.size()]), listener);
+            listener.onFetchFinished();
+            return true;
+        } catch (MessagingException e) {
+            LogUtils.e(TAG, e, "Messaging Exception");
+            return false;
+        } finally {
+            closeImapFolder();
+            writer.shutdown();
+            try {
+                if (!writer.awaitTermination(PAYLOAD_WRITE_TIMEOUT_MILLIS,
+                        TimeUnit.MILLISECONDS)) {
+                    LogUtils.w(TAG, "Timed out writing prefetched voicemails");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     public boolean fetchTranscription(TranscriptionFetchedCallback callback, String uid) {
@@ -589,48 +674,110 @@ public class ImapHelper implements Closeable {
     }
 
     /**
-     * Listener for the message body being fetched.
+     * Listener for the parts of the message body being fetched.
      */
-    private final class MessageBodyFetchedListener implements ImapFolder.MessageRetrievalListener {
+    private final class MessageBodyFetchedListener implements ImapFolder.BodyPartListener {
 
         private VoicemailPayload mVoicemailPayload;
+        private final List<String> mMimeTypes = new ArrayList<>();
 
         /**
          * Returns the fetch voicemail payload.
          */
         public VoicemailPayload getVoicemailPayload() {
+            if (mVoicemailPayload == null) {
+                LogUtils.e(TAG, "No audio attachment found on this voicemail, mimeTypes:"
+                        + mMimeTypes);
+            }
             return mVoicemailPayload;
         }
 
         @Override
-        public void messageRetrieved(Message message) {
+        public boolean bodyPartRetrieved(Message message, String mimeType,
+                MimePartIterator parts) {
+            mMimeTypes.add(mimeType);
+            if (!mimeType.startsWith("audio/")) {
+                return true;
+            }
             LogUtils.d(TAG, "Fetched message body for " + message.getUid());
-            LogUtils.d(TAG, "Message retrieved: " + message);
             try {
-                mVoicemailPayload = getVoicemailPayloadFromMessage(message);
+                byte[] bytes = IOUtils.toByteArray(parts.getDecodedInputStream());
+                LogUtils.d(TAG, String.format("Fetched %s bytes of data", bytes.length));
+                mVoicemailPayload = new VoicemailPayload(mimeType, bytes);
             } catch (MessagingException e) {
                 LogUtils.e(TAG, "Messaging Exception:", e);
             } catch (IOException e) {
                 LogUtils.e(TAG, "IO Exception:", e);
             }
+            // Only the first audio part is used, skip the rest of the message.
+            return false;
         }
+    }
 
-        private VoicemailPayload getVoicemailPayloadFromMessage(Message message)
-                throws MessagingException, IOException {
-            Multipart multipart = (Multipart) message.getBody();
-            List<String> mimeTypes = new ArrayList<>();
-            for (int i = 0; i < multipart.getCount(); ++i) {
-                BodyPart bodyPart = multipart.getBodyPart(i);
-                String bodyPartMimeType = bodyPart.getMimeType().toLowerCase();
-                mimeTypes.add(bodyPartMimeType);
-                if (bodyPartMimeType.startsWith("audio/")) {
-                    byte[] bytes = getDataFromBody(bodyPart.getBody());
-                    LogUtils.d(TAG, String.format("Fetched %s bytes of data", bytes.length));
-                    return new VoicemailPayload(bodyPartMimeType, bytes);
-                }
+    /**
+     * Listener for the parts of several messages fetched by
+     * {@link #fetchVoicemailPayloads(Map, long)}. The payloads are written by {@code writer}.
+     */
+    private final class PayloadPrefetchListener implements ImapFolder.BodyPartListener {
+
+        private final Map<String, VoicemailFetchedCallback> mCallbacks;
+        private final Executor mWriter;
+        // Messages that were received without an audio part so far.
+        private final Set<String> mWithoutPayload = new LinkedHashSet<>();
+
+        public PayloadPrefetchListener(Map<String, VoicemailFetchedCallback> callbacks,
+                Executor writer) {
+            mCallbacks = callbacks;
+            mWriter = writer;
+        }
+
+        @Override
+        public boolean bodyPartRetrieved(Message message, String mimeType,
+                MimePartIterator parts) {
+            String uid = message.getUid();
+            if (!mimeType.startsWith("audio/")) {
+                mWithoutPayload.add(uid);
+                return true;
             }
-            LogUtils.e(TAG, "No audio attachment found on this voicemail, mimeTypes:" + mimeTypes);
-            return null;
+            mWithoutPayload.remove(uid);
+            try {
+                byte[] bytes = IOUtils.toByteArray(parts.getDecodedInputStream());
+                LogUtils.d(TAG, String.format("Prefetched %s bytes of data for %s",
+                        bytes.length, uid));
+                writePayload(uid, new VoicemailPayload(mimeType, bytes));
+            } catch (MessagingException e) {
+                LogUtils.e(TAG, "Messaging Exception:", e);
+                writePayload(uid, null);
+            } catch (IOException e) {
+                LogUtils.e(TAG, "IO Exception:", e);
+                writePayload(uid, null);
+            }
+            // Only the first audio part is used, skip the rest of the message.
+            return false;
+        }
+
+        /**
+         * Reports the messages that had no audio part.
+         */
+        public void onFetchFinished() {
+            for (String uid : mWithoutPayload) {
+                LogUtils.e(TAG, "No audio attachment found on voicemail " + uid);
+                writePayload(uid, null);
+            }
+            mWithoutPayload.clear();
+        }
+
+        private void writePayload(String uid, final VoicemailPayload payload) {
+            final VoicemailFetchedCallback callback = mCallbacks.get(uid);
+            if (callback == null) {
+                return;
+            }
+            mWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.setVoicemailContent(payload);
+                }
+            });
         }
     }
 
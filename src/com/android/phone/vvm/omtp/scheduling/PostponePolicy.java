@@ -24,7 +24,8 @@ import com.android.phone.vvm.omtp.VvmLog;
  * A task with Postpone policy will not be executed immediately. It will wait for a while and if a
  * duplicated task is queued during the duration, the task will be postponed further. The task will
  * only be executed if no new task was added in postponeMillis. Useful to batch small tasks in quick
- * succession together.
+ * succession together. Retries queued by {@link RetryPolicy} are not postponed, they keep the delay
+ * it gave them.
  */
 public class PostponePolicy implements Policy {
 
@@ -32,6 +33,7 @@ public class PostponePolicy implements Policy {
 
     private final int mPostponeMillis;
     private BaseTask mTask;
+    private boolean mIsRetry;
 
     public PostponePolicy(int postponeMillis) {
         mPostponeMillis = postponeMillis;
@@ -40,6 +42,10 @@ public class PostponePolicy implements Policy {
     @Override
     public void onCreate(BaseTask task, Intent intent, int flags, int startId) {
         mTask = task;
+        mIsRetry = intent.getIntExtra(RetryPolicy.EXTRA_RETRY_COUNT, 0) > 0;
+        if (mIsRetry) {
+            return;
+        }
         mTask.setExecutionTime(mTask.getTimeMillis() + mPostponeMillis);
     }
 
@@ -60,7 +66,7 @@ public class PostponePolicy implements Policy {
 
     @Override
     public void onDuplicatedTaskAdded() {
-        if (mTask.hasStarted()) {
+        if (mTask.hasStarted() || mIsRetry) {
             return;
         }
         VvmLog.d(TAG, "postponing " + mTask);
@@ -30,7 +30,7 @@ import com.android.phone.vvm.omtp.utils.PhoneAccountHandleConverter;
 public class RetryPolicy implements Policy {
 
     private static final String TAG = "RetryPolicy";
-    private static final String EXTRA_RETRY_COUNT = "extra_retry_count";
+    static final String EXTRA_RETRY_COUNT = "extra_retry_count";
 
     private final int mRetryLimit;
     private final int mRetryDelayMillis;
@@ -36,6 +36,7 @@ import android.os.SystemClock;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.phone.Assert;
 import com.android.phone.NeededForTesting;
+import com.android.phone.VoicemailStatusWriter;
 import com.android.phone.vvm.omtp.VvmLog;
 import com.android.phone.vvm.omtp.scheduling.Task.TaskId;
 import java.util.ArrayDeque;
@@ -128,6 +129,8 @@ public class TaskSchedulerService extends Service {
             } catch (Throwable throwable) {
                 VvmLog.e(TAG, "Exception while executing task " + task + ":", throwable);
             }
+            // Write the status the task left, rather than each of its intermediate states.
+            VoicemailStatusWriter.flush();
 
             Message schedulerMessage = mMainThreadHandler.obtainMessage();
             schedulerMessage.obj = task;
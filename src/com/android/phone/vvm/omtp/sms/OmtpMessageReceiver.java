@@ -28,12 +28,12 @@ import android.telecom.Voicemail;
 import com.android.phone.settings.VisualVoicemailSettingsUtil;
 import com.android.phone.vvm.omtp.ActivationTask;
 import com.android.phone.vvm.omtp.OmtpConstants;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigCache;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.VvmLog;
 import com.android.phone.vvm.omtp.protocol.VisualVoicemailProtocol;
-import com.android.phone.vvm.omtp.sync.OmtpVvmSyncService;
-import com.android.phone.vvm.omtp.sync.SyncOneTask;
-import com.android.phone.vvm.omtp.sync.SyncTask;
+import com.android.phone.vvm.omtp.sync.SyncDemandAggregator;
+import com.android.phone.vvm.omtp.sync.SyncDemandTask;
 import com.android.phone.vvm.omtp.sync.VoicemailsQueryHelper;
 import com.android.phone.vvm.omtp.utils.PhoneAccountHandleConverter;
 
@@ -67,7 +67,7 @@ public class OmtpMessageReceiver extends BroadcastReceiver {
             return;
         }
 
-        OmtpVvmCarrierConfigHelper helper = new OmtpVvmCarrierConfigHelper(mContext, subId);
+        OmtpVvmCarrierConfigHelper helper = OmtpVvmCarrierConfigCache.get(mContext, subId);
         if (!VisualVoicemailSettingsUtil.isEnabled(mContext, phone)) {
             if (helper.isLegacyModeEnabled()) {
                 LegacyModeSmsHandler.handle(context, intent, phone);
@@ -132,6 +132,10 @@ public class OmtpMessageReceiver extends BroadcastReceiver {
                     return;
                 }
 
+                if (SyncDemandAggregator.isPending(phone, message.getId())) {
+                    VvmLog.i(TAG, "Voicemail " + message.getId() + " already pending, ignoring");
+                    return;
+                }
                 Voicemail.Builder builder = Voicemail.createForInsertion(
                         message.getTimestampMillis(), message.getSender())
                         .setPhoneAccount(phone)
@@ -144,11 +148,11 @@ public class OmtpMessageReceiver extends BroadcastReceiver {
                 if (queryHelper.isVoicemailUnique(voicemail)) {
                     Uri uri = VoicemailContract.Voicemails.insert(mContext, voicemail);
                     voicemail = builder.setId(ContentUris.parseId(uri)).setUri(uri).build();
-                    SyncOneTask.start(mContext, phone, voicemail);
+                    SyncDemandTask.startNewVoicemail(mContext, phone, voicemail);
                 }
                 break;
             case OmtpConstants.MAILBOX_UPDATE:
-                SyncTask.start(mContext, phone, OmtpVvmSyncService.SYNC_DOWNLOAD_ONLY);
+                SyncDemandTask.startFullSync(mContext, phone);
                 break;
             case OmtpConstants.GREETINGS_UPDATE:
                 // Not implemented in V1
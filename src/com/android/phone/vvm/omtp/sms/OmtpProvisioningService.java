@@ -24,6 +24,7 @@ import android.provider.VoicemailContract;
 import android.telecom.PhoneAccountHandle;
 
 import com.android.phone.PhoneUtils;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigCache;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.utils.PhoneAccountHandleConverter;
 
@@ -63,7 +64,7 @@ public class OmtpProvisioningService extends IntentService {
     }
 
     private void startProvisioning(PhoneAccountHandle phone, StatusMessage message, Bundle data) {
-        OmtpVvmCarrierConfigHelper helper = new OmtpVvmCarrierConfigHelper(this,
+        OmtpVvmCarrierConfigHelper helper = OmtpVvmCarrierConfigCache.get(this,
                 PhoneUtils.getSubIdForPhoneAccountHandle(phone));
 
     }
@@ -31,6 +31,7 @@ import android.telephony.SmsManager;
 
 import com.android.phone.Assert;
 import com.android.phone.vvm.omtp.OmtpConstants;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigCache;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.VvmLog;
 import com.android.phone.vvm.omtp.protocol.VisualVoicemailProtocol;
@@ -126,7 +127,7 @@ public class StatusSmsFetcher extends BroadcastReceiver implements Closeable {
 
         VvmLog.i(TAG, "VVM SMS with event " + eventType
                 + " received, attempting to translate to STATUS SMS");
-        OmtpVvmCarrierConfigHelper helper = new OmtpVvmCarrierConfigHelper(context, subId);
+        OmtpVvmCarrierConfigHelper helper = OmtpVvmCarrierConfigCache.get(context, subId);
         VisualVoicemailProtocol protocol = helper.getProtocol();
         if (protocol == null) {
             return;
@@ -18,16 +18,19 @@ package com.android.phone.vvm.omtp.sync;
 import android.content.Context;
 import android.net.Network;
 import android.net.Uri;
-import android.provider.VoicemailContract;
+import android.os.Environment;
+import android.os.storage.StorageManager;
 import android.telecom.PhoneAccountHandle;
 import android.telecom.Voicemail;
 import android.text.TextUtils;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.phone.Assert;
 import com.android.phone.PhoneUtils;
 import com.android.phone.VoicemailStatus;
 import com.android.phone.settings.VisualVoicemailSettingsUtil;
 import com.android.phone.vvm.omtp.ActivationTask;
 import com.android.phone.vvm.omtp.OmtpEvents;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigCache;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.VvmLog;
 import com.android.phone.vvm.omtp.fetch.VoicemailFetchedCallback;
@@ -37,7 +40,11 @@ import com.android.phone.vvm.omtp.scheduling.BaseTask;
 import com.android.phone.vvm.omtp.sync.VvmNetworkRequest.NetworkWrapper;
 import com.android.phone.vvm.omtp.sync.VvmNetworkRequest.RequestFailedException;
 import com.android.phone.vvm.omtp.utils.PhoneAccountHandleConverter;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -60,11 +67,6 @@ public class OmtpVvmSyncService {
      * Only download from the server.
      */
     public static final String SYNC_DOWNLOAD_ONLY = "download_only";
-    /**
-     * Only download single voicemail transcription.
-     */
-    public static final String SYNC_DOWNLOAD_ONE_TRANSCRIPTION =
-            "download_one_transcription";
 
     private final Context mContext;
 
@@ -73,6 +75,9 @@ public class OmtpVvmSyncService {
     // Constant indicating that there has never been a full sync.
     public static final long NO_PRIOR_FULL_SYNC = -1;
 
+    // Upper bound on the size of the voicemails prefetched in one sync.
+    private static final long PREFETCH_BYTE_BUDGET = 20 * 1024 * 1024;
+
     private VoicemailsQueryHelper mQueryHelper;
 
     public OmtpVvmSyncService(Context context) {
@@ -84,11 +89,33 @@ public class OmtpVvmSyncService {
             Voicemail voicemail, VoicemailStatus.Editor status) {
         Assert.isTrue(phoneAccount != null);
         VvmLog.v(TAG, "Sync requested: " + action + " - for account: " + phoneAccount);
-        setupAndSendRequest(task, phoneAccount, voicemail, action, status);
+        if (voicemail == null) {
+            setupAndSendRequest(task, phoneAccount, action, null, status);
+        } else {
+            setupAndSendRequest(task, phoneAccount, null, Collections.singletonList(voicemail),
+                    status);
+        }
     }
 
+    /**
+     * Performs the work collected by {@link SyncDemandAggregator} in a single session: a download
+     * if requested, then fetching the new voicemails.
+     */
+    public void sync(BaseTask task, SyncDemandAggregator.Plan plan,
+            PhoneAccountHandle phoneAccount, VoicemailStatus.Editor status) {
+        Assert.isTrue(phoneAccount != null);
+        VvmLog.v(TAG, "Sync requested: full sync " + plan.fullSync + ", "
+                + plan.newVoicemails.size() + " new voicemails - for account: " + phoneAccount);
+        setupAndSendRequest(task, phoneAccount, plan.fullSync ? SYNC_DOWNLOAD_ONLY : null,
+                plan.newVoicemails, status);
+    }
+
+    /**
+     * @param action the sync to perform for all voicemails, or null.
+     * @param voicemails new voicemails whose content should be fetched, or null.
+     */
     private void setupAndSendRequest(BaseTask task, PhoneAccountHandle phoneAccount,
-            Voicemail voicemail, String action, VoicemailStatus.Editor status) {
+            String action, List<Voicemail> voicemails, VoicemailStatus.Editor status) {
         if (!VisualVoicemailSettingsUtil.isEnabled(mContext, phoneAccount)) {
             VvmLog.v(TAG, "Sync requested for disabled account");
             return;
@@ -99,7 +126,7 @@ public class OmtpVvmSyncService {
             return;
         }
 
-        OmtpVvmCarrierConfigHelper config = new OmtpVvmCarrierConfigHelper(mContext, subId);
+        OmtpVvmCarrierConfigHelper config = OmtpVvmCarrierConfigCache.get(mContext, subId);
         // DATA_IMAP_OPERATION_STARTED posting should not be deferred. This event clears all data
         // channel errors, which should happen when the task starts, not when it ends. It is the
         // "Sync in progress..." status.
@@ -111,21 +138,26 @@ public class OmtpVvmSyncService {
                 task.fail();
                 return;
             }
-            doSync(task, network.get(), phoneAccount, voicemail, action, status);
+            doSync(task, network.get(), phoneAccount, action, voicemails, status);
         } catch (RequestFailedException e) {
             config.handleEvent(status, OmtpEvents.DATA_NO_CONNECTION_CELLULAR_REQUIRED);
             task.fail();
         }
     }
 
-    private void doSync(BaseTask task, Network network, PhoneAccountHandle phoneAccount,
-            Voicemail voicemail, String action, VoicemailStatus.Editor status) {
+    /**
+     * Performs the sync once {@link #sync} acquired {@code network}.
+     */
+    @VisibleForTesting
+    public void doSync(BaseTask task, Network network, PhoneAccountHandle phoneAccount,
+            String action, List<Voicemail> voicemails, VoicemailStatus.Editor status) {
         try (ImapHelper imapHelper = new ImapHelper(mContext, phoneAccount, network, status)) {
-            boolean success;
-            if (voicemail == null) {
+            boolean success = true;
+            if (action != null) {
                 success = syncAll(action, imapHelper, phoneAccount);
-            } else {
-                success = syncOne(imapHelper, voicemail, phoneAccount);
+            }
+            if (voicemails != null && !voicemails.isEmpty()) {
+                success = syncNew(imapHelper, voicemails, phoneAccount) && success;
             }
             if (success) {
                 // TODO: b/30569269 failure should interrupt all subsequent task via exceptions
@@ -157,17 +189,28 @@ public class OmtpVvmSyncService {
         return uploadSuccess && downloadSuccess;
     }
 
-    private boolean syncOne(ImapHelper imapHelper, Voicemail voicemail,
+    /**
+     * Fetches the content of voicemails that are already in the provider, such as the ones
+     * inserted when a SYNC SMS arrived.
+     */
+    private boolean syncNew(ImapHelper imapHelper, List<Voicemail> voicemails,
             PhoneAccountHandle account) {
         if (shouldPerformPrefetch(account, imapHelper)) {
-            VoicemailFetchedCallback callback = new VoicemailFetchedCallback(mContext,
-                    voicemail.getUri(), account);
-            imapHelper.fetchVoicemailPayload(callback, voicemail.getSourceData());
+            Map<String, VoicemailFetchedCallback> callbacks = new LinkedHashMap<>();
+            for (Voicemail voicemail : voicemails) {
+                callbacks.put(voicemail.getSourceData(),
+                        new VoicemailFetchedCallback(mContext, voicemail.getUri(), account));
+            }
+            imapHelper.fetchVoicemailPayloads(callbacks, getPrefetchBudget());
         }
 
-        return imapHelper.fetchTranscription(
-                new TranscriptionFetchedCallback(mContext, voicemail),
-                voicemail.getSourceData());
+        boolean success = true;
+        for (Voicemail voicemail : voicemails) {
+            success = imapHelper.fetchTranscription(
+                    new TranscriptionFetchedCallback(mContext, voicemail),
+                    voicemail.getSourceData()) && success;
+        }
+        return success;
     }
 
     private boolean upload(ImapHelper imapHelper) {
@@ -212,45 +255,65 @@ public class OmtpVvmSyncService {
         // They may be read or deleted on the server but not locally. Perform the
         // appropriate local operation if the status differs from the server. Remove
         // the messages that exist both locally and on the server to know which server
-        // messages to insert locally.
+        // messages to insert locally. All the changes are written in a single batch.
+        VoicemailsQueryHelper.Batch batch = mQueryHelper.newBatch();
         for (int i = 0; i < localVoicemails.size(); i++) {
             Voicemail localVoicemail = localVoicemails.get(i);
             Voicemail remoteVoicemail = remoteMap.remove(localVoicemail.getSourceData());
             if (remoteVoicemail == null) {
-                mQueryHelper.deleteFromDatabase(localVoicemail);
+                batch.delete(localVoicemail);
             } else {
                 if (remoteVoicemail.isRead() != localVoicemail.isRead()) {
-                    mQueryHelper.markReadInDatabase(localVoicemail);
+                    batch.markRead(localVoicemail);
                 }
 
                 if (!TextUtils.isEmpty(remoteVoicemail.getTranscription()) &&
                         TextUtils.isEmpty(localVoicemail.getTranscription())) {
-                    mQueryHelper.updateWithTranscription(localVoicemail,
+                    batch.updateTranscription(localVoicemail,
                             remoteVoicemail.getTranscription());
                 }
             }
         }
 
         // The leftover messages are messages that exist on the server but not locally.
-        boolean prefetchEnabled = shouldPerformPrefetch(account, imapHelper);
-        for (Voicemail remoteVoicemail : remoteMap.values()) {
-            Uri uri = VoicemailContract.Voicemails.insert(mContext, remoteVoicemail);
-            if (prefetchEnabled) {
-                VoicemailFetchedCallback fetchedCallback =
-                        new VoicemailFetchedCallback(mContext, uri, account);
-                imapHelper.fetchVoicemailPayload(fetchedCallback, remoteVoicemail.getSourceData());
+        List<Voicemail> newVoicemails = new ArrayList<>(remoteMap.values());
+        for (Voicemail remoteVoicemail : newVoicemails) {
+            batch.insert(remoteVoicemail);
+        }
+        List<Uri> newVoicemailUris = batch.apply();
+        if (newVoicemailUris == null) {
+            return false;
+        }
+
+        if (!newVoicemails.isEmpty() && shouldPerformPrefetch(account, imapHelper)) {
+            Map<String, VoicemailFetchedCallback> callbacks = new LinkedHashMap<>();
+            for (int i = 0; i < newVoicemails.size(); i++) {
+                callbacks.put(newVoicemails.get(i).getSourceData(),
+                        new VoicemailFetchedCallback(mContext, newVoicemailUris.get(i), account));
             }
+            imapHelper.fetchVoicemailPayloads(callbacks, getPrefetchBudget());
         }
 
         return true;
     }
 
     private boolean shouldPerformPrefetch(PhoneAccountHandle account, ImapHelper imapHelper) {
-        OmtpVvmCarrierConfigHelper carrierConfigHelper = new OmtpVvmCarrierConfigHelper(
+        OmtpVvmCarrierConfigHelper carrierConfigHelper = OmtpVvmCarrierConfigCache.get(
                 mContext, PhoneUtils.getSubIdForPhoneAccountHandle(account));
         return carrierConfigHelper.isPrefetchEnabled() && !imapHelper.isRoaming();
     }
 
+    /**
+     * @return how many bytes of voicemails may be prefetched in one sync. Less than
+     * {@link #PREFETCH_BYTE_BUDGET} if storage is getting low.
+     */
+    private long getPrefetchBudget() {
+        File dataDirectory = Environment.getDataDirectory();
+        long available = dataDirectory.getUsableSpace()
+                - StorageManager.from(mContext).getStorageLowBytes(dataDirectory);
+        return Math.max(0, Math.min(PREFETCH_BYTE_BUDGET, available));
+    }
+
     /**
      * Builds a map from provider data to message for the given collection of voicemails.
      */
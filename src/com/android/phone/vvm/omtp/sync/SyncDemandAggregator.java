@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.phone.vvm.omtp.sync;
+
+import android.annotation.Nullable;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.Voicemail;
+import android.util.ArrayMap;
+import com.android.internal.util.IndentingPrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the sync work requested by SYNC SMS for each account until a {@link SyncDemandTask}
+ * takes it, so a burst of SMS results in a single IMAP session. The work is described by a
+ * {@link Plan}: whether a full download is needed and which new voicemails to fetch.
+ */
+public class SyncDemandAggregator {
+
+    /**
+     * The work for one sync session of an account.
+     */
+    public static class Plan {
+        public final boolean fullSync;
+        public final List<Voicemail> newVoicemails;
+
+        private Plan(boolean fullSync, List<Voicemail> newVoicemails) {
+            this.fullSync = fullSync;
+            this.newVoicemails = newVoicemails;
+        }
+    }
+
+    private static class PendingDemand {
+        boolean fullSync;
+        // Keyed by source data (the IMAP UID), so repeated notifications are folded.
+        final Map<String, Voicemail> newVoicemails = new LinkedHashMap<>();
+    }
+
+    private static final Map<PhoneAccountHandle, PendingDemand> sPending = new ArrayMap<>();
+
+    private static int sRequests;
+    private static int sDuplicateRequests;
+    private static int sPlansTaken;
+
+    private SyncDemandAggregator() {}
+
+    /**
+     * Records that an SMS asked for a sync.
+     */
+    public static synchronized void onSyncRequested() {
+        sRequests++;
+    }
+
+    /**
+     * @return whether the voicemail with {@code sourceData} is already waiting to be fetched. The
+     * caller should drop the request in that case.
+     */
+    public static synchronized boolean isPending(PhoneAccountHandle phone, String sourceData) {
+        PendingDemand demand = sPending.get(phone);
+        if (demand != null && demand.newVoicemails.containsKey(sourceData)) {
+            sDuplicateRequests++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds work for {@code phone}, to be picked up by the next {@link #take(PhoneAccountHandle)}.
+     */
+    public static synchronized void add(PhoneAccountHandle phone, boolean fullSync,
+            @Nullable List<Voicemail> newVoicemails) {
+        if (!fullSync && (newVoicemails == null || newVoicemails.isEmpty())) {
+            return;
+        }
+        PendingDemand demand = sPending.get(phone);
+        if (demand == null) {
+            demand = new PendingDemand();
+            sPending.put(phone, demand);
+        }
+        demand.fullSync |= fullSync;
+        if (newVoicemails != null) {
+            for (Voicemail voicemail : newVoicemails) {
+                demand.newVoicemails.put(voicemail.getSourceData(), voicemail);
+            }
+        }
+    }
+
+    /**
+     * @return whether there is work for {@code phone} that no task has taken yet.
+     */
+    public static synchronized boolean hasPending(PhoneAccountHandle phone) {
+        return sPending.containsKey(phone);
+    }
+
+    /**
+     * Removes and returns all the pending work for {@code phone}, or null if there is none.
+     */
+    @Nullable
+    public static synchronized Plan take(PhoneAccountHandle phone) {
+        PendingDemand demand = sPending.remove(phone);
+        if (demand == null) {
+            return null;
+        }
+        sPlansTaken++;
+        return new Plan(demand.fullSync, new ArrayList<>(demand.newVoicemails.values()));
+    }
+
+    public static synchronized void dump(IndentingPrintWriter writer) {
+        writer.println("Sync requests from SMS: " + sRequests + ", duplicates dropped: "
+                + sDuplicateRequests + ", coalesced plans taken: " + sPlansTaken);
+        for (PendingDemand demand : sPending.values()) {
+            writer.println("pending: full sync " + demand.fullSync + ", "
+                    + demand.newVoicemails.size() + " new voicemails");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.phone.vvm.omtp.sync;
+
+import android.annotation.Nullable;
+import android.content.Context;
+import android.content.Intent;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.Voicemail;
+import com.android.phone.vvm.omtp.scheduling.BaseTask;
+import com.android.phone.vvm.omtp.scheduling.PostponePolicy;
+import com.android.phone.vvm.omtp.scheduling.RetryPolicy;
+import com.android.phone.vvm.omtp.utils.PhoneAccountHandleConverter;
+import java.util.ArrayList;
+
+/**
+ * Task to perform the syncs requested by SYNC SMS. The work carried by the intent is added to the
+ * {@link SyncDemandAggregator} when the task is created, and duplicated tasks are folded into the
+ * queued one, which waits until no SMS has arrived for {@link #POSTPONE_MILLIS}. The task then
+ * performs everything requested for the account in a single IMAP session.
+ */
+public class SyncDemandTask extends BaseTask {
+
+    private static final int RETRY_TIMES = 2;
+    private static final int RETRY_INTERVAL_MILLIS = 5_000;
+    private static final int POSTPONE_MILLIS = 3_000;
+
+    private static final String EXTRA_PHONE_ACCOUNT_HANDLE = "extra_phone_account_handle";
+    private static final String EXTRA_FULL_SYNC = "extra_full_sync";
+    private static final String EXTRA_VOICEMAILS = "extra_voicemails";
+
+    private final RetryPolicy mRetryPolicy;
+
+    private PhoneAccountHandle mPhone;
+    // The work taken by the last execution, to be requeued on retry.
+    private SyncDemandAggregator.Plan mPlan;
+
+    /**
+     * Requests the new voicemail to be fetched.
+     */
+    public static void startNewVoicemail(Context context, PhoneAccountHandle phone,
+            Voicemail voicemail) {
+        ArrayList<Voicemail> voicemails = new ArrayList<>();
+        voicemails.add(voicemail);
+        SyncDemandAggregator.onSyncRequested();
+        start(context, phone, false, voicemails);
+    }
+
+    /**
+     * Requests the voicemails on the server to be downloaded.
+     */
+    public static void startFullSync(Context context, PhoneAccountHandle phone) {
+        SyncDemandAggregator.onSyncRequested();
+        start(context, phone, true, null);
+    }
+
+    private static void start(Context context, PhoneAccountHandle phone, boolean fullSync,
+            @Nullable ArrayList<Voicemail> voicemails) {
+        Intent intent = BaseTask
+                .createIntent(context, SyncDemandTask.class,
+                        PhoneAccountHandleConverter.toSubId(phone));
+        intent.putExtra(EXTRA_PHONE_ACCOUNT_HANDLE, phone);
+        intent.putExtra(EXTRA_FULL_SYNC, fullSync);
+        if (voicemails != null) {
+            intent.putParcelableArrayListExtra(EXTRA_VOICEMAILS, voicemails);
+        }
+        context.startService(intent);
+    }
+
+    public SyncDemandTask() {
+        super(TASK_SYNC_DEMAND);
+        mRetryPolicy = new RetryPolicy(RETRY_TIMES, RETRY_INTERVAL_MILLIS);
+        addPolicy(mRetryPolicy);
+        addPolicy(new PostponePolicy(POSTPONE_MILLIS));
+    }
+
+    @Override
+    public void onCreate(Context context, Intent intent, int flags, int startId) {
+        super.onCreate(context, intent, flags, startId);
+        mPhone = intent.getParcelableExtra(EXTRA_PHONE_ACCOUNT_HANDLE);
+        ArrayList<Voicemail> voicemails = intent.getParcelableArrayListExtra(EXTRA_VOICEMAILS);
+        SyncDemandAggregator.add(mPhone, intent.getBooleanExtra(EXTRA_FULL_SYNC, false),
+                voicemails);
+    }
+
+    @Override
+    public void onExecuteInBackgroundThread() {
+        mPlan = SyncDemandAggregator.take(mPhone);
+        if (mPlan == null) {
+            return;
+        }
+        OmtpVvmSyncService service = new OmtpVvmSyncService(getContext());
+        service.sync(this, mPlan, mPhone, mRetryPolicy.getVoicemailStatusEditor());
+    }
+
+    @Override
+    public void onCompleted() {
+        super.onCompleted();
+        // Work added while this task was running was folded into it but not performed.
+        if (SyncDemandAggregator.hasPending(mPhone)) {
+            start(getContext(), mPhone, false, null);
+        }
+    }
+
+    @Override
+    public Intent createRestartIntent() {
+        Intent intent = super.createRestartIntent();
+        intent.putExtra(EXTRA_PHONE_ACCOUNT_HANDLE, mPhone);
+        if (mPlan != null) {
+            intent.putExtra(EXTRA_FULL_SYNC, mPlan.fullSync);
+            intent.putParcelableArrayListExtra(EXTRA_VOICEMAILS,
+                    new ArrayList<>(mPlan.newVoicemails));
+        }
+        return intent;
+    }
+}
@@ -15,16 +15,21 @@
  */
 package com.android.phone.vvm.omtp.sync;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.provider.VoicemailContract;
 import android.provider.VoicemailContract.Voicemails;
 import android.telecom.PhoneAccountHandle;
 import android.telecom.Voicemail;
+import com.android.phone.vvm.omtp.VvmLog;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -32,6 +37,12 @@ import java.util.List;
  * Construct queries to interact with the voicemails table.
  */
 public class VoicemailsQueryHelper {
+    private static final String TAG = "VoicemailsQueryHelper";
+
+    // Upper bound on the operations applied in one transaction, and on the ids listed in one
+    // "_id IN (...)" selection.
+    private static final int MAX_OPERATIONS_PER_BATCH = 100;
+
     final static String[] PROJECTION = new String[] {
             Voicemails._ID,              // 0
             Voicemails.SOURCE_DATA,      // 1
@@ -128,17 +139,8 @@ public class VoicemailsQueryHelper {
         if (count == 0) {
             return 0;
         }
-
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < count; i++) {
-            if (i > 0) {
-                sb.append(",");
-            }
-            sb.append(voicemails.get(i).getId());
-        }
-
-        String selectionStatement = String.format(Voicemails._ID + " IN (%s)", sb.toString());
-        return mContentResolver.delete(Voicemails.CONTENT_URI, selectionStatement, null);
+        return mContentResolver.delete(Voicemails.CONTENT_URI,
+                buildIdSelection(voicemails, 0, count), null);
     }
 
     /**
@@ -150,11 +152,12 @@ public class VoicemailsQueryHelper {
     }
 
     public int markReadInDatabase(List<Voicemail> voicemails) {
-        int count = voicemails.size();
-        for (int i = 0; i < count; i++) {
-            markReadInDatabase(voicemails.get(i));
+        Batch batch = newBatch();
+        for (Voicemail voicemail : voicemails) {
+            batch.markRead(voicemail);
         }
-        return count;
+        batch.apply();
+        return voicemails.size();
     }
 
     /**
@@ -178,8 +181,11 @@ public class VoicemailsQueryHelper {
      */
     public int markCleanInDatabase(List<Voicemail> voicemails) {
         int count = voicemails.size();
-        for (int i = 0; i < count; i++) {
-            markCleanInDatabase(voicemails.get(i));
+        // ContentProviderOperation doesn't allow empty updates, so this can't be part of a Batch.
+        for (int i = 0; i < count; i += MAX_OPERATIONS_PER_BATCH) {
+            int end = Math.min(i + MAX_OPERATIONS_PER_BATCH, count);
+            mContentResolver.update(mSourceUri, new ContentValues(),
+                    buildIdSelection(voicemails, i, end), null);
         }
         return count;
     }
@@ -241,4 +247,135 @@ public class VoicemailsQueryHelper {
         }
         return true;
     }
+
+    /**
+     * @return a new {@link Batch} that writes to the voicemails of this source.
+     */
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Collects changes to the voicemails table and writes them with
+     * {@link ContentResolver#applyBatch}, so the number of provider calls and transactions
+     * depends on the number of batches rather than the number of voicemails. Deletes and read
+     * marks for many voicemails are merged into a single operation each.
+     */
+    public class Batch {
+        private final List<Voicemail> mDeletes = new ArrayList<>();
+        private final List<Voicemail> mReads = new ArrayList<>();
+        private final ArrayList<ContentProviderOperation> mUpdates = new ArrayList<>();
+        private final List<Voicemail> mInserts = new ArrayList<>();
+
+        private Batch() {}
+
+        public void delete(Voicemail voicemail) {
+            mDeletes.add(voicemail);
+        }
+
+        public void markRead(Voicemail voicemail) {
+            mReads.add(voicemail);
+        }
+
+        public void updateTranscription(Voicemail voicemail, String transcription) {
+            mUpdates.add(ContentProviderOperation
+                    .newUpdate(ContentUris.withAppendedId(mSourceUri, voicemail.getId()))
+                    .withValue(Voicemails.TRANSCRIPTION, transcription)
+                    .build());
+        }
+
+        public void insert(Voicemail voicemail) {
+            mInserts.add(voicemail);
+        }
+
+        /**
+         * Writes the collected changes and clears the batch.
+         *
+         * @return the URIs of the inserted voicemails in the order they were added, or
+         * {@code null} if writing failed. Changes in batches that were already applied are kept.
+         */
+        public List<Uri> apply() {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            for (int i = 0; i < mDeletes.size(); i += MAX_OPERATIONS_PER_BATCH) {
+                int end = Math.min(i + MAX_OPERATIONS_PER_BATCH, mDeletes.size());
+                operations.add(ContentProviderOperation.newDelete(Voicemails.CONTENT_URI)
+                        .withSelection(buildIdSelection(mDeletes, i, end), null)
+                        .build());
+            }
+            for (int i = 0; i < mReads.size(); i += MAX_OPERATIONS_PER_BATCH) {
+                int end = Math.min(i + MAX_OPERATIONS_PER_BATCH, mReads.size());
+                operations.add(ContentProviderOperation.newUpdate(mSourceUri)
+                        .withSelection(buildIdSelection(mReads, i, end), null)
+                        .withValue(Voicemails.IS_READ, "1")
+                        .build());
+            }
+            operations.addAll(mUpdates);
+            int firstInsert = operations.size();
+            for (Voicemail voicemail : mInserts) {
+                operations.add(ContentProviderOperation.newInsert(mSourceUri)
+                        .withValues(getContentValues(voicemail))
+                        .build());
+            }
+
+            mDeletes.clear();
+            mReads.clear();
+            mUpdates.clear();
+            mInserts.clear();
+
+            List<Uri> insertedUris = new ArrayList<>();
+            for (int i = 0; i < operations.size(); i += MAX_OPERATIONS_PER_BATCH) {
+                int end = Math.min(i + MAX_OPERATIONS_PER_BATCH, operations.size());
+                ContentProviderResult[] results;
+                try {
+                    results = mContentResolver.applyBatch(VoicemailContract.AUTHORITY,
+                            new ArrayList<>(operations.subList(i, end)));
+                } catch (RemoteException | OperationApplicationException e) {
+                    VvmLog.e(TAG, "Unable to apply voicemail batch", e);
+                    return null;
+                }
+                for (int j = Math.max(i, firstInsert); j < end; j++) {
+                    insertedUris.add(results[j - i].uri);
+                }
+            }
+            return insertedUris;
+        }
+    }
+
+    /**
+     * @return a selection matching the ids of {@code voicemails} from {@code start} (inclusive)
+     * to {@code end} (exclusive).
+     */
+    private static String buildIdSelection(List<Voicemail> voicemails, int start, int end) {
+        StringBuilder sb = new StringBuilder(Voicemails._ID).append(" IN (");
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                sb.append(",");
+            }
+            sb.append(voicemails.get(i).getId());
+        }
+        return sb.append(")").toString();
+    }
+
+    /**
+     * Same values as {@link VoicemailContract.Voicemails#insert(Context, Voicemail)} writes.
+     */
+    private static ContentValues getContentValues(Voicemail voicemail) {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(Voicemails.DATE, String.valueOf(voicemail.getTimestampMillis()));
+        contentValues.put(Voicemails.NUMBER, voicemail.getNumber());
+        contentValues.put(Voicemails.DURATION, String.valueOf(voicemail.getDuration()));
+        contentValues.put(Voicemails.SOURCE_PACKAGE, voicemail.getSourcePackage());
+        contentValues.put(Voicemails.SOURCE_DATA, voicemail.getSourceData());
+        contentValues.put(Voicemails.IS_READ, voicemail.isRead() ? 1 : 0);
+        PhoneAccountHandle phoneAccount = voicemail.getPhoneAccount();
+        if (phoneAccount != null) {
+            contentValues.put(Voicemails.PHONE_ACCOUNT_COMPONENT_NAME,
+                    phoneAccount.getComponentName().flattenToString());
+            contentValues.put(Voicemails.PHONE_ACCOUNT_ID, phoneAccount.getId());
+        }
+        if (voicemail.getTranscription() != null) {
+            contentValues.put(Voicemails.TRANSCRIPTION, voicemail.getTranscription());
+        }
+        return contentValues;
+    }
 }
@@ -17,12 +17,19 @@
 package com.android.phone.vvm.omtp.sync;
 
 import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.telecom.PhoneAccountHandle;
+import android.util.ArrayMap;
+import com.android.internal.util.IndentingPrintWriter;
 import com.android.phone.VoicemailStatus;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.VvmLog;
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -30,11 +37,32 @@ import java.util.concurrent.Future;
 /**
  * Class to retrieve a {@link Network} synchronously. {@link #getNetwork(OmtpVvmCarrierConfigHelper,
  * PhoneAccountHandle)} will block until a suitable network is retrieved or it has failed.
+ *
+ * <p>A network that has been acquired is leased to the account. The lease is reference counted
+ * and is kept for a grace period after the last {@link NetworkWrapper} is closed, so tasks that
+ * follow each other (activation, sync, fetch) reuse the same network instead of requesting a new
+ * one every time.
  */
 public class VvmNetworkRequest {
 
     private static final String TAG = "VvmNetworkRequest";
 
+    /** Time an unused network is kept before it is released. */
+    private static final long GRACE_PERIOD_MILLIS = 30 * 1000;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    // Guarded by itself, as are the fields of the leases and the counters below.
+    private static final Map<PhoneAccountHandle, NetworkLease> sLeases = new ArrayMap<>();
+
+    private static int sAcquisitions;
+    private static int sFailedAcquisitions;
+    private static int sReuses;
+    private static int sExpiredLeases;
+    private static int sLostLeases;
+    private static long sTotalAcquisitionMillis;
+    private static long sMaxAcquisitionMillis;
+
     /**
      * A wrapper around a Network returned by a {@link VvmNetworkRequestCallback}, which should be
      * closed once not needed anymore.
@@ -42,11 +70,15 @@ public class VvmNetworkRequest {
     public static class NetworkWrapper implements Closeable {
 
         private final Network mNetwork;
-        private final VvmNetworkRequestCallback mCallback;
+        private final NetworkLease mLease;
+        private final VoicemailStatus.Editor mStatus;
+        private boolean mClosed;
 
-        private NetworkWrapper(Network network, VvmNetworkRequestCallback callback) {
+        private NetworkWrapper(Network network, NetworkLease lease,
+                VoicemailStatus.Editor status) {
             mNetwork = network;
-            mCallback = callback;
+            mLease = lease;
+            mStatus = status;
         }
 
         public Network get() {
@@ -55,7 +87,11 @@ public class VvmNetworkRequest {
 
         @Override
         public void close() {
-            mCallback.releaseNetwork();
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mLease.release(mStatus);
         }
     }
 
@@ -69,46 +105,228 @@ public class VvmNetworkRequest {
     @NonNull
     public static NetworkWrapper getNetwork(OmtpVvmCarrierConfigHelper config,
         PhoneAccountHandle handle, VoicemailStatus.Editor status) throws RequestFailedException {
-        FutureNetworkRequestCallback callback = new FutureNetworkRequestCallback(config, handle,
-            status);
-        callback.requestNetwork();
+        synchronized (sLeases) {
+            NetworkLease lease = sLeases.get(handle);
+            if (lease != null && lease.acquire(status)) {
+                sReuses++;
+                VvmLog.i(TAG, "reusing leased network");
+                return new NetworkWrapper(lease.mNetwork, lease, status);
+            }
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        NetworkLease lease = new NetworkLease(config, handle, status);
+        lease.requestNetwork();
+        Network network;
         try {
-            return callback.getFuture().get();
+            network = lease.getFuture().get();
         } catch (InterruptedException | ExecutionException e) {
-            callback.releaseNetwork();
+            lease.releaseNetwork();
             VvmLog.e(TAG, "can't get future network", e);
+            synchronized (sLeases) {
+                sFailedAcquisitions++;
+            }
             throw new RequestFailedException(e);
         }
+
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        synchronized (sLeases) {
+            if (network == null) {
+                sFailedAcquisitions++;
+                return null;
+            }
+            sAcquisitions++;
+            sTotalAcquisitionMillis += elapsed;
+            sMaxAcquisitionMillis = Math.max(sMaxAcquisitionMillis, elapsed);
+            lease.mNetwork = network;
+            lease.mRefCount = 1;
+            // Another task may have leased a network in the meantime, or ours may already be
+            // lost. Only share a live network that nobody else is sharing.
+            if (!lease.mReleased && !sLeases.containsKey(handle)) {
+                sLeases.put(handle, lease);
+                lease.mShared = true;
+            }
+        }
+        VvmLog.i(TAG, "network acquired in " + elapsed + "ms");
+        return new NetworkWrapper(network, lease, status);
     }
 
-    private static class FutureNetworkRequestCallback extends VvmNetworkRequestCallback {
+    public static void dump(IndentingPrintWriter writer) {
+        synchronized (sLeases) {
+            writer.println("Network leases: grace period " + GRACE_PERIOD_MILLIS + "ms");
+            writer.increaseIndent();
+            writer.println("acquired: " + sAcquisitions + ", failed: " + sFailedAcquisitions
+                    + ", reused: " + sReuses + ", expired: " + sExpiredLeases + ", lost: "
+                    + sLostLeases);
+            writer.println("acquisition latency: avg "
+                    + (sAcquisitions == 0 ? 0 : sTotalAcquisitionMillis / sAcquisitions)
+                    + "ms max " + sMaxAcquisitionMillis + "ms");
+            for (NetworkLease lease : sLeases.values()) {
+                writer.println("lease: " + lease.mRefCount + " users");
+            }
+            writer.decreaseIndent();
+        }
+    }
+
+    private static class NetworkLease extends VvmNetworkRequestCallback {
 
         /**
          * {@link CompletableFuture#get()} will block until {@link CompletableFuture#
          * complete(Object) } has been called on the other thread.
          */
-        private final CompletableFuture<NetworkWrapper> mFuture = new CompletableFuture<>();
+        private final CompletableFuture<Network> mFuture = new CompletableFuture<>();
+
+        private final PhoneAccountHandle mHandle;
+
+        private final Runnable mExpireRunnable = new Runnable() {
+            @Override
+            public void run() {
+                expire();
+            }
+        };
+
+        // The status editors of the tasks using the network, which are told if it is lost.
+        private final ArrayList<VoicemailStatus.Editor> mHolders = new ArrayList<>();
+
+        private Network mNetwork;
+        private int mRefCount;
+        // Whether the lease is in sLeases and may be handed to other tasks.
+        private boolean mShared;
+        private boolean mReleased;
 
-        public FutureNetworkRequestCallback(OmtpVvmCarrierConfigHelper config,
+        public NetworkLease(OmtpVvmCarrierConfigHelper config,
             PhoneAccountHandle phoneAccount, VoicemailStatus.Editor status) {
             super(config, phoneAccount, status);
+            mHandle = phoneAccount;
+            mHolders.add(status);
         }
 
-        public Future<NetworkWrapper> getFuture() {
+        public Future<Network> getFuture() {
             return mFuture;
         }
 
+        /**
+         * Adds a user to the lease. Must hold sLeases.
+         *
+         * @return false if the lease can't be used anymore.
+         */
+        private boolean acquire(VoicemailStatus.Editor status) {
+            if (mReleased || mNetwork == null) {
+                return false;
+            }
+            mRefCount++;
+            mHolders.add(status);
+            sHandler.removeCallbacks(mExpireRunnable);
+            return true;
+        }
+
+        /**
+         * Removes a user from the lease, and schedules the network to be released once it has no
+         * users.
+         */
+        private void release(VoicemailStatus.Editor status) {
+            synchronized (sLeases) {
+                mRefCount--;
+                removeHolder(status);
+                if (mRefCount > 0) {
+                    return;
+                }
+                if (mShared && !mReleased) {
+                    sHandler.postDelayed(mExpireRunnable, GRACE_PERIOD_MILLIS);
+                    return;
+                }
+            }
+            expire();
+        }
+
+        /**
+         * Must hold sLeases.
+         */
+        private void removeHolder(VoicemailStatus.Editor status) {
+            for (int i = 0; i < mHolders.size(); i++) {
+                if (mHolders.get(i) == status) {
+                    mHolders.remove(i);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Releases the network if it has no users.
+         */
+        private void expire() {
+            synchronized (sLeases) {
+                if (mRefCount > 0 || mReleased) {
+                    return;
+                }
+                if (mShared) {
+                    sExpiredLeases++;
+                }
+                unshare();
+            }
+            releaseNetwork();
+        }
+
+        /**
+         * Must hold sLeases.
+         */
+        private void unshare() {
+            if (mShared) {
+                mShared = false;
+                sLeases.remove(mHandle);
+            }
+            sHandler.removeCallbacks(mExpireRunnable);
+        }
+
         @Override
         public void onAvailable(Network network) {
             super.onAvailable(network);
-            mFuture.complete(new NetworkWrapper(network, this));
+            mFuture.complete(network);
         }
 
         @Override
         public void onFailed(String reason) {
+            boolean idle;
+            synchronized (sLeases) {
+                if (mShared) {
+                    sLostLeases++;
+                }
+                unshare();
+                idle = mNetwork != null && mRefCount == 0;
+            }
+            if (idle) {
+                // No task is using the network, there is no failure to report.
+                VvmLog.i(TAG, "idle leased network lost: " + reason);
+                releaseNetwork();
+                return;
+            }
             super.onFailed(reason);
             mFuture.complete(null);
         }
 
+        @Override
+        protected void reportFailure() {
+            // Tell every task using the network, not just the one that requested it, which may
+            // have finished already.
+            ArrayList<VoicemailStatus.Editor> holders;
+            synchronized (sLeases) {
+                holders = new ArrayList<>(mHolders);
+            }
+            for (VoicemailStatus.Editor status : holders) {
+                reportFailure(status);
+            }
+        }
+
+        @Override
+        public void releaseNetwork() {
+            synchronized (sLeases) {
+                if (mReleased) {
+                    return;
+                }
+                mReleased = true;
+                unshare();
+            }
+            super.releaseNetwork();
+        }
     }
 }
@@ -27,6 +27,7 @@ import android.telecom.PhoneAccountHandle;
 import com.android.phone.PhoneUtils;
 import com.android.phone.VoicemailStatus;
 import com.android.phone.vvm.omtp.OmtpEvents;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigCache;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.VvmLog;
 
@@ -60,7 +61,7 @@ public abstract class VvmNetworkRequestCallback extends ConnectivityManager.Netw
         mPhoneAccount = phoneAccount;
         mSubId = PhoneUtils.getSubIdForPhoneAccountHandle(phoneAccount);
         mStatus = status;
-        mCarrierConfigHelper = new OmtpVvmCarrierConfigHelper(context, mSubId);
+        mCarrierConfigHelper = OmtpVvmCarrierConfigCache.get(context, mSubId);
         mNetworkRequest = createNetworkRequest();
     }
 
@@ -161,12 +162,23 @@ public abstract class VvmNetworkRequestCallback extends ConnectivityManager.Netw
     @CallSuper
     public void onFailed(String reason) {
         VvmLog.d(TAG, "onFailed: " + reason);
+        reportFailure();
+        releaseNetwork();
+    }
+
+    /**
+     * Reports the loss of the network to the users of the request.
+     */
+    protected void reportFailure() {
+        reportFailure(mStatus);
+    }
+
+    protected final void reportFailure(VoicemailStatus.Editor status) {
         if (mCarrierConfigHelper.isCellularDataRequired()) {
             mCarrierConfigHelper
-                .handleEvent(mStatus, OmtpEvents.DATA_NO_CONNECTION_CELLULAR_REQUIRED);
+                .handleEvent(status, OmtpEvents.DATA_NO_CONNECTION_CELLULAR_REQUIRED);
         } else {
-            mCarrierConfigHelper.handleEvent(mStatus, OmtpEvents.DATA_NO_CONNECTION);
+            mCarrierConfigHelper.handleEvent(status, OmtpEvents.DATA_NO_CONNECTION);
         }
-        releaseNetwork();
     }
 }
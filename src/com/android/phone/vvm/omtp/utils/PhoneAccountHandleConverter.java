@@ -19,8 +19,7 @@ package com.android.phone.vvm.omtp.utils;
 import android.annotation.Nullable;
 import android.telecom.PhoneAccountHandle;
 import android.telephony.SubscriptionManager;
-import com.android.internal.telephony.Phone;
-import com.android.internal.telephony.PhoneFactory;
+import com.android.phone.PhoneIdentityRegistry;
 import com.android.phone.PhoneUtils;
 import com.android.phone.vvm.omtp.VvmLog;
 
@@ -40,14 +39,11 @@ public class PhoneAccountHandleConverter {
             VvmLog.e(TAG, "invalid subId " + subId);
             return null;
         }
-        // Calling PhoneUtils.makePstnPhoneAccountHandle() with a phoneId might throw a NPE if the
-        // phone object cannot be found, so the Phone object should be created and checked here.
-        Phone phone = PhoneFactory.getPhone(SubscriptionManager.getPhoneId(subId));
-        if (phone == null) {
+        PhoneAccountHandle handle = PhoneIdentityRegistry.getPhoneAccountHandleForSubId(subId);
+        if (handle == null) {
             VvmLog.e(TAG, "Unable to find Phone for subId " + subId);
-            return null;
         }
-        return PhoneUtils.makePstnPhoneAccountHandle(phone);
+        return handle;
     }
 
     public static int toSubId(PhoneAccountHandle handle) {
@@ -5,8 +5,14 @@ import android.telecom.PhoneAccountHandle;
 import android.telecom.TelecomManager;
 
 import com.android.internal.util.IndentingPrintWriter;
+import com.android.phone.VoicemailStatusWriter;
+import com.android.phone.common.mail.store.imap.ImapLiteralStore;
+import com.android.phone.common.mail.store.imap.ImapTracer;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigCache;
 import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
 import com.android.phone.vvm.omtp.VvmLog;
+import com.android.phone.vvm.omtp.sync.SyncDemandAggregator;
+import com.android.phone.vvm.omtp.sync.VvmNetworkRequest;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
@@ -19,13 +25,25 @@ public class VvmDumpHandler {
         indentedWriter.println("******* OmtpVvm *******");
         indentedWriter.println("======= Configs =======");
         indentedWriter.increaseIndent();
+        OmtpVvmCarrierConfigCache.dump(indentedWriter);
         for (PhoneAccountHandle handle : TelecomManager.from(context)
                 .getCallCapablePhoneAccounts()) {
             int subId = PhoneAccountHandleConverter.toSubId(handle);
-            OmtpVvmCarrierConfigHelper config = new OmtpVvmCarrierConfigHelper(context, subId);
+            OmtpVvmCarrierConfigHelper config = OmtpVvmCarrierConfigCache.get(context, subId);
             indentedWriter.println(config.toString());
         }
         indentedWriter.decreaseIndent();
+        indentedWriter.println("======== Sync =========");
+        indentedWriter.increaseIndent();
+        SyncDemandAggregator.dump(indentedWriter);
+        VvmNetworkRequest.dump(indentedWriter);
+        VoicemailStatusWriter.dump(indentedWriter);
+        indentedWriter.decreaseIndent();
+        indentedWriter.println("======== IMAP =========");
+        indentedWriter.increaseIndent();
+        ImapLiteralStore.dump(indentedWriter);
+        ImapTracer.dump(fd, indentedWriter, args);
+        indentedWriter.decreaseIndent();
         indentedWriter.println("======== Logs =========");
         VvmLog.dump(fd, indentedWriter, args);
     }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.services.telephony;
+
+import android.os.SystemClock;
+import android.telephony.ServiceState;
+import android.util.ArrayMap;
+
+import com.android.internal.telephony.Phone;
+import com.android.phone.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Measures where the time goes while calls are set up.
+ * <p>
+ * A {@link Trace} is started when Telecom asks for a connection and follows the call through the
+ * dial, the precise call state changes reported by the radio and the states published to Telecom.
+ * Each phase is stamped once, with the time since the request. When the call becomes active or
+ * disconnects, the stamps are added to histograms kept per direction, subscription and radio
+ * technology, and the trace is kept among the recent ones, which can be exported as trace events
+ * with {@code dumpsys phone --call-setup-trace}.
+ */
+public class CallSetupTracer {
+
+    public static final int PHASE_CREATED = 0;
+    public static final int PHASE_DIAL_STARTED = 1;
+    public static final int PHASE_DIAL_RETURNED = 2;
+    public static final int PHASE_DIALING = 3;
+    public static final int PHASE_ALERTING = 4;
+    public static final int PHASE_INCOMING = 5;
+    public static final int PHASE_ACTIVE = 6;
+    public static final int PHASE_DISCONNECTED = 7;
+    public static final int PHASE_PUBLISHED_DIALING = 8;
+    public static final int PHASE_PUBLISHED_RINGING = 9;
+    public static final int PHASE_PUBLISHED_ACTIVE = 10;
+    private static final int PHASE_COUNT = 11;
+
+    private static final String[] PHASE_NAMES = {
+            "created", "dial_started", "dial_returned", "dialing", "alerting", "incoming",
+            "active", "disconnected", "published_dialing", "published_ringing",
+            "published_active"
+    };
+
+    private static final String TRACE_EXPORT_ARG = "--call-setup-trace";
+    private static final int MAX_RECENT_TRACES = 20;
+
+    // Upper limits of the latency buckets, in milliseconds.
+    private static final long[] BUCKET_LIMITS = {
+            50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000
+    };
+
+    // Guarded by sHistograms.
+    private static final Map<String, LatencyHistogram[]> sHistograms = new ArrayMap<>();
+    private static final ArrayDeque<Trace> sRecentTraces = new ArrayDeque<>();
+
+    private CallSetupTracer() {}
+
+    /**
+     * Starts tracing the setup of a call Telecom just asked for.
+     */
+    public static Trace start(boolean isOutgoing) {
+        return new Trace(isOutgoing);
+    }
+
+    /**
+     * The phases of the setup of one call.
+     */
+    public static class Trace {
+        private final boolean mIsOutgoing;
+        private final long mStartTime;
+        private final long[] mStamps = new long[PHASE_COUNT];
+        private String mKey;
+
+        private Trace(boolean isOutgoing) {
+            mIsOutgoing = isOutgoing;
+            mStartTime = SystemClock.elapsedRealtime();
+            Arrays.fill(mStamps, -1);
+        }
+
+        /**
+         * Stamps {@code phase} unless it has been stamped already or the trace is finished.
+         */
+        public void mark(int phase) {
+            if (mKey == null && mStamps[phase] < 0) {
+                mStamps[phase] = SystemClock.elapsedRealtime() - mStartTime;
+            }
+        }
+
+        public boolean isFinished() {
+            return mKey != null;
+        }
+
+        /**
+         * Adds the stamps to the histograms of the subscription and radio technology of
+         * {@code phone}. Later calls are ignored.
+         */
+        public void finish(Phone phone, boolean isIms) {
+            if (mKey != null) {
+                return;
+            }
+            StringBuilder key = new StringBuilder(mIsOutgoing ? "MO" : "MT");
+            if (phone != null) {
+                key.append(" sub ").append(phone.getSubId()).append(' ');
+                key.append(isIms ? "IMS" : ServiceState.rilRadioTechnologyToString(
+                        phone.getServiceState().getRilVoiceRadioTechnology()));
+            }
+            mKey = key.toString();
+            synchronized (sHistograms) {
+                LatencyHistogram[] histograms = sHistograms.get(mKey);
+                if (histograms == null) {
+                    histograms = new LatencyHistogram[PHASE_COUNT];
+                    sHistograms.put(mKey, histograms);
+                }
+                for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                    if (mStamps[phase] < 0) {
+                        continue;
+                    }
+                    if (histograms[phase] == null) {
+                        histograms[phase] = new LatencyHistogram(BUCKET_LIMITS);
+                    }
+                    histograms[phase].add(mStamps[phase]);
+                }
+                if (sRecentTraces.size() >= MAX_RECENT_TRACES) {
+                    sRecentTraces.removeFirst();
+                }
+                sRecentTraces.addLast(this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(mKey);
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                if (mStamps[phase] >= 0) {
+                    sb.append(' ').append(PHASE_NAMES[phase]).append('=')
+                            .append(mStamps[phase]);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    public static void dump(PrintWriter writer, String[] args) {
+        synchronized (sHistograms) {
+            writer.println("Call setup latency (ms since request):");
+            for (Map.Entry<String, LatencyHistogram[]> entry : sHistograms.entrySet()) {
+                writer.println("  " + entry.getKey() + ":");
+                LatencyHistogram[] histograms = entry.getValue();
+                for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                    if (histograms[phase] != null) {
+                        writer.println("    " + PHASE_NAMES[phase] + ": " + histograms[phase]);
+                    }
+                }
+            }
+            writer.println("Recent call setups:");
+            for (Trace trace : sRecentTraces) {
+                writer.println("  " + trace);
+            }
+            if (args != null && Arrays.asList(args).contains(TRACE_EXPORT_ARG)) {
+                dumpTraceEvents(writer);
+            }
+        }
+    }
+
+    /**
+     * Prints the recent traces in the Trace Event Format, as instant events on one track per
+     * call. Must hold sHistograms.
+     */
+    private static void dumpTraceEvents(PrintWriter writer) {
+        writer.println("Call setup trace events:");
+        writer.print('[');
+        boolean first = true;
+        int track = 0;
+        for (Trace trace : sRecentTraces) {
+            track++;
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                if (trace.mStamps[phase] < 0) {
+                    continue;
+                }
+                if (!first) {
+                    writer.print(',');
+                }
+                first = false;
+                writer.print("{\"name\":\"" + PHASE_NAMES[phase] + "\",\"cat\":\""
+                        + trace.mKey + "\",\"ph\":\"i\",\"s\":\"t\",\"pid\":0,\"tid\":" + track
+                        + ",\"ts\":" + (trace.mStartTime + trace.mStamps[phase]) * 1000 + "}");
+            }
+        }
+        writer.println(']');
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.services.telephony;
+
+import android.telecom.Conference;
+import android.telecom.Conferenceable;
+import android.telecom.Connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Updates the conferenceables of connections and conferences only when they change.
+ * <p>
+ * Every call to {@link Connection#setConferenceables(List)} or
+ * {@link Conference#setConferenceableConnections(List)} is sent to Telecom, even when the new list
+ * is the same as the old one. The conference controllers recalculate the conferenceables of every
+ * call whenever any call changes state, so most of these updates would be no-ops. The methods
+ * here compare the current conferenceables with the new set first, which needs no allocation, and
+ * only build a list and call the setter when they differ.
+ */
+final class ConferenceableDiff {
+
+    private ConferenceableDiff() {}
+
+    /**
+     * Makes {@code connection} conferenceable with everything in {@code conferenceables} but
+     * itself.
+     *
+     * @return {@code true} if the conferenceables changed.
+     */
+    static boolean setConferenceables(Connection connection,
+            Set<? extends Conferenceable> conferenceables) {
+        if (isSame(connection.getConferenceables(), conferenceables, connection)) {
+            return false;
+        }
+        connection.setConferenceables(toListWithout(conferenceables, connection));
+        return true;
+    }
+
+    /**
+     * Makes {@code connection} conferenceable with every connection in {@code connections} but
+     * itself.
+     *
+     * @return {@code true} if the conferenceables changed.
+     */
+    static boolean setConferenceableConnections(Connection connection,
+            Set<? extends Connection> connections) {
+        if (isSame(connection.getConferenceables(), connections, connection)) {
+            return false;
+        }
+        connection.setConferenceableConnections(toListWithout(connections, connection));
+        return true;
+    }
+
+    /**
+     * Makes {@code conference} conferenceable with every connection in {@code connections}.
+     *
+     * @return {@code true} if the conferenceable connections changed.
+     */
+    static boolean setConferenceableConnections(Conference conference,
+            Set<? extends Connection> connections) {
+        if (isSame(conference.getConferenceableConnections(), connections, null)) {
+            return false;
+        }
+        conference.setConferenceableConnections(toListWithout(connections, null));
+        return true;
+    }
+
+    /**
+     * Makes {@code connection} conferenceable with nothing.
+     *
+     * @return {@code true} if the conferenceables changed.
+     */
+    static boolean clearConferenceables(Connection connection) {
+        if (connection.getConferenceables().isEmpty()) {
+            return false;
+        }
+        connection.setConferenceables(Collections.<Conferenceable>emptyList());
+        return true;
+    }
+
+    /**
+     * @return whether {@code current} holds exactly the elements of {@code expected}, leaving out
+     * {@code excluded}. The setters never store duplicates, so comparing sizes and membership is
+     * enough.
+     */
+    private static boolean isSame(List<? extends Conferenceable> current,
+            Set<? extends Conferenceable> expected, Conferenceable excluded) {
+        int expectedSize = expected.size();
+        if (excluded != null && expected.contains(excluded)) {
+            expectedSize--;
+        }
+        if (current.size() != expectedSize) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            Conferenceable conferenceable = current.get(i);
+            if (conferenceable == excluded || !expected.contains(conferenceable)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T> List<T> toListWithout(Set<? extends T> set, Object excluded) {
+        List<T> list = new ArrayList<>(set.size());
+        for (T element : set) {
+            if (element != excluded) {
+                list.add(element);
+            }
+        }
+        return list;
+    }
+}
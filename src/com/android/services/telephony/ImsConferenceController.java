@@ -31,11 +31,8 @@ import android.telecom.PhoneAccountHandle;
 import android.telecom.VideoProfile;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Manages conferences for IMS connections.
@@ -228,7 +225,7 @@ public class ImsConferenceController {
             // If this connection does not support being in a conference call, then it is not
             // conferenceable with any other connection.
             if (!connection.isConferenceSupported()) {
-                connection.setConferenceables(Collections.<Conferenceable>emptyList());
+                ConferenceableDiff.clearConferenceables(connection);
                 continue;
             }
 
@@ -242,7 +239,7 @@ public class ImsConferenceController {
                     break;
             }
             // This connection is not active or holding, so clear all conferencable connections
-            connection.setConferenceables(Collections.<Conferenceable>emptyList());
+            ConferenceableDiff.clearConferenceables(connection);
         }
         // Also loop through all active conferences and collect the ones that are ACTIVE or HOLDING.
         for (ImsConference conference : mImsConferences) {
@@ -271,38 +268,46 @@ public class ImsConferenceController {
             }
         }
 
-        Log.v(this, "conferenceableSet size: " + conferenceableSet.size());
+        Log.v(this, "conferenceableSet size: %d", conferenceableSet.size());
+
+        // TODO: Remove this once RemoteConnection#setConferenceableConnections is fixed.
+        // Add all conference participant connections as conferenceable with a standalone
+        // Connection.  We need to do this to ensure that RemoteConnections work properly.
+        // At the current time, a RemoteConnection will not be conferenceable with a
+        // Conference, so we need to add its children to ensure the user can merge the call
+        // into the conference.
+        // We should add support for RemoteConnection#setConferenceables, which accepts a
+        // list of remote conferences and connections in the future.
+        HashSet<Conferenceable> connectionConferenceables = conferenceableSet;
+        if (!conferenceParticipantsSet.isEmpty()) {
+            connectionConferenceables = new HashSet<>(conferenceableSet);
+            connectionConferenceables.addAll(conferenceParticipantsSet);
+        }
+        // Conferences can only be conferenced with connections, not with other conferences.
+        HashSet<Connection> conferenceableConnections = new HashSet<>(conferenceableSet.size());
+        for (Conferenceable c : conferenceableSet) {
+            if (c instanceof Connection) {
+                conferenceableConnections.add((Connection) c);
+            }
+        }
 
+        // Only the calls whose conferenceables actually changed are updated, to avoid sending
+        // identical lists to Telecom.
+        int changed = 0;
         for (Conferenceable c : conferenceableSet) {
             if (c instanceof Connection) {
-                // Remove this connection from the Set and add all others
-                List<Conferenceable> conferenceables = conferenceableSet
-                        .stream()
-                        .filter(conferenceable -> c != conferenceable)
-                        .collect(Collectors.toList());
-                // TODO: Remove this once RemoteConnection#setConferenceableConnections is fixed.
-                // Add all conference participant connections as conferenceable with a standalone
-                // Connection.  We need to do this to ensure that RemoteConnections work properly.
-                // At the current time, a RemoteConnection will not be conferenceable with a
-                // Conference, so we need to add its children to ensure the user can merge the call
-                // into the conference.
-                // We should add support for RemoteConnection#setConferenceables, which accepts a
-                // list of remote conferences and connections in the future.
-                conferenceables.addAll(conferenceParticipantsSet);
-
-                ((Connection) c).setConferenceables(conferenceables);
+                if (ConferenceableDiff.setConferenceables((Connection) c,
+                        connectionConferenceables)) {
+                    changed++;
+                }
             } else if (c instanceof Conference) {
-                // Remove all conferences from the set, since we can not conference a conference
-                // to another conference.
-                List<Connection> connections = conferenceableSet
-                        .stream()
-                        .filter(conferenceable -> conferenceable instanceof Connection)
-                        .map(conferenceable -> (Connection) conferenceable)
-                        .collect(Collectors.toList());
-                // Conference equivalent to setConferenceables that only accepts Connections
-                ((Conference) c).setConferenceableConnections(connections);
+                if (ConferenceableDiff.setConferenceableConnections((Conference) c,
+                        conferenceableConnections)) {
+                    changed++;
+                }
             }
         }
+        Log.v(this, "conferenceables changed: %d", changed);
     }
 
     /**
@@ -16,6 +16,8 @@
 
 package com.android.services.telephony;
 
+import android.util.LruCache;
+
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.IllegalFormatException;
@@ -23,6 +25,13 @@ import java.util.Locale;
 
 /**
  * Manages logging for the entire module.
+ * <p>
+ * The varargs methods box their arguments and allocate an array at the call site even when the
+ * level is disabled. Calls on hot paths with up to two arguments resolve to the fixed-arity
+ * overloads instead, which need no array. Only a single int or char argument is boxed after the
+ * level has been checked; a byte or short widens to the int overload and prints the same. Any other
+ * primitive, such as a long or a boolean, resolves to an Object overload and is still boxed at the
+ * call site, though booleans and small numbers box to cached instances.
  */
 final public class Log {
 
@@ -36,12 +45,137 @@ final public class Log {
     public static final boolean WARN = isLoggable(android.util.Log.WARN);
     public static final boolean ERROR = isLoggable(android.util.Log.ERROR);
 
+    private static final int PII_CACHE_SIZE = 64;
+
+    // Hashing the same numbers and addresses over and over is expensive, so remember the hashes.
+    private static final LruCache<String, String> sPiiCache = new LruCache<>(PII_CACHE_SIZE);
+
     private Log() {}
 
     public static boolean isLoggable(int level) {
         return FORCE_LOGGING || android.util.Log.isLoggable(TAG, level);
     }
 
+    public static void d(Object prefix, String msg) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, buildMessage(getPrefix(prefix), msg));
+        }
+    }
+
+    public static void d(Object prefix, String format, int arg) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void d(Object prefix, String format, char arg) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void d(Object prefix, String format, Object arg) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void d(Object prefix, String format, Object arg1, Object arg2) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, buildMessage(getPrefix(prefix), format, arg1, arg2));
+        }
+    }
+
+    public static void i(Object prefix, String msg) {
+        if (INFO) {
+            android.util.Log.i(TAG, buildMessage(getPrefix(prefix), msg));
+        }
+    }
+
+    public static void i(Object prefix, String format, int arg) {
+        if (INFO) {
+            android.util.Log.i(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void i(Object prefix, String format, char arg) {
+        if (INFO) {
+            android.util.Log.i(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void i(Object prefix, String format, Object arg) {
+        if (INFO) {
+            android.util.Log.i(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void i(Object prefix, String format, Object arg1, Object arg2) {
+        if (INFO) {
+            android.util.Log.i(TAG, buildMessage(getPrefix(prefix), format, arg1, arg2));
+        }
+    }
+
+    public static void v(Object prefix, String msg) {
+        if (VERBOSE) {
+            android.util.Log.v(TAG, buildMessage(getPrefix(prefix), msg));
+        }
+    }
+
+    public static void v(Object prefix, String format, int arg) {
+        if (VERBOSE) {
+            android.util.Log.v(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void v(Object prefix, String format, char arg) {
+        if (VERBOSE) {
+            android.util.Log.v(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void v(Object prefix, String format, Object arg) {
+        if (VERBOSE) {
+            android.util.Log.v(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void v(Object prefix, String format, Object arg1, Object arg2) {
+        if (VERBOSE) {
+            android.util.Log.v(TAG, buildMessage(getPrefix(prefix), format, arg1, arg2));
+        }
+    }
+
+    public static void w(Object prefix, String msg) {
+        if (WARN) {
+            android.util.Log.w(TAG, buildMessage(getPrefix(prefix), msg));
+        }
+    }
+
+    public static void w(Object prefix, String format, int arg) {
+        if (WARN) {
+            android.util.Log.w(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void w(Object prefix, String format, char arg) {
+        if (WARN) {
+            android.util.Log.w(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void w(Object prefix, String format, Object arg) {
+        if (WARN) {
+            android.util.Log.w(TAG, buildMessage(getPrefix(prefix), format, arg));
+        }
+    }
+
+    public static void w(Object prefix, String format, Object arg1, Object arg2) {
+        if (WARN) {
+            android.util.Log.w(TAG, buildMessage(getPrefix(prefix), format, arg1, arg2));
+        }
+    }
+
     public static void d(String prefix, String format, Object... args) {
         if (DEBUG) {
             android.util.Log.d(TAG, buildMessage(prefix, format, args));
@@ -131,7 +265,13 @@ final public class Log {
         if (pii == null || VERBOSE) {
             return String.valueOf(pii);
         }
-        return "[" + secureHash(String.valueOf(pii).getBytes()) + "]";
+        String value = String.valueOf(pii);
+        String hash = sPiiCache.get(value);
+        if (hash == null) {
+            hash = "[" + secureHash(value.getBytes()) + "]";
+            sPiiCache.put(value, hash);
+        }
+        return hash;
     }
 
     private static String secureHash(byte[] input) {
@@ -164,6 +304,13 @@ final public class Log {
         return obj == null ? "<null>" : obj.getClass().getSimpleName();
     }
 
+    /**
+     * Prefix for the fixed-arity overloads, which take both string and object prefixes.
+     */
+    private static String getPrefix(Object prefix) {
+        return prefix instanceof String ? (String) prefix : getPrefixFromObject(prefix);
+    }
+
     private static String buildMessage(String prefix, String format, Object... args) {
         String msg;
         try {
@@ -174,6 +321,6 @@ final public class Log {
                     args.length);
             msg = format + " (An error occurred while formatting the message.)";
         }
-        return String.format(Locale.US, "%s: %s", prefix, msg);
+        return prefix + ": " + msg;
     }
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.services.telephony;
+
+import android.os.AsyncResult;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.util.ArrayMap;
+import android.util.Pair;
+
+import com.android.internal.telephony.Call;
+import com.android.internal.telephony.Phone;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Receives the call events of one {@link Phone} on behalf of all the {@link TelephonyConnection}s
+ * on it, and passes each event only to the connections it concerns.
+ * <p>
+ * A precise call state change is reported for the whole phone. Rather than having every
+ * connection update itself, the dispatcher compares the state, address, caller name, presentations
+ * and multiparty bit of each connection's radio connection with those seen at the previous event,
+ * and updates only the connections where they changed. When the state of the phone's ringing,
+ * foreground or background call changes, every connection is updated, since what a connection can
+ * do depends on the other calls. Ringback and hold tones go to the connection they are for.
+ * <p>
+ * Must be used on the main thread.
+ */
+public class PhoneCallEventDispatcher {
+    private static final int EVENT_PRECISE_CALL_STATE_CHANGED = 1;
+    private static final int EVENT_HANDOVER_STATE_CHANGED = 2;
+    private static final int EVENT_RINGBACK_TONE = 3;
+    private static final int EVENT_DISCONNECT = 4;
+    private static final int EVENT_ON_HOLD_TONE = 5;
+    private static final int EVENT_CDMA_VOICE_PRIVACY_ON = 6;
+    private static final int EVENT_CDMA_VOICE_PRIVACY_OFF = 7;
+
+    // Guarded by sDispatchers.
+    private static final Map<Phone, PhoneCallEventDispatcher> sDispatchers = new ArrayMap<>();
+
+    // Totals over all the phones. Only written on the main thread.
+    private static long sEvents;
+    private static long sUpdates;
+    private static long sUpdatesSkipped;
+
+    /**
+     * What the last event saw of the radio connection of a {@link TelephonyConnection}: the
+     * fields {@link TelephonyConnection#updateState} publishes. The radio reports a precise call
+     * state change for a caller name or presentation change alone, so those are included.
+     */
+    private static class Seen {
+        com.android.internal.telephony.Connection connection;
+        Call.State state;
+        String address;
+        String origDialString;
+        int numberPresentation;
+        String cnapName;
+        int cnapNamePresentation;
+        boolean isMultiparty;
+
+        /**
+         * Records what {@code connection} is now.
+         *
+         * @return whether it differs from what was seen before.
+         */
+        boolean update(com.android.internal.telephony.Connection connection) {
+            Call.State state = connection.getState();
+            String address = connection.getAddress();
+            String origDialString = connection.getOrigDialString();
+            int numberPresentation = connection.getNumberPresentation();
+            String cnapName = connection.getCnapName();
+            int cnapNamePresentation = connection.getCnapNamePresentation();
+            boolean isMultiparty = connection.isMultiparty();
+            if (connection == this.connection && state == this.state
+                    && Objects.equals(address, this.address)
+                    && Objects.equals(origDialString, this.origDialString)
+                    && numberPresentation == this.numberPresentation
+                    && Objects.equals(cnapName, this.cnapName)
+                    && cnapNamePresentation == this.cnapNamePresentation
+                    && isMultiparty == this.isMultiparty) {
+                return false;
+            }
+            this.connection = connection;
+            this.state = state;
+            this.address = address;
+            this.origDialString = origDialString;
+            this.numberPresentation = numberPresentation;
+            this.cnapName = cnapName;
+            this.cnapNamePresentation = cnapNamePresentation;
+            this.isMultiparty = isMultiparty;
+            return true;
+        }
+    }
+
+    private final Phone mPhone;
+    private final Map<TelephonyConnection, Seen> mConnections = new ArrayMap<>();
+    private final Call.State[] mCallStates = new Call.State[3];
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            sEvents++;
+            AsyncResult ar = (AsyncResult) msg.obj;
+            switch (msg.what) {
+                case EVENT_PRECISE_CALL_STATE_CHANGED:
+                case EVENT_DISCONNECT:
+                    onCallStateChanged();
+                    break;
+                case EVENT_HANDOVER_STATE_CHANGED:
+                    // Each connection checks whether the new radio connection is its own.
+                    for (TelephonyConnection connection : getConnections()) {
+                        sUpdates++;
+                        connection.onHandoverStateChanged(
+                                (com.android.internal.telephony.Connection) ar.result);
+                    }
+                    break;
+                case EVENT_RINGBACK_TONE:
+                    // TODO: This code assumes that there is only one connection in the foreground
+                    // call, in other words, it punts on network-mediated conference calling.
+                    dispatchTo(mPhone.getForegroundCall().getEarliestConnection(), msg.what, ar);
+                    break;
+                case EVENT_ON_HOLD_TONE:
+                    Pair<com.android.internal.telephony.Connection, Boolean> heldInfo =
+                            (Pair<com.android.internal.telephony.Connection, Boolean>) ar.result;
+                    dispatchTo(heldInfo.first, msg.what, ar);
+                    break;
+                case EVENT_CDMA_VOICE_PRIVACY_ON:
+                case EVENT_CDMA_VOICE_PRIVACY_OFF:
+                    for (TelephonyConnection connection : getConnections()) {
+                        sUpdates++;
+                        connection.setCdmaVoicePrivacy(msg.what == EVENT_CDMA_VOICE_PRIVACY_ON);
+                    }
+                    break;
+            }
+        }
+    };
+
+    private PhoneCallEventDispatcher(Phone phone) {
+        mPhone = phone;
+    }
+
+    /**
+     * Starts passing the call events of {@code phone} to {@code connection}.
+     *
+     * @return the dispatcher to {@link #removeConnection} it from.
+     */
+    static PhoneCallEventDispatcher addConnection(Phone phone, TelephonyConnection connection) {
+        PhoneCallEventDispatcher dispatcher;
+        synchronized (sDispatchers) {
+            dispatcher = sDispatchers.get(phone);
+            if (dispatcher == null) {
+                dispatcher = new PhoneCallEventDispatcher(phone);
+                sDispatchers.put(phone, dispatcher);
+            }
+        }
+        if (dispatcher.mConnections.isEmpty()) {
+            dispatcher.registerForEvents();
+        }
+        // The first event after this updates the connection.
+        dispatcher.mConnections.put(connection, new Seen());
+        return dispatcher;
+    }
+
+    /**
+     * Stops passing events to {@code connection}.
+     */
+    void removeConnection(TelephonyConnection connection) {
+        if (mConnections.remove(connection) != null && mConnections.isEmpty()) {
+            unregisterForEvents();
+            synchronized (sDispatchers) {
+                sDispatchers.remove(mPhone);
+            }
+        }
+    }
+
+    private void registerForEvents() {
+        mPhone.registerForPreciseCallStateChanged(
+                mHandler, EVENT_PRECISE_CALL_STATE_CHANGED, null);
+        mPhone.registerForHandoverStateChanged(mHandler, EVENT_HANDOVER_STATE_CHANGED, null);
+        mPhone.registerForRingbackTone(mHandler, EVENT_RINGBACK_TONE, null);
+        mPhone.registerForDisconnect(mHandler, EVENT_DISCONNECT, null);
+        mPhone.registerForOnHoldTone(mHandler, EVENT_ON_HOLD_TONE, null);
+        mPhone.registerForInCallVoicePrivacyOn(mHandler, EVENT_CDMA_VOICE_PRIVACY_ON, null);
+        mPhone.registerForInCallVoicePrivacyOff(mHandler, EVENT_CDMA_VOICE_PRIVACY_OFF, null);
+    }
+
+    private void unregisterForEvents() {
+        mPhone.unregisterForPreciseCallStateChanged(mHandler);
+        mPhone.unregisterForHandoverStateChanged(mHandler);
+        mPhone.unregisterForRingbackTone(mHandler);
+        mPhone.unregisterForDisconnect(mHandler);
+        mPhone.unregisterForOnHoldTone(mHandler);
+        mPhone.unregisterForInCallVoicePrivacyOn(mHandler);
+        mPhone.unregisterForInCallVoicePrivacyOff(mHandler);
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * @return a copy of the connections, which may remove themselves while being called.
+     */
+    private ArrayList<TelephonyConnection> getConnections() {
+        return new ArrayList<>(mConnections.keySet());
+    }
+
+    private void onCallStateChanged() {
+        boolean callsChanged = updateCallStates();
+        for (TelephonyConnection connection : getConnections()) {
+            Seen seen = mConnections.get(connection);
+            com.android.internal.telephony.Connection original =
+                    connection.getOriginalConnection();
+            if (seen == null || original == null) {
+                continue;
+            }
+            if (seen.update(original) || callsChanged) {
+                sUpdates++;
+                connection.updateState();
+            } else {
+                sUpdatesSkipped++;
+            }
+        }
+    }
+
+    /**
+     * Records the states of the ringing, foreground and background calls of the phone.
+     *
+     * @return whether any of them changed.
+     */
+    private boolean updateCallStates() {
+        Call.State[] states = {
+                mPhone.getRingingCall().getState(),
+                mPhone.getForegroundCall().getState(),
+                mPhone.getBackgroundCall().getState()
+        };
+        boolean changed = false;
+        for (int i = 0; i < states.length; i++) {
+            if (mCallStates[i] != states[i]) {
+                mCallStates[i] = states[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void dispatchTo(com.android.internal.telephony.Connection original, int event,
+            AsyncResult ar) {
+        if (original == null) {
+            return;
+        }
+        for (TelephonyConnection connection : getConnections()) {
+            if (connection.getOriginalConnection() != original) {
+                continue;
+            }
+            sUpdates++;
+            if (event == EVENT_RINGBACK_TONE) {
+                connection.setRingbackRequested((Boolean) ar.result);
+            } else {
+                Pair<com.android.internal.telephony.Connection, Boolean> heldInfo =
+                        (Pair<com.android.internal.telephony.Connection, Boolean>) ar.result;
+                connection.onHoldTone(heldInfo.second);
+            }
+        }
+    }
+
+    public static void dump(PrintWriter writer) {
+        writer.println("PhoneCallEventDispatcher: events " + sEvents + ", connection updates "
+                + sUpdates + ", updates skipped " + sUpdatesSkipped);
+        synchronized (sDispatchers) {
+            for (PhoneCallEventDispatcher dispatcher : sDispatchers.values()) {
+                writer.println("  phone " + dispatcher.mPhone.getPhoneId() + " "
+                        + dispatcher.mPhone.getPhoneName() + ": "
+                        + dispatcher.mConnections.size() + " connections");
+            }
+        }
+    }
+}
@@ -29,6 +29,8 @@ import android.graphics.drawable.Drawable;
 import android.graphics.drawable.Icon;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.PersistableBundle;
 import android.os.ServiceManager;
 import android.os.RemoteException;
@@ -52,10 +54,12 @@ import com.android.phone.PhoneGlobals;
 import com.android.phone.PhoneUtils;
 import com.android.phone.R;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 import org.codeaurora.internal.IExtTelephony;
@@ -72,6 +76,10 @@ final class TelecomAccountRegistry {
     private final static int DEFAULT_SIM_ICON =  R.drawable.ic_multi_sim;
     private final static String GROUP_PREFIX = "group_";
 
+    // How long to wait for more changes before reconciling the accounts, so that a burst of
+    // subscription changes costs one pass.
+    private static final long RECONCILE_DELAY_MILLIS = 200;
+
     final class AccountEntry implements PstnPhoneCapabilitiesNotifier.Listener {
         private final Phone mPhone;
         private PhoneAccount mAccount;
@@ -90,7 +98,8 @@ final class TelecomAccountRegistry {
             mPhone = phone;
             mIsEmergency = isEmergency;
             mIsDummy = isDummy;
-            mAccount = registerPstnPhoneAccount(isEmergency, isDummy);
+            mAccount = buildPstnPhoneAccount(isEmergency, isDummy);
+            mTelecomManager.registerPhoneAccount(mAccount);
             Log.i(this, "Registered phoneAccount: %s with handle: %s",
                     mAccount, mAccount.getAccountHandle());
             mIncomingCallNotifier = new PstnIncomingCallNotifier((Phone) mPhone);
@@ -104,9 +113,35 @@ final class TelecomAccountRegistry {
         }
 
         /**
-         * Registers the specified account with Telecom as a PhoneAccountHandle.
+         * @return whether this entry is the account {@code desired} asks for.
+         */
+        boolean matches(DesiredAccount desired) {
+            return mPhone == desired.phone && mIsEmergency == desired.isEmergency
+                    && mIsDummy == desired.isDummy
+                    && desired.handle.equals(getPhoneAccountHandle());
+        }
+
+        /**
+         * Builds the account again and registers it with Telecom if it differs from the one
+         * registered.
+         *
+         * @return whether it was registered.
          */
-        private PhoneAccount registerPstnPhoneAccount(boolean isEmergency, boolean isDummyAccount) {
+        boolean updateAccount() {
+            PhoneAccount account = buildPstnPhoneAccount(mIsEmergency, mIsDummy);
+            if (isSameAccount(mAccount, account)) {
+                return false;
+            }
+            mTelecomManager.registerPhoneAccount(account);
+            mAccount = account;
+            return true;
+        }
+
+        /**
+         * Builds the {@link PhoneAccount} of this entry from the current subscription and carrier
+         * config.
+         */
+        private PhoneAccount buildPstnPhoneAccount(boolean isEmergency, boolean isDummyAccount) {
             String dummyPrefix = isDummyAccount ? "Dummy " : "";
 
             // Build the Phone account handle.
@@ -269,9 +304,6 @@ final class TelecomAccountRegistry {
                     .setGroupId(groupId)
                     .build();
 
-            // Register with Telecom and put into the account entry.
-            mTelecomManager.registerPhoneAccount(account);
-
             return account;
         }
 
@@ -404,7 +436,8 @@ final class TelecomAccountRegistry {
                     // time we get here, the original phone account could have been torn down.
                     return;
                 }
-                mAccount = registerPstnPhoneAccount(mIsEmergency, mIsDummy);
+                mAccount = buildPstnPhoneAccount(mIsEmergency, mIsDummy);
+                mTelecomManager.registerPhoneAccount(mAccount);
             }
         }
 
@@ -447,8 +480,7 @@ final class TelecomAccountRegistry {
         @Override
         public void onSubscriptionsChanged() {
             // Any time the SubscriptionInfo changes...rerun the setup
-            tearDownAccounts();
-            setupAccounts();
+            scheduleReconcile();
         }
     };
 
@@ -463,8 +495,8 @@ final class TelecomAccountRegistry {
                     .equals(currentUserHandle);
 
             // Any time the user changes, re-register the accounts.
-            tearDownAccounts();
-            setupAccounts();
+            mNeedsFullCleanup = true;
+            scheduleReconcile();
         }
     };
 
@@ -473,8 +505,7 @@ final class TelecomAccountRegistry {
         public void onServiceStateChanged(ServiceState serviceState) {
             int newState = serviceState.getState();
             if (newState == ServiceState.STATE_IN_SERVICE && mServiceState != newState) {
-                tearDownAccounts();
-                setupAccounts();
+                scheduleReconcile();
             }
             mServiceState = newState;
         }
@@ -490,6 +521,44 @@ final class TelecomAccountRegistry {
     private int mServiceState = ServiceState.STATE_POWER_OFF;
     private boolean mIsPrimaryUser = true;
 
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mReconcileRunnable = new Runnable() {
+        @Override
+        public void run() {
+            reconcileAccounts();
+        }
+    };
+    // Whether the next reconciliation should also look for stale accounts registered with
+    // Telecom, rather than only unregister the accounts it removes. Set at boot and when the user
+    // changes. Only used on the main thread.
+    private boolean mNeedsFullCleanup = true;
+
+    // Statistics of the reconciliations. Only used on the main thread.
+    private int mReconcileRequests;
+    private int mReconciles;
+    private int mAccountsAdded;
+    private int mAccountsRemoved;
+    private int mAccountsUpdated;
+    private int mRegistrationsAvoided;
+
+    /**
+     * An account {@link #reconcileAccounts} wants registered.
+     */
+    private static final class DesiredAccount {
+        final Phone phone;
+        final boolean isEmergency;
+        final boolean isDummy;
+        final PhoneAccountHandle handle;
+
+        DesiredAccount(Phone phone, boolean isEmergency, boolean isDummy) {
+            this.phone = phone;
+            this.isEmergency = isEmergency;
+            this.isDummy = isDummy;
+            handle = PhoneUtils.makePstnPhoneAccountHandleWithPrefix(
+                    phone, isDummy ? "Dummy " : "", isEmergency);
+        }
+    }
+
     // TODO: Remove back-pointer from app singleton to Service, since this is not a preferred
     // pattern; redesign. This was added to fix a late release bug.
     private TelephonyConnectionService mTelephonyConnectionService;
@@ -680,70 +749,151 @@ final class TelecomAccountRegistry {
         }
     }
 
-    private void setupAccounts() {
-        // Go through SIM-based phones and register ourselves -- registering an existing account
-        // will cause the existing entry to be replaced.
+    /**
+     * Reconciles the accounts once the changes of the current burst have stopped coming.
+     */
+    private void scheduleReconcile() {
+        mReconcileRequests++;
+        mHandler.removeCallbacks(mReconcileRunnable);
+        mHandler.postDelayed(mReconcileRunnable, RECONCILE_DELAY_MILLIS);
+    }
+
+    /**
+     * @return the accounts that should be registered for the current phones.
+     */
+    private List<DesiredAccount> getDesiredAccounts(Phone[] phones) {
+        List<DesiredAccount> desired = new ArrayList<>();
+        if (!mContext.getResources().getBoolean(R.bool.config_pstn_phone_accounts_enabled)) {
+            return desired;
+        }
+        // states we are interested in from what
+        // IExtTelephony.getCurrentUiccCardProvisioningStatus()can return
+        final int PROVISIONED = 1;
+
+        IExtTelephony extTelephony = null;
+        if (mTelephonyManager.getPhoneCount() > 1) {
+            extTelephony = IExtTelephony.Stub.asInterface(ServiceManager.getService("extphone"));
+        }
+        for (Phone phone : phones) {
+            int provisionStatus = PROVISIONED;
+            int subscriptionId = phone.getSubId();
+            int slotId = phone.getPhoneId();
+
+            if (mTelephonyManager.getPhoneCount() > 1) {
+                try {
+                    //get current provision state of the SIM.
+                    provisionStatus = extTelephony.getCurrentUiccCardProvisioningStatus(slotId);
+                } catch (RemoteException ex) {
+                    Log.w(this, "Failed to get status , slotId: "+ slotId +" Exception: " + ex);
+                } catch (NullPointerException ex) {
+                    Log.w(this, "Failed to get status , slotId: "+ slotId +" Exception: " + ex);
+                }
+            }
+            Log.d(this, "Phone with subscription id: " + subscriptionId +
+                    " slotId: " + slotId + " provisionStatus: " + provisionStatus);
+            if ((subscriptionId >= 0) && (provisionStatus == PROVISIONED) &&
+                    (mSubscriptionManager.isActiveSubId(subscriptionId)) &&
+                    phone.getFullIccSerialNumber() != null) {
+                desired.add(new DesiredAccount(phone, false /* emergency */,
+                        false /* isDummy */));
+            }
+        }
+        // If we did not list ANY accounts, we need to provide a "default" SIM account
+        // for emergency numbers since no actual SIM is needed for dialing emergency
+        // numbers but a phone account is.
+        if (desired.isEmpty()) {
+            desired.add(new DesiredAccount(PhoneFactory.getDefaultPhone(), true /* emergency */,
+                    false /* isDummy */));
+        }
+
+        // Add a fake account entry.
+        if (DBG && phones.length > 0 && "TRUE".equals(System.getProperty("dummy_sim"))) {
+            desired.add(new DesiredAccount(phones[0], false /* emergency */,
+                    true /* isDummy */));
+        }
+        return desired;
+    }
+
+    /**
+     * Brings the registered accounts in line with the current phones: adds the missing ones,
+     * removes the ones no longer wanted, and registers the kept ones again only if they changed.
+     */
+    private void reconcileAccounts() {
         Phone[] phones = PhoneFactory.getPhones();
         Log.d(this, "Found %d phones.  Attempting to register.", phones.length);
 
-        final boolean phoneAccountsEnabled = mContext.getResources().getBoolean(
-                R.bool.config_pstn_phone_accounts_enabled);
+        List<DesiredAccount> desiredAccounts = getDesiredAccounts(phones);
         int activeCount = 0;
         int activeSubscriptionId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+        int added = 0;
+        int updated = 0;
+        int unchanged = 0;
+        List<AccountEntry> removed;
 
         synchronized (mAccountsLock) {
-            if (phoneAccountsEnabled) {
-                // states we are interested in from what
-                // IExtTelephony.getCurrentUiccCardProvisioningStatus()can return
-                final int PROVISIONED = 1;
-
-                for (Phone phone : phones) {
-                    int provisionStatus = PROVISIONED;
-                    int subscriptionId = phone.getSubId();
-                    int slotId = phone.getPhoneId();
-
-                    if (mTelephonyManager.getPhoneCount() > 1) {
-                        IExtTelephony mExtTelephony =
-                                IExtTelephony.Stub.asInterface(ServiceManager.getService("extphone"));
-
-                        try {
-                            //get current provision state of the SIM.
-                           provisionStatus =
-                                    mExtTelephony.getCurrentUiccCardProvisioningStatus(slotId);
-                        } catch (RemoteException ex) {
-                            Log.w(this, "Failed to get status , slotId: "+ slotId +" Exception: " + ex);
-                        } catch (NullPointerException ex) {
-                            Log.w(this, "Failed to get status , slotId: "+ slotId +" Exception: " + ex);
-                        }
-                    }
-                    Log.d(this, "Phone with subscription id: " + subscriptionId +
-                            " slotId: " + slotId + " provisionStatus: " + provisionStatus);
-                    if ((subscriptionId >= 0) && (provisionStatus == PROVISIONED) &&
-                            (mSubscriptionManager.isActiveSubId(subscriptionId)) &&
-                            phone.getFullIccSerialNumber() != null) {
-                        activeCount++;
-                        activeSubscriptionId = subscriptionId;
-                        mAccounts.add(new AccountEntry(phone,
-                                 false /* emergency */, false /* isDummy */));
+            List<AccountEntry> previous = mAccounts;
+            List<AccountEntry> accounts = new LinkedList<AccountEntry>();
+            for (DesiredAccount desired : desiredAccounts) {
+                AccountEntry entry = null;
+                for (Iterator<AccountEntry> it = previous.iterator(); it.hasNext(); ) {
+                    AccountEntry candidate = it.next();
+                    if (candidate.matches(desired)) {
+                        entry = candidate;
+                        it.remove();
+                        break;
                     }
                 }
-                // If we did not list ANY accounts, we need to provide a "default" SIM account
-                // for emergency numbers since no actual SIM is needed for dialing emergency
-                // numbers but a phone account is.
-                if (mAccounts.isEmpty()) {
-                    mAccounts.add(new AccountEntry(PhoneFactory.getDefaultPhone(), true /* emergency */,
-                            false /* isDummy */));
+                if (entry == null) {
+                    entry = new AccountEntry(desired.phone, desired.isEmergency,
+                            desired.isDummy);
+                    added++;
+                } else if (entry.updateAccount()) {
+                    updated++;
+                } else {
+                    unchanged++;
                 }
-
-                // Add a fake account entry.
-                if (DBG && phones.length > 0 && "TRUE".equals(System.getProperty("dummy_sim"))) {
-                    mAccounts.add(new AccountEntry(phones[0], false /* emergency */,
-                            true /* isDummy */));
+                accounts.add(entry);
+                if (!desired.isEmergency && !desired.isDummy) {
+                    activeCount++;
+                    activeSubscriptionId = desired.phone.getSubId();
                 }
             }
+            removed = previous;
+            for (AccountEntry entry : removed) {
+                entry.teardown();
+            }
+            mAccounts = accounts;
+        }
+
+        mReconciles++;
+        mAccountsAdded += added;
+        mAccountsRemoved += removed.size();
+        mAccountsUpdated += updated;
+        mRegistrationsAvoided += unchanged;
+        Log.i(this, "reconcileAccounts: added " + added + ", removed " + removed.size()
+                + ", updated " + updated + ", unchanged " + unchanged + "; totals: "
+                + mReconciles + " passes for " + mReconcileRequests + " requests, "
+                + mAccountsAdded + " added, " + mAccountsRemoved + " removed, "
+                + mAccountsUpdated + " updated, " + mRegistrationsAvoided
+                + " registrations avoided");
+
+        if (!mNeedsFullCleanup) {
+            for (AccountEntry entry : removed) {
+                PhoneAccountHandle handle = entry.getPhoneAccountHandle();
+                if (handle != null && !hasAccountEntryForPhoneAccount(handle)) {
+                    Log.i(this, "Unregistering phone account %s.", handle);
+                    mTelecomManager.unregisterPhoneAccount(handle);
+                }
+            }
+            if (added == 0 && removed.isEmpty()) {
+                // The set of accounts is the same, so is the choice of the default one.
+                return;
+            }
+        } else {
+            mNeedsFullCleanup = false;
+            // Clean up any PhoneAccounts that are no longer relevant
+            cleanupPhoneAccounts();
         }
-        // Clean up any PhoneAccounts that are no longer relevant
-        cleanupPhoneAccounts();
 
         // At some point, the phone account ID was switched from the subId to the iccId.
         // If there is a default account, check if this is the case, and upgrade the default account
@@ -806,12 +956,30 @@ final class TelecomAccountRegistry {
         return null;
     }
 
-    private void tearDownAccounts() {
-        synchronized (mAccountsLock) {
-            for (AccountEntry entry : mAccounts) {
-                entry.teardown();
-            }
-            mAccounts.clear();
+    /**
+     * @return whether {@code a} and {@code b} would show the same to Telecom. The icons are not
+     * compared; they are drawn from the SIM tint and slot, which the highlight color and the
+     * description already reflect.
+     */
+    private static boolean isSameAccount(PhoneAccount a, PhoneAccount b) {
+        return a.getAccountHandle().equals(b.getAccountHandle())
+                && Objects.equals(a.getAddress(), b.getAddress())
+                && Objects.equals(a.getSubscriptionAddress(), b.getSubscriptionAddress())
+                && a.getCapabilities() == b.getCapabilities()
+                && a.getHighlightColor() == b.getHighlightColor()
+                && TextUtils.equals(a.getLabel(), b.getLabel())
+                && TextUtils.equals(a.getShortDescription(), b.getShortDescription())
+                && TextUtils.equals(a.getGroupId(), b.getGroupId())
+                && isSameExtras(a.getExtras(), b.getExtras());
+    }
+
+    private static boolean isSameExtras(Bundle a, Bundle b) {
+        if (a == null || b == null) {
+            return a == b;
         }
+        return a.getInt(PhoneAccount.EXTRA_CALL_SUBJECT_MAX_LENGTH)
+                == b.getInt(PhoneAccount.EXTRA_CALL_SUBJECT_MAX_LENGTH)
+                && TextUtils.equals(a.getString(PhoneAccount.EXTRA_CALL_SUBJECT_CHARACTER_ENCODING),
+                        b.getString(PhoneAccount.EXTRA_CALL_SUBJECT_CHARACTER_ENCODING));
     }
 }
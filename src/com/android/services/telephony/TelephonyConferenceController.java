@@ -18,12 +18,10 @@ package com.android.services.telephony;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import android.net.Uri;
 import android.telecom.Conference;
@@ -48,8 +46,8 @@ final class TelephonyConferenceController {
     private final Connection.Listener mConnectionListener = new Connection.Listener() {
         @Override
         public void onStateChanged(Connection c, int state) {
-            Log.v(this, "onStateChange triggered in Conf Controller : connection = "+ c
-                 + " state = " + state);
+            Log.v(this, "onStateChange triggered in Conf Controller : connection = %s state = %s",
+                    c, state);
             recalculate();
         }
 
@@ -79,7 +77,7 @@ final class TelephonyConferenceController {
     private TelephonyConference mTelephonyConference;
 
     boolean shouldRecalculate() {
-        Log.d(this, "shouldRecalculate is " + mTriggerRecalculate);
+        Log.d(this, "shouldRecalculate is %b", mTriggerRecalculate);
         return mTriggerRecalculate;
     }
 
@@ -145,33 +143,40 @@ final class TelephonyConferenceController {
                 }
             }
 
-            connection.setConferenceableConnections(Collections.<Connection>emptyList());
+            ConferenceableDiff.clearConferenceables(connection);
         }
 
-        Log.v(this, "conferenceable: " + conferenceableConnections.size());
+        Log.v(this, "conferenceable: %d", conferenceableConnections.size());
 
         // Go through all the conferenceable connections and add all other conferenceable
-        // connections that is not the connection itself
+        // connections that is not the connection itself. Only the connections whose
+        // conferenceables actually changed are updated, to avoid sending identical lists to
+        // Telecom.
+        int changed = 0;
         for (Connection c : conferenceableConnections) {
-            List<Connection> connections = conferenceableConnections
-                    .stream()
-                    // Filter out this connection from the list of connections
-                    .filter(connection -> c != connection)
-                    .collect(Collectors.toList());
-            c.setConferenceableConnections(connections);
+            if (ConferenceableDiff.setConferenceableConnections(c, conferenceableConnections)) {
+                changed++;
+            }
         }
 
         // Set the conference as conferenceable with all of the connections that are not in the
         // conference.
         if (mTelephonyConference != null && !isFullConference(mTelephonyConference)) {
-            List<Connection> nonConferencedConnections = mTelephonyConnections
-                    .stream()
-                    // Only retrieve Connections that are not in a conference (but support
-                    // conferences).
-                    .filter(c -> c.isConferenceSupported() && c.getConference() == null)
-                    .collect(Collectors.toList());
-            mTelephonyConference.setConferenceableConnections(nonConferencedConnections);
+            HashSet<Connection> nonConferencedConnections =
+                    new HashSet<>(mTelephonyConnections.size());
+            for (TelephonyConnection c : mTelephonyConnections) {
+                // Only retrieve Connections that are not in a conference (but support
+                // conferences).
+                if (c.isConferenceSupported() && c.getConference() == null) {
+                    nonConferencedConnections.add(c);
+                }
+            }
+            if (ConferenceableDiff.setConferenceableConnections(mTelephonyConference,
+                    nonConferencedConnections)) {
+                changed++;
+            }
         }
+        Log.v(this, "conferenceables changed: %d", changed);
         // TODO: Do not allow conferencing of already conferenced connections.
     }
 
@@ -210,8 +215,8 @@ final class TelephonyConferenceController {
             }
         }
 
-        Log.d(this, "Is there a match for all connections in connection service " +
-            allConnInService);
+        Log.d(this, "Is there a match for all connections in connection service %b",
+                allConnInService);
 
         // If this is a GSM conference and the number of connections drops below 2, we will
         // terminate the conference.
@@ -274,7 +279,7 @@ final class TelephonyConferenceController {
             }
             if (mTelephonyConference != null) {
                 Connection conferencedConnection = mTelephonyConference.getPrimaryConnection();
-                Log.v(this, "Primary Conferenced connection is " + conferencedConnection);
+                Log.v(this, "Primary Conferenced connection is %s", conferencedConnection);
                 if (conferencedConnection != null) {
                     switch (conferencedConnection.getState()) {
                         case Connection.STATE_ACTIVE:
@@ -19,7 +19,6 @@ package com.android.services.telephony;
 import android.content.Context;
 import android.graphics.drawable.Icon;
 import android.net.Uri;
-import android.os.AsyncResult;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -39,10 +38,10 @@ import android.telephony.PhoneNumberUtils;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
-import android.util.Pair;
 
 import com.android.ims.ImsCall;
 import com.android.ims.ImsCallProfile;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.Call;
 import com.android.internal.telephony.CallStateException;
 import com.android.internal.telephony.Connection.Capability;
@@ -73,10 +72,6 @@ import java.util.concurrent.ConcurrentHashMap;
  * Base class for CDMA and GSM connections.
  */
 abstract class TelephonyConnection extends Connection {
-    private static final int MSG_PRECISE_CALL_STATE_CHANGED = 1;
-    private static final int MSG_RINGBACK_TONE = 2;
-    private static final int MSG_HANDOVER_STATE_CHANGED = 3;
-    private static final int MSG_DISCONNECT = 4;
     private static final int MSG_MULTIPARTY_STATE_CHANGED = 5;
     private static final int MSG_CONFERENCE_MERGE_FAILED = 6;
 
@@ -92,9 +87,6 @@ abstract class TelephonyConnection extends Connection {
     private static final int MSG_SET_CONFERENCE_PARTICIPANTS = 11;
     private static final int MSG_CONNECTION_EXTRAS_CHANGED = 12;
     private static final int MSG_SET_ORIGNAL_CONNECTION_CAPABILITIES = 13;
-    private static final int MSG_ON_HOLD_TONE = 14;
-    private static final int MSG_CDMA_VOICE_PRIVACY_ON = 15;
-    private static final int MSG_CDMA_VOICE_PRIVACY_OFF = 16;
 
     private String[] mSubName = {"SIM1", "SIM2", "SIM3"};
     private String mDisplayName;
@@ -104,55 +96,6 @@ abstract class TelephonyConnection extends Connection {
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
-                case MSG_PRECISE_CALL_STATE_CHANGED:
-                    Log.v(TelephonyConnection.this, "MSG_PRECISE_CALL_STATE_CHANGED");
-                    updateState();
-                    break;
-                case MSG_HANDOVER_STATE_CHANGED:
-                    Log.v(TelephonyConnection.this, "MSG_HANDOVER_STATE_CHANGED");
-                    AsyncResult ar = (AsyncResult) msg.obj;
-                    com.android.internal.telephony.Connection connection =
-                         (com.android.internal.telephony.Connection) ar.result;
-                    if (mOriginalConnection != null) {
-                        if (connection != null &&
-                            ((connection.getAddress() != null &&
-                            mOriginalConnection.getAddress() != null &&
-                            mOriginalConnection.getAddress().contains(connection.getAddress())) ||
-                            connection.getState() == mOriginalConnection.getStateBeforeHandover())) {
-                            Log.d(TelephonyConnection.this,
-                                    "SettingOriginalConnection " + mOriginalConnection.toString()
-                                            + " with " + connection.toString());
-                            boolean isShowToast = getPhone().getContext().getResources()
-                                    .getBoolean(R.bool.config_show_srvcc_toast);
-                            if (isShowToast && !shouldTreatAsEmergencyCall()) {
-                                int srvccMessageRes = VideoProfile.isVideo(
-                                        mOriginalConnection.getVideoState()) ?
-                                        R.string.srvcc_video_message : R.string.srvcc_message;
-                                Toast.makeText(getPhone().getContext(),
-                                        srvccMessageRes, Toast.LENGTH_LONG).show();
-                            }
-                            setOriginalConnection(connection);
-                            mWasImsConnection = false;
-                        }
-                    } else {
-                        Log.w(TelephonyConnection.this,
-                                "MSG_HANDOVER_STATE_CHANGED: mOriginalConnection==null - invalid state (not cleaned up)");
-                    }
-                    break;
-                case MSG_RINGBACK_TONE:
-                    Log.v(TelephonyConnection.this, "MSG_RINGBACK_TONE");
-                    // TODO: This code assumes that there is only one connection in the foreground
-                    // call, in other words, it punts on network-mediated conference calling.
-                    if (getOriginalConnection() != getForegroundConnection()) {
-                        Log.v(TelephonyConnection.this, "handleMessage, original connection is " +
-                                "not foreground connection, skipping");
-                        return;
-                    }
-                    setRingbackRequested((Boolean) ((AsyncResult) msg.obj).result);
-                    break;
-                case MSG_DISCONNECT:
-                    updateState();
-                    break;
                 case MSG_MULTIPARTY_STATE_CHANGED:
                     boolean isMultiParty = (Boolean) msg.obj;
                     Log.i(this, "Update multiparty state to %s", isMultiParty ? "Y" : "N");
@@ -200,44 +143,56 @@ abstract class TelephonyConnection extends Connection {
                 case MSG_SET_ORIGNAL_CONNECTION_CAPABILITIES:
                     setOriginalConnectionCapabilities(msg.arg1);
                     break;
-
-                case MSG_ON_HOLD_TONE:
-                    AsyncResult asyncResult = (AsyncResult) msg.obj;
-                    Pair<com.android.internal.telephony.Connection, Boolean> heldInfo =
-                            (Pair<com.android.internal.telephony.Connection, Boolean>)
-                                    asyncResult.result;
-
-                    // Determines if the hold tone is starting or stopping.
-                    boolean playTone = ((Boolean) (heldInfo.second)).booleanValue();
-
-                    // Determine which connection the hold tone is stopping or starting for
-                    com.android.internal.telephony.Connection heldConnection = heldInfo.first;
-
-                    // Only start or stop the hold tone if this is the connection which is starting
-                    // or stopping the hold tone.
-                    if (heldConnection == mOriginalConnection) {
-                        // If starting the hold tone, send a connection event to Telecom which will
-                        // cause it to play the on hold tone.
-                        if (playTone) {
-                            sendConnectionEvent(EVENT_ON_HOLD_TONE_START, null);
-                        } else {
-                            sendConnectionEvent(EVENT_ON_HOLD_TONE_END, null);
-                        }
-                    }
-                    break;
-
-                case MSG_CDMA_VOICE_PRIVACY_ON:
-                    Log.d(this, "MSG_CDMA_VOICE_PRIVACY_ON received");
-                    setCdmaVoicePrivacy(true);
-                    break;
-                case MSG_CDMA_VOICE_PRIVACY_OFF:
-                    Log.d(this, "MSG_CDMA_VOICE_PRIVACY_OFF received");
-                    setCdmaVoicePrivacy(false);
-                    break;
             }
         }
     };
 
+    /**
+     * Called by the {@link PhoneCallEventDispatcher} when a call on the phone is handed over to
+     * {@code connection}.
+     */
+    void onHandoverStateChanged(com.android.internal.telephony.Connection connection) {
+        Log.v(this, "onHandoverStateChanged");
+        if (mOriginalConnection != null) {
+            if (connection != null &&
+                ((connection.getAddress() != null &&
+                mOriginalConnection.getAddress() != null &&
+                mOriginalConnection.getAddress().contains(connection.getAddress())) ||
+                connection.getState() == mOriginalConnection.getStateBeforeHandover())) {
+                Log.d(this, "SettingOriginalConnection %s with %s", mOriginalConnection,
+                        connection);
+                boolean isShowToast = getPhone().getContext().getResources()
+                        .getBoolean(R.bool.config_show_srvcc_toast);
+                if (isShowToast && !shouldTreatAsEmergencyCall()) {
+                    int srvccMessageRes = VideoProfile.isVideo(
+                            mOriginalConnection.getVideoState()) ?
+                            R.string.srvcc_video_message : R.string.srvcc_message;
+                    Toast.makeText(getPhone().getContext(),
+                            srvccMessageRes, Toast.LENGTH_LONG).show();
+                }
+                setOriginalConnection(connection);
+                mWasImsConnection = false;
+            }
+        } else {
+            Log.w(this, "onHandoverStateChanged: mOriginalConnection==null - invalid state (not "
+                    + "cleaned up)");
+        }
+    }
+
+    /**
+     * Called by the {@link PhoneCallEventDispatcher} when the network starts or stops playing the
+     * on hold tone for this connection.
+     */
+    void onHoldTone(boolean playTone) {
+        // If starting the hold tone, send a connection event to Telecom which will
+        // cause it to play the on hold tone.
+        if (playTone) {
+            sendConnectionEvent(EVENT_ON_HOLD_TONE_START, null);
+        } else {
+            sendConnectionEvent(EVENT_ON_HOLD_TONE_END, null);
+        }
+    }
+
     /**
      * @return {@code true} if carrier video conferencing is supported, {@code false} otherwise.
      */
@@ -430,6 +385,81 @@ abstract class TelephonyConnection extends Connection {
      */
     private boolean mIsMultiParty = false;
 
+    /**
+     * Trace of the setup of this call, or null if it is not traced.
+     */
+    private CallSetupTracer.Trace mSetupTrace;
+
+    /**
+     * Passes the call events of the phone of the original connection to this connection.
+     */
+    private PhoneCallEventDispatcher mEventDispatcher;
+
+    /**
+     * The inputs and outputs of the last {@link #updateAddress}. {@link #updateState} publishes
+     * the address again only when they changed, or when the state did.
+     */
+    private AddressSnapshot mPublishedAddress;
+
+    /**
+     * The status hints last set by {@link #updateStatusHints}, and the label they were made with.
+     */
+    private StatusHints mPublishedStatusHints;
+    private int mPublishedStatusHintsLabelId;
+
+    private int mAddressPublishCount;
+    private int mAddressSkipCount;
+
+    /**
+     * The fields of the original connection that the address, caller name and conference support
+     * published to Telecom are made from, together with what was published.
+     */
+    private static final class AddressSnapshot {
+        private final com.android.internal.telephony.Connection mConnection;
+        private final String mAddress;
+        private final String mOrigDialString;
+        private final int mPresentation;
+        private final String mCnapName;
+        private final int mCnapNamePresentation;
+        private final Uri mPublishedAddress;
+        private final int mPublishedPresentation;
+        private final String mPublishedName;
+        private final int mPublishedNamePresentation;
+        private final int mProperties;
+        private final int mVideoState;
+
+        AddressSnapshot(TelephonyConnection connection) {
+            mConnection = connection.mOriginalConnection;
+            mAddress = mConnection.getAddress();
+            mOrigDialString = mConnection.getOrigDialString();
+            mPresentation = mConnection.getNumberPresentation();
+            mCnapName = mConnection.getCnapName();
+            mCnapNamePresentation = mConnection.getCnapNamePresentation();
+            mPublishedAddress = connection.getAddress();
+            mPublishedPresentation = connection.getAddressPresentation();
+            mPublishedName = connection.getCallerDisplayName();
+            mPublishedNamePresentation = connection.getCallerDisplayNamePresentation();
+            mProperties = connection.getConnectionProperties();
+            mVideoState = connection.getVideoState();
+        }
+
+        boolean isSame(AddressSnapshot other) {
+            return other != null
+                    && mConnection == other.mConnection
+                    && Objects.equals(mAddress, other.mAddress)
+                    && Objects.equals(mOrigDialString, other.mOrigDialString)
+                    && mPresentation == other.mPresentation
+                    && Objects.equals(mCnapName, other.mCnapName)
+                    && mCnapNamePresentation == other.mCnapNamePresentation
+                    && Objects.equals(mPublishedAddress, other.mPublishedAddress)
+                    && mPublishedPresentation == other.mPublishedPresentation
+                    && Objects.equals(mPublishedName, other.mPublishedName)
+                    && mPublishedNamePresentation == other.mPublishedNamePresentation
+                    && mProperties == other.mProperties
+                    && mVideoState == other.mVideoState;
+        }
+    }
+
     /**
      * The {@link com.android.internal.telephony.Connection} capabilities associated with the
      * current {@link #mOriginalConnection}.
@@ -511,7 +541,7 @@ abstract class TelephonyConnection extends Connection {
 
     @Override
     public void onStateChanged(int state) {
-        Log.v(this, "onStateChanged, state: " + Connection.stateToString(state));
+        Log.v(this, "onStateChanged, state: %s", Connection.stateToString(state));
         updateStatusHints();
     }
 
@@ -590,7 +620,7 @@ abstract class TelephonyConnection extends Connection {
 
     @Override
     public void onPostDialContinue(boolean proceed) {
-        Log.v(this, "onPostDialContinue, proceed: " + proceed);
+        Log.v(this, "onPostDialContinue, proceed: %b", proceed);
         if (mOriginalConnection != null) {
             if (proceed) {
                 mOriginalConnection.proceedAfterWaitChar();
@@ -781,6 +811,14 @@ abstract class TelephonyConnection extends Connection {
     protected final void updateAddress() {
         updateConnectionCapabilities();
         updateConnectionProperties();
+        publishAddress();
+    }
+
+    /**
+     * Publishes the address and caller name of the original connection, and whether it can be
+     * conferenced.
+     */
+    private void publishAddress() {
         if (mOriginalConnection != null) {
             Uri address;
             boolean showOrigDialString = false;
@@ -791,7 +829,7 @@ abstract class TelephonyConnection extends Connection {
                 PersistableBundle pb = configManager.getConfigForSubId(phone.getSubId());
                 if (pb != null) {
                     showOrigDialString = pb.getBoolean("config_show_orig_dial_string_for_cdma");
-                    Log.d(this, "showOrigDialString: " + showOrigDialString);
+                    Log.d(this, "showOrigDialString: %b", showOrigDialString);
                 }
             }
             if (showOrigDialString && ((getAddress() != null) && phone != null &&
@@ -826,6 +864,9 @@ abstract class TelephonyConnection extends Connection {
             // Changing the address of the connection can change whether it is an emergency call or
             // not, which can impact whether it can be part of a conference.
             refreshConferenceSupported();
+
+            mAddressPublishCount++;
+            mPublishedAddress = new AddressSnapshot(this);
         }
     }
 
@@ -834,20 +875,12 @@ abstract class TelephonyConnection extends Connection {
     }
 
     void setOriginalConnection(com.android.internal.telephony.Connection originalConnection) {
-        Log.v(this, "new TelephonyConnection, originalConnection: " + originalConnection);
+        Log.v(this, "new TelephonyConnection, originalConnection: %s", originalConnection);
         clearOriginalConnection();
         mOriginalConnectionExtras.clear();
         mOriginalConnection = originalConnection;
         mOriginalConnection.setTelecomCallId(getTelecomCallId());
-        getPhone().registerForPreciseCallStateChanged(
-                mHandler, MSG_PRECISE_CALL_STATE_CHANGED, null);
-        getPhone().registerForHandoverStateChanged(
-                mHandler, MSG_HANDOVER_STATE_CHANGED, null);
-        getPhone().registerForRingbackTone(mHandler, MSG_RINGBACK_TONE, null);
-        getPhone().registerForDisconnect(mHandler, MSG_DISCONNECT, null);
-        getPhone().registerForOnHoldTone(mHandler, MSG_ON_HOLD_TONE, null);
-        getPhone().registerForInCallVoicePrivacyOn(mHandler, MSG_CDMA_VOICE_PRIVACY_ON, null);
-        getPhone().registerForInCallVoicePrivacyOff(mHandler, MSG_CDMA_VOICE_PRIVACY_OFF, null);
+        mEventDispatcher = PhoneCallEventDispatcher.addConnection(getPhone(), this);
         mOriginalConnection.addPostDialListener(mPostDialListener);
         mOriginalConnection.addListener(mOriginalConnectionListener);
 
@@ -902,7 +935,7 @@ abstract class TelephonyConnection extends Connection {
         // should be executed *after* the above setters have run.
         updateState();
         if (mOriginalConnection == null) {
-            Log.w(this, "original Connection was nulled out as part of setOriginalConnection. " +
+            Log.w(this, "original Connection was nulled out as part of setOriginalConnection. %s",
                     originalConnection);
         }
 
@@ -929,7 +962,7 @@ abstract class TelephonyConnection extends Connection {
                     .filter(filteredCnapName -> filteredCnapName.equals(cnapName.toUpperCase()))
                     .count();
             if (cnapNameMatches > 0) {
-                Log.i(this, "filterCnapName: Filtered CNAP Name: " + cnapName);
+                Log.i(this, "filterCnapName: Filtered CNAP Name: %s", cnapName);
                 return "";
             }
         }
@@ -1055,14 +1088,9 @@ abstract class TelephonyConnection extends Connection {
      */
     void clearOriginalConnection() {
         if (mOriginalConnection != null) {
-            if (getPhone() != null) {
-                getPhone().unregisterForPreciseCallStateChanged(mHandler);
-                getPhone().unregisterForRingbackTone(mHandler);
-                getPhone().unregisterForHandoverStateChanged(mHandler);
-                getPhone().unregisterForDisconnect(mHandler);
-                getPhone().unregisterForOnHoldTone(mHandler);
-                getPhone().unregisterForInCallVoicePrivacyOn(mHandler);
-                getPhone().unregisterForInCallVoicePrivacyOff(mHandler);
+            if (mEventDispatcher != null) {
+                mEventDispatcher.removeConnection(this);
+                mEventDispatcher = null;
             }
             mOriginalConnection.removePostDialListener(mPostDialListener);
             mOriginalConnection.removeListener(mOriginalConnectionListener);
@@ -1203,8 +1231,8 @@ abstract class TelephonyConnection extends Connection {
                         for (String key : extras.keySet()) {
                             Object value = extras.get(key);
                             if (value instanceof String) {
-                                Log.d(this, "updateExtras Key=" + Log.pii(key) +
-                                             " value=" + Log.pii((String)value));
+                                Log.d(this, "updateExtras Key=%s value=%s", Log.pii(key),
+                                        Log.pii(value));
                             }
                         }
                     }
@@ -1227,7 +1255,7 @@ abstract class TelephonyConnection extends Connection {
                     Log.d(this, "Extras update not required");
                 }
             } else {
-                Log.d(this, "updateExtras extras: " + Log.pii(extras));
+                Log.d(this, "updateExtras extras: %s", Log.pii(extras));
             }
         }
     }
@@ -1286,24 +1314,34 @@ abstract class TelephonyConnection extends Connection {
                 case IDLE:
                     break;
                 case ACTIVE:
+                    markSetupPhase(CallSetupTracer.PHASE_ACTIVE);
                     setActiveInternal();
+                    markSetupPhase(CallSetupTracer.PHASE_PUBLISHED_ACTIVE);
+                    finishSetupTrace();
                     break;
                 case HOLDING:
                     setOnHold();
                     break;
                 case DIALING:
                 case ALERTING:
+                    markSetupPhase(newState == Call.State.DIALING
+                            ? CallSetupTracer.PHASE_DIALING : CallSetupTracer.PHASE_ALERTING);
                     if (mOriginalConnection != null && mOriginalConnection.isPulledCall()) {
                         setPulling();
                     } else {
                         setDialing();
                     }
+                    markSetupPhase(CallSetupTracer.PHASE_PUBLISHED_DIALING);
                     break;
                 case INCOMING:
                 case WAITING:
+                    markSetupPhase(CallSetupTracer.PHASE_INCOMING);
                     setRinging();
+                    markSetupPhase(CallSetupTracer.PHASE_PUBLISHED_RINGING);
                     break;
                 case DISCONNECTED:
+                    markSetupPhase(CallSetupTracer.PHASE_DISCONNECTED);
+                    finishSetupTrace();
                     // We can get into a situation where the radio wants us to redial the same
                     // emergency call on the other available slot. This will not set the state to
                     // disconnected and will instead tell the TelephonyConnectionService to create
@@ -1324,19 +1362,74 @@ abstract class TelephonyConnection extends Connection {
         }
     }
 
+    /**
+     * Attaches the trace of the setup of this call, which follows the state changes from then on.
+     */
+    void setSetupTrace(CallSetupTracer.Trace trace) {
+        mSetupTrace = trace;
+        markSetupPhase(CallSetupTracer.PHASE_CREATED);
+        if (mConnectionState == Call.State.INCOMING || mConnectionState == Call.State.WAITING) {
+            // Ringing was already published when the connection was created.
+            markSetupPhase(CallSetupTracer.PHASE_INCOMING);
+            markSetupPhase(CallSetupTracer.PHASE_PUBLISHED_RINGING);
+        }
+    }
+
+    CallSetupTracer.Trace getSetupTrace() {
+        return mSetupTrace;
+    }
+
+    void markSetupPhase(int phase) {
+        if (mSetupTrace != null) {
+            mSetupTrace.mark(phase);
+        }
+    }
+
+    private void finishSetupTrace() {
+        if (mSetupTrace != null) {
+            mSetupTrace.finish(getPhone(), isImsConnection());
+        }
+    }
+
     void updateState() {
         if (mOriginalConnection == null) {
             return;
         }
 
+        Call.State oldState = mConnectionState;
         updateStateInternal();
         updateStatusHints();
         updateConnectionCapabilities();
         updateConnectionProperties();
-        updateAddress();
+        // Publishing the address looks up the carrier config and the phone account, so only do it
+        // when something it depends on may have changed.
+        if (mOriginalConnection != null) {
+            if (mConnectionState != oldState
+                    || !new AddressSnapshot(this).isSame(mPublishedAddress)) {
+                publishAddress();
+            } else {
+                mAddressSkipCount++;
+            }
+        }
         updateMultiparty();
     }
 
+    /**
+     * @return how many times the address was published.
+     */
+    @VisibleForTesting
+    int getAddressPublishCount() {
+        return mAddressPublishCount;
+    }
+
+    /**
+     * @return how many times {@link #updateState} found the address unchanged.
+     */
+    @VisibleForTesting
+    int getAddressSkipCount() {
+        return mAddressSkipCount;
+    }
+
     /**
      * Checks for changes to the multiparty bit.  If a conference has started, informs listeners.
      */
@@ -1456,7 +1549,7 @@ abstract class TelephonyConnection extends Connection {
     /**
      * Sets whether or not CDMA enhanced call privacy is enabled for this connection.
      */
-    private void setCdmaVoicePrivacy(boolean isEnabled) {
+    void setCdmaVoicePrivacy(boolean isEnabled) {
         if(mIsCdmaVoicePrivacyEnabled != isEnabled) {
             mIsCdmaVoicePrivacyEnabled = isEnabled;
             updateConnectionProperties();
@@ -1682,11 +1775,18 @@ abstract class TelephonyConnection extends Connection {
 
     private void updateStatusHints() {
         boolean isIncoming = isValidRingingCall();
+        int labelId = 0;
         if (mIsWifi && (isIncoming || getState() == STATE_ACTIVE)) {
-            int labelId = isIncoming
+            labelId = isIncoming
                     ? R.string.status_hint_label_incoming_wifi_call
                     : R.string.status_hint_label_wifi_call;
-
+        }
+        // Setting equal hints again would still be sent to Telecom.
+        if (labelId == mPublishedStatusHintsLabelId
+                && getStatusHints() == mPublishedStatusHints) {
+            return;
+        }
+        if (labelId != 0) {
             Context context = getPhone().getContext();
             setStatusHints(new StatusHints(
                     context.getString(labelId),
@@ -1697,6 +1797,8 @@ abstract class TelephonyConnection extends Connection {
         } else {
             setStatusHints(null);
         }
+        mPublishedStatusHints = getStatusHints();
+        mPublishedStatusHintsLabelId = labelId;
     }
 
     /**
@@ -119,7 +119,8 @@ public class TelephonyConnectionService extends ConnectionService {
     public Connection onCreateOutgoingConnection(
             PhoneAccountHandle connectionManagerPhoneAccount,
             final ConnectionRequest request) {
-        Log.i(this, "onCreateOutgoingConnection, request: " + request);
+        Log.i(this, "onCreateOutgoingConnection, request: %s", request);
+        final CallSetupTracer.Trace trace = CallSetupTracer.start(true /* isOutgoing */);
 
         Bundle bundle = request.getExtras();
         boolean isSkipSchemaOrConfUri = (bundle != null) && (bundle.getBoolean(
@@ -230,6 +231,9 @@ public class TelephonyConnectionService extends ConnectionService {
             final int defaultPhoneType = PhoneFactory.getDefaultPhone().getPhoneType();
             final Connection emergencyConnection = getTelephonyConnection(request, numberToDial,
                     isEmergencyNumber, emergencyHandle, PhoneFactory.getDefaultPhone());
+            if (emergencyConnection instanceof TelephonyConnection) {
+                ((TelephonyConnection) emergencyConnection).setSetupTrace(trace);
+            }
             if (mEmergencyCallHelper == null) {
                 mEmergencyCallHelper = new EmergencyCallHelper(this);
             }
@@ -256,6 +260,8 @@ public class TelephonyConnectionService extends ConnectionService {
                             // If there was a failure, the resulting connection will not be a
                             // TelephonyConnection, so don't place the call, just return!
                             if (repConnection instanceof TelephonyConnection) {
+                                // Keep timing from the original request.
+                                ((TelephonyConnection) repConnection).setSetupTrace(trace);
                                 placeOutgoingConnection((TelephonyConnection) repConnection, phone,
                                         request);
                             }
@@ -306,6 +312,7 @@ public class TelephonyConnectionService extends ConnectionService {
             // If there was a failure, the resulting connection will not be a TelephonyConnection,
             // so don't place the call!
             if(resultConnection instanceof TelephonyConnection) {
+                ((TelephonyConnection) resultConnection).setSetupTrace(trace);
                 placeOutgoingConnection((TelephonyConnection) resultConnection, phone, request);
             }
             return resultConnection;
@@ -463,7 +470,8 @@ public class TelephonyConnectionService extends ConnectionService {
     public Connection onCreateIncomingConnection(
             PhoneAccountHandle connectionManagerPhoneAccount,
             ConnectionRequest request) {
-        Log.i(this, "onCreateIncomingConnection, request: " + request);
+        Log.i(this, "onCreateIncomingConnection, request: %s", request);
+        CallSetupTracer.Trace trace = CallSetupTracer.start(false /* isOutgoing */);
         // If there is an incoming emergency CDMA Call (while the phone is in ECBM w/ No SIM),
         // make sure the PhoneAccount lookup retrieves the default Emergency Phone.
         PhoneAccountHandle accountHandle = request.getAccountHandle();
@@ -506,13 +514,14 @@ public class TelephonyConnectionService extends ConnectionService {
         int videoState = originalConnection != null ? originalConnection.getVideoState() :
                 VideoProfile.STATE_AUDIO_ONLY;
 
-        Connection connection =
+        TelephonyConnection connection =
                 createConnectionFor(phone, originalConnection, false /* isOutgoing */,
                         request.getAccountHandle(), request.getTelecomCallId(),
                         request.getAddress(), extras, videoState);
         if (connection == null) {
             return Connection.createCanceledConnection();
         } else {
+            connection.setSetupTrace(trace);
             return connection;
         }
     }
@@ -527,7 +536,7 @@ public class TelephonyConnectionService extends ConnectionService {
     @Override
     public Connection onCreateUnknownConnection(PhoneAccountHandle connectionManagerPhoneAccount,
             ConnectionRequest request) {
-        Log.i(this, "onCreateUnknownConnection, request: " + request);
+        Log.i(this, "onCreateUnknownConnection, request: %s", request);
         // Use the registered emergency Phone if the PhoneAccountHandle is set to Telephony's
         // Emergency PhoneAccount
         PhoneAccountHandle accountHandle = request.getAccountHandle();
@@ -596,7 +605,7 @@ public class TelephonyConnectionService extends ConnectionService {
         for (com.android.internal.telephony.Connection telephonyConnection : allConnections) {
             if (!isOriginalConnectionKnown(telephonyConnection)) {
                 unknownConnection = telephonyConnection;
-                Log.d(this, "onCreateUnknownConnection: conn = " + unknownConnection);
+                Log.d(this, "onCreateUnknownConnection: conn = %s", unknownConnection);
                 break;
             }
         }
@@ -652,7 +661,7 @@ public class TelephonyConnectionService extends ConnectionService {
             ((TelephonyConnection) connection2).performConference(connection1);
         } else {
             Log.w(this, "onConference - cannot merge connections " +
-                    "Connection1: %s, Connection2: %2", connection1, connection2);
+                    "Connection1: %s, Connection2: %s", connection1, connection2);
         }
     }
 
@@ -704,8 +713,8 @@ public class TelephonyConnectionService extends ConnectionService {
     private Phone getPhoneForRedial(Phone phoneToExclude) {
         List<Phone> cachedPhones = mEmergencyRetryCache.second;
         if (cachedPhones.contains(phoneToExclude)) {
-            Log.i(this, "getPhoneForRedial, removing Phone[" + phoneToExclude.getPhoneId() +
-                    "] from the available Phone cache.");
+            Log.i(this, "getPhoneForRedial, removing Phone[%d] from the available Phone cache.",
+                    phoneToExclude.getPhoneId());
             cachedPhones.remove(phoneToExclude);
         }
         return cachedPhones.isEmpty() ? null : cachedPhones.get(0);
@@ -717,7 +726,8 @@ public class TelephonyConnectionService extends ConnectionService {
         if (newPhoneToUse != null) {
             int videoState = c.getVideoState();
             Bundle connExtras = c.getExtras();
-            Log.i(this, "retryOutgoingOriginalConnection, redialing on Phone Id: " + newPhoneToUse);
+            Log.i(this, "retryOutgoingOriginalConnection, redialing on Phone Id: %s",
+                    newPhoneToUse);
             c.clearOriginalConnection();
             placeOutgoingConnection(c, newPhoneToUse, videoState, connExtras);
         } else {
@@ -740,7 +750,7 @@ public class TelephonyConnectionService extends ConnectionService {
 
         boolean isAddParticipant = (extras != null) && extras
                 .getBoolean(TelephonyProperties.ADD_PARTICIPANT_KEY, false);
-        Log.d(this, "placeOutgoingConnection isAddParticipant = " + isAddParticipant);
+        Log.d(this, "placeOutgoingConnection isAddParticipant = %b", isAddParticipant);
 
         com.android.internal.telephony.Connection originalConnection = null;
         try {
@@ -749,7 +759,9 @@ public class TelephonyConnectionService extends ConnectionService {
                     phone.addParticipant(number);
                     return;
                 } else {
+                    connection.markSetupPhase(CallSetupTracer.PHASE_DIAL_STARTED);
                     originalConnection = phone.dial(number, null, videoState, extras);
+                    connection.markSetupPhase(CallSetupTracer.PHASE_DIAL_RETURNED);
                 }
             }
         } catch (CallStateException e) {
@@ -769,7 +781,7 @@ public class TelephonyConnectionService extends ConnectionService {
             if (phone.getPhoneType() == PhoneConstants.PHONE_TYPE_GSM) {
                 Log.d(this, "dialed MMI code");
                 int subId = phone.getSubId();
-                Log.d(this, "subId: " + subId);
+                Log.d(this, "subId: %d", subId);
                 telephonyDisconnectCause = android.telephony.DisconnectCause.DIALED_MMI;
                 final Intent intent = new Intent(this, MMIDialogActivity.class);
                 intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
@@ -845,8 +857,8 @@ public class TelephonyConnectionService extends ConnectionService {
             Log.d(this, "getPhoneForAccount: phone for phone acct handle %s is out of service "
                     + "or invalid for emergency call.", accountHandle);
             chosenPhone = getFirstPhoneForEmergencyCall();
-            Log.d(this, "getPhoneForAccount: using subId: " +
-                    (chosenPhone == null ? "null" : chosenPhone.getSubId()));
+            Log.d(this, "getPhoneForAccount: using subId: %s",
+                    chosenPhone == null ? "null" : chosenPhone.getSubId());
         }
         return chosenPhone;
     }
@@ -880,7 +892,7 @@ public class TelephonyConnectionService extends ConnectionService {
             // 2)
             if (isAvailableForEmergencyCalls(phone)) {
                 // the slot has the radio on & state is in service.
-                Log.i(this, "getFirstPhoneForEmergencyCall, radio on & in service, Phone Id:" + i);
+                Log.i(this, "getFirstPhoneForEmergencyCall, radio on & in service, Phone Id:%d", i);
                 return phone;
             }
             // 3)
@@ -888,15 +900,15 @@ public class TelephonyConnectionService extends ConnectionService {
             int radioAccessFamily = phone.getRadioAccessFamily();
             if(RadioAccessFamily.getHighestRafCapability(radioAccessFamily) != 0) {
                 phoneNetworkType.add(new Pair<>(i, radioAccessFamily));
-                Log.i(this, "getFirstPhoneForEmergencyCall, RAF:" +
-                        Integer.toHexString(radioAccessFamily) + " saved for Phone Id:" + i);
+                Log.i(this, "getFirstPhoneForEmergencyCall, RAF:%x saved for Phone Id:%d",
+                        radioAccessFamily, i);
             }
             // 4)
             if (firstPhoneWithSim == null && TelephonyManager.getDefault().hasIccCard(i)) {
                 // The slot has a SIM card inserted, but is not in service, so keep track of this
                 // Phone. Do not return because we want to make sure that none of the other Phones
                 // are in service (because that is always faster).
-                Log.i(this, "getFirstPhoneForEmergencyCall, SIM card inserted, Phone Id:" + i);
+                Log.i(this, "getFirstPhoneForEmergencyCall, SIM card inserted, Phone Id:%d", i);
                 firstPhoneWithSim = phone;
             }
         }
@@ -934,8 +946,8 @@ public class TelephonyConnectionService extends ConnectionService {
                     });
                 }
                 int mostCapablePhoneId = phoneNetworkType.get(phoneNetworkType.size()-1).first;
-                Log.i(this, "getFirstPhoneForEmergencyCall, Using Phone Id: " + mostCapablePhoneId +
-                        "with highest capability");
+                Log.i(this, "getFirstPhoneForEmergencyCall, Using Phone Id: %d with highest "
+                        + "capability", mostCapablePhoneId);
                 return PhoneFactory.getPhone(mostCapablePhoneId);
             } else {
                 // 4)
@@ -993,7 +1005,7 @@ public class TelephonyConnectionService extends ConnectionService {
         // connections in it, while the other conference controllers aren't as restrictive.  Really,
         // when we go between CDMA and GSM we should replace the TelephonyConnection.
         if (connection.isImsConnection()) {
-            Log.d(this, "Adding IMS connection to conference controller: " + connection);
+            Log.d(this, "Adding IMS connection to conference controller: %s", connection);
             mImsConferenceController.add(connection);
             mTelephonyConferenceController.remove(connection);
             if (connection instanceof CdmaConnection) {
@@ -1002,18 +1014,18 @@ public class TelephonyConnectionService extends ConnectionService {
         } else {
             int phoneType = connection.getCall().getPhone().getPhoneType();
             if (phoneType == TelephonyManager.PHONE_TYPE_GSM) {
-                Log.d(this, "Adding GSM connection to conference controller: " + connection);
+                Log.d(this, "Adding GSM connection to conference controller: %s", connection);
                 mTelephonyConferenceController.add(connection);
                 if (connection instanceof CdmaConnection) {
                     mCdmaConferenceController.remove((CdmaConnection) connection);
                 }
             } else if (phoneType == TelephonyManager.PHONE_TYPE_CDMA &&
                     connection instanceof CdmaConnection) {
-                Log.d(this, "Adding CDMA connection to conference controller: " + connection);
+                Log.d(this, "Adding CDMA connection to conference controller: %s", connection);
                 mCdmaConferenceController.add((CdmaConnection) connection);
                 mTelephonyConferenceController.remove(connection);
             }
-            Log.d(this, "Removing connection from IMS conference controller: " + connection);
+            Log.d(this, "Removing connection from IMS conference controller: %s", connection);
             mImsConferenceController.remove(connection);
         }
     }
@@ -33,13 +33,22 @@ import java.io.InputStream;
  * @version $Id: Base64InputStream.java,v 1.3 2004/11/29 13:15:47 ntherning Exp $
  */
 public class Base64InputStream extends InputStream {
+    /** Size of the block of encoded bytes pulled from the underlying stream at once. */
+    private static final int ENCODED_BUFFER_SIZE = 8192;
+
     private final InputStream s;
     private int outCount = 0;
     private int outIndex = 0;
     private final int[] outputBuffer = new int[3];
     private final byte[] inputBuffer = new byte[4];
+    private int inCount = 0;
     private boolean done = false;
 
+    // Encoded bytes read ahead by read(byte[], int, int), allocated on first use.
+    private byte[] encoded;
+    private int encodedPos = 0;
+    private int encodedLimit = 0;
+
     public Base64InputStream(InputStream s) {
         this.s = s;
     }
@@ -66,6 +75,101 @@ public class Base64InputStream extends InputStream {
         return outputBuffer[outIndex++];
     }
 
+    /**
+     * Decodes directly into {@code b}, pulling whole blocks of encoded bytes from the
+     * underlying stream instead of going through {@link #read()} once per byte.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        int written = drainOutput(b, off, len);
+        while (written < len && !done) {
+            if (encodedPos == encodedLimit) {
+                // Don't block for more input if we already have something to return.
+                if (written > 0 || !fillEncoded()) {
+                    break;
+                }
+            }
+
+            int c = encoded[encodedPos++] & 0xFF;
+            if (c == '=') {
+                // once we meet the first '=', avoid reading the second '='
+                done = true;
+                decodeAndEnqueue(inCount);
+                written += drainOutput(b, off + written, len - written);
+                break;
+            }
+            byte sX = TRANSLATION[c];
+            if (sX < 0) continue;
+            inputBuffer[inCount++] = sX;
+            if (inCount == 4) {
+                if (len - written >= 3) {
+                    int accum = (inputBuffer[0] << 18) | (inputBuffer[1] << 12)
+                            | (inputBuffer[2] << 6) | inputBuffer[3];
+                    b[off + written++] = (byte) (accum >> 16);
+                    b[off + written++] = (byte) (accum >> 8);
+                    b[off + written++] = (byte) accum;
+                    inCount = 0;
+                } else {
+                    // Not enough room for the whole quantum; leave the rest for the next call.
+                    decodeAndEnqueue(inCount);
+                    written += drainOutput(b, off + written, len - written);
+                }
+            }
+        }
+        return written == 0 ? -1 : written;
+    }
+
+    /**
+     * Copies already decoded bytes into {@code b}.
+     *
+     * @return the number of bytes copied.
+     */
+    private int drainOutput(byte[] b, int off, int len) {
+        int n = 0;
+        while (outIndex < outCount && n < len) {
+            b[off + n++] = (byte) outputBuffer[outIndex++];
+        }
+        return n;
+    }
+
+    /**
+     * Reads the next block of encoded bytes from the underlying stream.
+     *
+     * @return false if the underlying stream is exhausted.
+     */
+    private boolean fillEncoded() throws IOException {
+        if (encoded == null) {
+            encoded = new byte[ENCODED_BUFFER_SIZE];
+        }
+        encodedPos = 0;
+        encodedLimit = 0;
+        int n = s.read(encoded, 0, encoded.length);
+        if (n <= 0) {
+            // Like fillBuffer(), an incomplete trailing quantum is dropped.
+            inCount = 0;
+            return false;
+        }
+        encodedLimit = n;
+        return true;
+    }
+
+    /**
+     * Returns the next encoded byte, taking it from the read-ahead block if there is one.
+     */
+    private int readEncoded() throws IOException {
+        if (encodedPos < encodedLimit) {
+            return encoded[encodedPos++] & 0xFF;
+        }
+        return s.read();
+    }
+
     /**
      * Retrieve data from the underlying stream, decode it,
      * and put the results in the byteq.
@@ -74,14 +178,14 @@ public class Base64InputStream extends InputStream {
     private void fillBuffer() throws IOException {
         outCount = 0;
         outIndex = 0;
-        int inCount = 0;
 
         int i;
         // "done" is needed for the two successive '=' at the end
         while (!done) {
-            switch (i = s.read()) {
+            switch (i = readEncoded()) {
                 case -1:
                     // No more input - just return, let outputBuffer drain out, and be done
+                    inCount = 0;
                     return;
                 case '=':
                     // once we meet the first '=', avoid reading the second '='
@@ -102,6 +206,9 @@ public class Base64InputStream extends InputStream {
     }
 
     private void decodeAndEnqueue(int len) {
+        outCount = 0;
+        outIndex = 0;
+        inCount = 0;
         int accum = 0;
         accum |= inputBuffer[0] << 18;
         accum |= inputBuffer[1] << 12;
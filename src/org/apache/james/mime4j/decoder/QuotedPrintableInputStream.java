@@ -36,12 +36,20 @@ import org.apache.james.mime4j.LogFactory;
  */
 public class QuotedPrintableInputStream extends InputStream {
     private static Log log = LogFactory.getLog(QuotedPrintableInputStream.class);
-    
+
+    /** Size of the block of encoded bytes pulled from the underlying stream at once. */
+    private static final int ENCODED_BUFFER_SIZE = 8192;
+
     private InputStream stream;
     ByteQueue byteq = new ByteQueue();
     ByteQueue pushbackq = new ByteQueue();
     private byte state = 0;
 
+    // Encoded bytes read ahead by read(byte[], int, int), allocated on first use.
+    private byte[] encoded;
+    private int encodedPos = 0;
+    private int encodedLimit = 0;
+
     public QuotedPrintableInputStream(InputStream stream) {
         this.stream = stream;
     }
@@ -68,6 +76,82 @@ public class QuotedPrintableInputStream extends InputStream {
         }
     }
 
+    /**
+     * Decodes directly into {@code b}. Runs of literal bytes are copied straight from a
+     * block read off the underlying stream; only '=' escapes and whitespace, which may be
+     * transport padding, go through the byte-at-a-time state machine.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        int written = 0;
+        while (written < len) {
+            if (byteq.count() != 0) {
+                b[off + written++] = byteq.dequeue();
+                continue;
+            }
+
+            if (state == 0 && pushbackq.count() == 0) {
+                if (encodedPos == encodedLimit) {
+                    // Don't block for more input if we already have something to return.
+                    if (written > 0) {
+                        break;
+                    }
+                    fillEncoded();
+                }
+                while (encodedPos < encodedLimit && written < len) {
+                    byte c = encoded[encodedPos];
+                    if (c == '=' || c == ' ' || c == '\t') {
+                        break;
+                    }
+                    b[off + written++] = c;
+                    encodedPos++;
+                }
+                if (written == len) {
+                    break;
+                }
+            }
+
+            fillBuffer();
+            if (byteq.count() == 0) {
+                break;
+            }
+        }
+        return written == 0 ? -1 : written;
+    }
+
+    /**
+     * Reads the next block of encoded bytes from the underlying stream. On end of stream
+     * the block is left empty and {@link #readEncoded()} reports it.
+     */
+    private void fillEncoded() throws IOException {
+        if (encoded == null) {
+            encoded = new byte[ENCODED_BUFFER_SIZE];
+        }
+        encodedPos = 0;
+        encodedLimit = 0;
+        int n = stream.read(encoded, 0, encoded.length);
+        if (n > 0) {
+            encodedLimit = n;
+        }
+    }
+
+    /**
+     * Returns the next encoded byte, taking it from the read-ahead block if there is one.
+     */
+    private int readEncoded() throws IOException {
+        if (encodedPos < encodedLimit) {
+            return encoded[encodedPos++] & 0xFF;
+        }
+        return stream.read();
+    }
+
     /**
      * Pulls bytes out of the underlying stream and places them in the
      * pushback queue.  This is necessary (vs. reading from the
@@ -84,7 +168,7 @@ public class QuotedPrintableInputStream extends InputStream {
             return;
 
         while (true) {
-            int i = stream.read();
+            int i = readEncoded();
             switch (i) {
                 case -1:
                     // stream is done
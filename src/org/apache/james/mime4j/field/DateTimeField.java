@@ -22,6 +22,7 @@ package org.apache.james.mime4j.field;
 //BEGIN android-changed: Stubbing out logging
 
 import com.android.phone.common.mail.utils.LogUtils;
+import com.android.phone.common.mail.utils.MailDateParser;
 
 import org.apache.james.mime4j.Log;
 import org.apache.james.mime4j.LogFactory;
@@ -56,6 +57,10 @@ public class DateTimeField extends Field {
             Date date = null;
             ParseException parseException = null;
             //BEGIN android-changed
+            date = MailDateParser.parseDate(body);
+            if (date != null) {
+                return new DateTimeField(name, body, raw, date, null);
+            }
             body = LogUtils.cleanUpMimeDate(body);
             //END android-changed
             try {
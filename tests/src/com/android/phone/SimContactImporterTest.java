@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import android.provider.ContactsContract.Data;
+import android.provider.ContactsContract.RawContacts;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link SimContactImporter} against a synthetic ADN cursor and an in-memory contacts
+ * provider, and measures a large import.
+ */
+public class SimContactImporterTest extends AndroidTestCase {
+    private static final String TAG = "SimContactImporterTest";
+
+    private static final String[] ADN_COLUMNS = {"name", "number", "emails", "_id"};
+
+    private FakeContactsProvider mProvider;
+    private MockContentResolver mResolver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        createProvider();
+    }
+
+    private void createProvider() {
+        mProvider = new FakeContactsProvider();
+        mProvider.attachInfo(getContext(), null);
+        mResolver = new MockContentResolver();
+        mResolver.addProvider(ContactsContract.AUTHORITY, mProvider);
+    }
+
+    @SmallTest
+    public void testImportAll_commitsInBatches() {
+        SimContactImporter importer = new SimContactImporter(mResolver, null, 50, false);
+        RecordingListener listener = new RecordingListener();
+
+        importer.importAll(createAdnCursor(250), listener);
+
+        assertEquals(250, importer.getImportedCount());
+        assertEquals(5, mProvider.mTransactions);
+        assertEquals(250, mProvider.mRawContactCount);
+        assertEquals(250, (int) listener.mProgress.get(listener.mProgress.size() - 1));
+    }
+
+    @SmallTest
+    public void testImportAll_parsesPhoneType() {
+        MatrixCursor cursor = new MatrixCursor(ADN_COLUMNS);
+        cursor.addRow(new Object[] {"Alice/W", "5550100", "alice@example.com", 1});
+
+        new SimContactImporter(mResolver, null, 50, false).importAll(cursor,
+                new RecordingListener());
+
+        assertEquals(1, mProvider.mRawContactCount);
+        ContentValues phone = mProvider.findData(Phone.CONTENT_ITEM_TYPE);
+        assertEquals(Phone.TYPE_WORK, (int) phone.getAsInteger(Phone.TYPE));
+        assertEquals("Alice", mProvider.findData(StructuredName.CONTENT_ITEM_TYPE)
+                .getAsString(StructuredName.DISPLAY_NAME));
+    }
+
+    @SmallTest
+    public void testImportAll_skipsExistingContacts() {
+        new SimContactImporter(mResolver, null, 50, false).importAll(createAdnCursor(10),
+                new RecordingListener());
+        SimContactImporter importer = new SimContactImporter(mResolver, null, 50, true);
+
+        importer.importAll(createAdnCursor(20), new RecordingListener());
+
+        assertEquals(10, importer.getSkippedCount());
+        assertEquals(10, importer.getImportedCount());
+        assertEquals(20, mProvider.mRawContactCount);
+    }
+
+    @SmallTest
+    public void testImportAll_retriesContactsOfFailedBatch() {
+        mProvider.mRejectedName = "Contact 7";
+        SimContactImporter importer = new SimContactImporter(mResolver, null, 50, false);
+
+        importer.importAll(createAdnCursor(20), new RecordingListener());
+
+        assertEquals(19, importer.getImportedCount());
+        assertEquals(1, importer.getFailedCount());
+        assertEquals(19, mProvider.mRawContactCount);
+    }
+
+    @SmallTest
+    public void testImportAll_busyProviderFailedBatchHasNoDuplicates() {
+        mProvider.mBusy = true;
+        mProvider.mRejectedName = "Contact 7";
+        SimContactImporter importer = new SimContactImporter(mResolver, null, 50, false);
+
+        importer.importAll(createAdnCursor(20), new RecordingListener());
+
+        assertEquals(19, importer.getImportedCount());
+        assertEquals(1, importer.getFailedCount());
+        assertEquals(19, mProvider.mRawContactCount);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i == 7 ? 0 : 1, mProvider.countNames("Contact " + i));
+        }
+    }
+
+    @SmallTest
+    public void testImportAll_stopsWhenCanceled() {
+        SimContactImporter importer = new SimContactImporter(mResolver, null, 10, false);
+        RecordingListener listener = new RecordingListener();
+        listener.mCancelAfter = 30;
+
+        importer.importAll(createAdnCursor(100), listener);
+
+        assertEquals(30, mProvider.mRawContactCount);
+    }
+
+    @LargeTest
+    public void testImportAll_performance() {
+        final int count = 1000;
+        Cursor cursor = createAdnCursor(count);
+
+        long start = SystemClock.elapsedRealtime();
+        SimContactImporter importer = new SimContactImporter(mResolver, null,
+                SimContactImporter.DEFAULT_BATCH_SIZE, false);
+        importer.importAll(cursor, new RecordingListener());
+        long batched = SystemClock.elapsedRealtime() - start;
+        int batchedTransactions = mProvider.mTransactions;
+
+        createProvider();
+        start = SystemClock.elapsedRealtime();
+        importer = new SimContactImporter(mResolver, null, 1, false);
+        importer.importAll(cursor, new RecordingListener());
+        long single = SystemClock.elapsedRealtime() - start;
+
+        assertEquals(count, mProvider.mRawContactCount);
+        assertEquals(count, mProvider.mTransactions);
+        Log.i(TAG, count + " contacts: " + batched + "ms in " + batchedTransactions
+                + " transactions, " + single + "ms in " + count + " transactions");
+    }
+
+    private static Cursor createAdnCursor(int count) {
+        MatrixCursor cursor = new MatrixCursor(ADN_COLUMNS, count);
+        for (int i = 0; i < count; i++) {
+            cursor.addRow(new Object[] {"Contact " + i, "555" + (1000000 + i),
+                    i % 4 == 0 ? "contact" + i + "@example.com" : null, i});
+        }
+        return cursor;
+    }
+
+    private static class RecordingListener implements SimContactImporter.Listener {
+        final List<Integer> mProgress = new ArrayList<>();
+        int mCancelAfter = Integer.MAX_VALUE;
+
+        @Override
+        public void onProgress(int processed) {
+            if (!mProgress.isEmpty()) {
+                assertTrue(processed >= mProgress.get(mProgress.size() - 1));
+            }
+            mProgress.add(processed);
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return !mProgress.isEmpty() && mProgress.get(mProgress.size() - 1) >= mCancelAfter;
+        }
+    }
+
+    /**
+     * Keeps raw contacts and data rows in memory and applies each batch as one transaction. When
+     * busy, like ContactsProvider with other writers waiting, it commits the work done so far at
+     * every yield point, so only the operations after the last one are rolled back on failure.
+     */
+    private static class FakeContactsProvider extends ContentProvider {
+        final List<ContentValues> mData = new ArrayList<>();
+        int mRawContactCount;
+        int mTransactions;
+        String mRejectedName;
+        boolean mBusy;
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection,
+                String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+                throws OperationApplicationException {
+            mTransactions++;
+            int rawContactCount = mRawContactCount;
+            int dataCount = mData.size();
+            ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+            try {
+                for (int i = 0; i < operations.size(); i++) {
+                    ContentProviderOperation operation = operations.get(i);
+                    if (mBusy && i > 0 && operation.isYieldAllowed()) {
+                        // Commit.
+                        rawContactCount = mRawContactCount;
+                        dataCount = mData.size();
+                    }
+                    results[i] = operation.apply(this, results, i);
+                }
+            } catch (OperationApplicationException e) {
+                // Roll back.
+                mRawContactCount = rawContactCount;
+                mData.subList(dataCount, mData.size()).clear();
+                throw e;
+            }
+            return results;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            if (RawContacts.CONTENT_URI.equals(uri)) {
+                mRawContactCount++;
+                return ContentUris.withAppendedId(uri, mRawContactCount);
+            }
+            if (mRejectedName != null
+                    && mRejectedName.equals(values.getAsString(StructuredName.DISPLAY_NAME))) {
+                return null;
+            }
+            mData.add(values);
+            return ContentUris.withAppendedId(uri, mData.size());
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            // Only the lookup of existing contacts: mimetype, number and display name.
+            MatrixCursor cursor = new MatrixCursor(new String[] {Data._ID});
+            for (ContentValues phone : mData) {
+                if (!selectionArgs[0].equals(phone.getAsString(Data.MIMETYPE))
+                        || !selectionArgs[1].equals(phone.getAsString(Phone.NUMBER))) {
+                    continue;
+                }
+                for (ContentValues name : mData) {
+                    if (StructuredName.CONTENT_ITEM_TYPE.equals(name.getAsString(Data.MIMETYPE))
+                            && name.get(Data.RAW_CONTACT_ID).equals(
+                                    phone.get(Data.RAW_CONTACT_ID))
+                            && selectionArgs[2].equals(
+                                    name.getAsString(StructuredName.DISPLAY_NAME))) {
+                        cursor.addRow(new Object[] {0});
+                    }
+                }
+            }
+            return cursor;
+        }
+
+        int countNames(String name) {
+            int count = 0;
+            for (ContentValues values : mData) {
+                if (StructuredName.CONTENT_ITEM_TYPE.equals(values.getAsString(Data.MIMETYPE))
+                        && name.equals(values.getAsString(StructuredName.DISPLAY_NAME))) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        ContentValues findData(String mimeType) {
+            for (ContentValues values : mData) {
+                if (mimeType.equals(values.getAsString(Data.MIMETYPE))) {
+                    return values;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone.common.mail.internet;
+
+import com.android.phone.common.mail.MessagingException;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+public class MimeHeaderParserTest extends TestCase {
+
+    public void testParse_envelope() throws MessagingException {
+        MimeHeader header = new MimeHeader();
+        assertTrue(MimeHeaderParser.parse("Date: Thu, 1 Jan 2009 11:20:39 -0800\r\n"
+                + "From: 5551234@example.com\r\n"
+                + "Subject: voice mail\r\n"
+                + "Content-Type: multipart/voice-message;\r\n"
+                + "\tboundary=\"--abc\"\r\n"
+                + "\r\n", header));
+        assertEquals("Thu, 1 Jan 2009 11:20:39 -0800", header.getFirstHeader("date"));
+        assertEquals("5551234@example.com", header.getFirstHeader("From"));
+        assertEquals("voice mail", header.getFirstHeader("Subject"));
+        assertEquals("multipart/voice-message;\tboundary=\"--abc\"",
+                header.getFirstHeader("Content-Type"));
+    }
+
+    public void testParse_noTerminatingLine() throws MessagingException {
+        MimeHeader header = new MimeHeader();
+        assertTrue(MimeHeaderParser.parse("Subject: a\nTo: b", header));
+        assertEquals("a", header.getFirstHeader("Subject"));
+        assertEquals("b", header.getFirstHeader("To"));
+    }
+
+    public void testParse_ignoresInvalidFields() throws MessagingException {
+        MimeHeader header = new MimeHeader();
+        assertTrue(MimeHeaderParser.parse("no colon here\r\n"
+                + " continued\r\n"
+                + "Bad Name: x\r\n"
+                + "Subject: ok\r\n\r\n", header));
+        assertNull(header.getFirstHeader("Bad Name"));
+        assertEquals("ok", header.getFirstHeader("Subject"));
+        assertEquals(1, header.mFields.size());
+    }
+
+    public void testParse_rejectsBody() throws MessagingException {
+        assertFalse(MimeHeaderParser.parse("Subject: a\r\n\r\nbody\r\n", new MimeHeader()));
+    }
+
+    public void testParseHeaderFields_matchesParse() throws Exception {
+        String header = "Subject: voice mail\r\n"
+                + "Content-Type: multipart/voice-message; boundary=\"--abc\"\r\n"
+                + "\r\n";
+        MimeMessage parsed = new MimeMessage(
+                new ByteArrayInputStream(header.getBytes(StandardCharsets.US_ASCII)));
+        MimeMessage message = new MimeMessage();
+        assertTrue(message.parseHeaderFields(header));
+
+        MimeMultipart body = (MimeMultipart) message.getBody();
+        assertSame(message, body.getParent());
+        assertEquals(((MimeMultipart) parsed.getBody()).getContentType(), body.getContentType());
+        assertEquals(parsed.getFirstHeader("MIME-Version"), message.getFirstHeader("MIME-Version"));
+        assertEquals("1.0", message.getFirstHeader("MIME-Version"));
+        assertEquals(parsed.getContentType(), message.getContentType());
+    }
+
+    public void testParse_rejectsBareCr() throws MessagingException {
+        assertFalse(MimeHeaderParser.parse("Subject: a\rb\r\n\r\n", new MimeHeader()));
+    }
+}
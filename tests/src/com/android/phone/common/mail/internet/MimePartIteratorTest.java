@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone.common.mail.internet;
+
+import android.util.Base64;
+
+import com.android.phone.common.mail.MessagingException;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class MimePartIteratorTest extends TestCase {
+
+    private static final String BOUNDARY = "----=_Part_0_1234.5678";
+
+    public void testNext_voicemail() throws Exception {
+        byte[] audio = new byte[100000];
+        new Random(0).nextBytes(audio);
+        MimePartIterator parts = new MimePartIterator(new ByteArrayInputStream(
+                createVoicemail(audio).getBytes("US-ASCII")));
+
+        assertEquals("5551234@example.com", parts.getMessageHeader().getFirstHeader("From"));
+        assertTrue(parts.next());
+        assertEquals("text/plain", parts.getMimeType());
+        assertEquals("transcription", IOUtils.toString(parts.getDecodedInputStream()));
+        assertTrue(parts.next());
+        assertEquals("audio/amr", parts.getMimeType());
+        assertTrue(Arrays.equals(audio, IOUtils.toByteArray(parts.getDecodedInputStream())));
+        assertFalse(parts.next());
+    }
+
+    public void testNext_skipsUnreadParts() throws Exception {
+        byte[] audio = new byte[50000];
+        new Random(1).nextBytes(audio);
+        // Deliver the message a few bytes at a time so boundaries straddle reads.
+        MimePartIterator parts = new MimePartIterator(new TrickleInputStream(
+                new ByteArrayInputStream(createVoicemail(audio).getBytes("US-ASCII"))));
+        assertTrue(parts.next());
+        assertTrue(parts.next());
+        assertEquals("audio/amr", parts.getMimeType());
+        assertTrue(Arrays.equals(audio, IOUtils.toByteArray(parts.getDecodedInputStream())));
+        assertFalse(parts.next());
+    }
+
+    public void testNext_emptyPartAndPreamble() throws Exception {
+        String message = "Content-Type: multipart/mixed; boundary=b\r\n"
+                + "\r\n"
+                + "This is the preamble\r\n"
+                + "--b\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "--b\r\n"
+                + "\r\n"
+                + "no header\r\n"
+                + "--b--\r\n"
+                + "epilogue\r\n";
+        MimePartIterator parts = new MimePartIterator(
+                new ByteArrayInputStream(message.getBytes("US-ASCII")));
+        assertTrue(parts.next());
+        assertEquals("", IOUtils.toString(parts.getDecodedInputStream()));
+        assertTrue(parts.next());
+        assertEquals("text/plain", parts.getMimeType());
+        assertEquals("no header", IOUtils.toString(parts.getDecodedInputStream()));
+        assertFalse(parts.next());
+    }
+
+    public void testNext_bareLf() throws Exception {
+        byte[] audio = new byte[50000];
+        new Random(3).nextBytes(audio);
+        MimePartIterator parts = new MimePartIterator(new TrickleInputStream(
+                new ByteArrayInputStream(createVoicemail(audio).replace("\r\n", "\n")
+                        .getBytes("US-ASCII"))));
+        assertTrue(parts.next());
+        assertEquals("transcription", IOUtils.toString(parts.getDecodedInputStream()));
+        assertTrue(parts.next());
+        assertEquals("audio/amr", parts.getMimeType());
+        assertTrue(Arrays.equals(audio, IOUtils.toByteArray(parts.getDecodedInputStream())));
+        assertFalse(parts.next());
+    }
+
+    public void testNext_crInContent() throws Exception {
+        String message = "Content-Type: multipart/mixed; boundary=b\r\n"
+                + "\r\n"
+                + "--b\r\n"
+                + "\r\n"
+                + "a\rb\r\r\n"
+                + "--b--\r\n";
+        MimePartIterator parts = new MimePartIterator(
+                new ByteArrayInputStream(message.getBytes("US-ASCII")));
+        assertTrue(parts.next());
+        InputStream in = parts.getDecodedInputStream();
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            sb.append((char) c);
+        }
+        assertEquals("a\rb\r", sb.toString());
+        assertFalse(parts.next());
+    }
+
+    public void testNext_truncated() throws Exception {
+        String message = "Content-Type: multipart/mixed; boundary=b\r\n"
+                + "\r\n"
+                + "--b\r\n"
+                + "\r\n"
+                + "cut off";
+        MimePartIterator parts = new MimePartIterator(
+                new ByteArrayInputStream(message.getBytes("US-ASCII")));
+        assertTrue(parts.next());
+        assertEquals("cut off", IOUtils.toString(parts.getDecodedInputStream()));
+        assertFalse(parts.next());
+    }
+
+    public void testNext_notMultipart() throws IOException, MessagingException {
+        MimePartIterator parts = new MimePartIterator(new ByteArrayInputStream(
+                "Content-Type: text/plain\r\n\r\nbody".getBytes("US-ASCII")));
+        assertFalse(parts.next());
+    }
+
+    private static String createVoicemail(byte[] audio) {
+        return "From: 5551234@example.com\r\n"
+                + "Content-Type: multipart/voice-message;\r\n"
+                + "\tboundary=\"" + BOUNDARY + "\"\r\n"
+                + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "transcription\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Type: audio/amr\r\n"
+                + "Content-Transfer-Encoding: base64\r\n"
+                + "\r\n"
+                + Base64.encodeToString(audio, Base64.DEFAULT)
+                + "\r\n--" + BOUNDARY + "--\r\n";
+    }
+
+    private static class TrickleInputStream extends FilterInputStream {
+        private final Random mRandom = new Random(2);
+
+        TrickleInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, mRandom.nextInt(50) + 1));
+        }
+    }
+}
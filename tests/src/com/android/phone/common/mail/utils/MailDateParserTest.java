@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone.common.mail.utils;
+
+import junit.framework.TestCase;
+
+import org.apache.james.mime4j.field.datetime.DateTime;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+public class MailDateParserTest extends TestCase {
+
+    // 2009-01-01T19:20:39Z
+    private static final long JAN_1_2009 = 1230837639000L;
+
+    private static final String[] IMAP_DATES = {
+            "01-Jan-2009 11:20:39 -0800",
+            " 1-Jan-2009 11:20:39 -0800",
+            "1-jan-2009 19:20:39 +0000",
+            "02-Jan-2009 04:20:39 +0900",
+            "31-Dec-2008 23:50:39 -1930",
+    };
+
+    // Dates mime4j's DateTimeParser accepts, parsed by both to check they agree.
+    private static final String[] RFC822_DATES = {
+            "Thu, 1 Jan 2009 11:20:39 -0800",
+            "Thu, 01 Jan 2009 11:20:39 -0800 (PST)",
+            "Thu,1 Jan 2009 11:20:39 -0800",
+            "1 Jan 2009 11:20:39 -0800",
+            "1 Jan 2009 11:20 -0800",
+            "1 Jan 09 11:20:39 -0800",
+            "1 Jan 99 11:20:39 -0800",
+            "1 Jan 109 11:20:39 -0800",
+            "Thu, 1 Jan 2009 14:20:39 EST",
+            "Thu, 1 Jan 2009 15:20:39 EDT",
+            "Thu, 1 Jan 2009 13:20:39 CST",
+            "Thu, 1 Jan 2009 14:20:39 CDT",
+            "Thu, 1 Jan 2009 12:20:39 MST",
+            "Thu, 1 Jan 2009 13:20:39 MDT",
+            "Thu, 1 Jan 2009 11:20:39 PST",
+            "Thu, 1 Jan 2009 12:20:39 PDT",
+            "Thu, 1 Jan 2009 19:20:39 GMT",
+            "Thu, 1 Jan 2009 19:20:39 UT",
+            "Thu, 1 Jan 2009 19:20:39 Z",
+            "Thu, 1 Jan 2009 19:20:39 A",
+            "Thu, 1 Jan 2009 19:20:39 +0000 (Coordinated (Universal) Time)",
+            "Sun, 29 Feb 2004 00:00:00 +0000",
+            "Wed, 31 Dec 1969 23:59:59 +0000",
+            "Mon, 1 Jan 1900 00:00:00 +0000",
+            "Fri, 31 Dec 2100 23:59:59 +1400",
+            "Tue, 31 Feb 2009 25:61:61 +0000",
+    };
+
+    private static final String[] INVALID_DATES = {
+            "",
+            "   ",
+            "NIL",
+            "Jan 1 2009 11:20:39 -0800",
+            "Thu 1 Jan 2009 11:20:39 -0800",
+            "Xyz, 1 Jan 2009 11:20:39 -0800",
+            "1 Foo 2009 11:20:39 -0800",
+            "1 Jan 2009 11-20-39 -0800",
+            "1 Jan 2009 11:20:39",
+            "1 Jan 2009 11:20:39 -",
+            "1 Jan 2009 11:20:39 XYZ",
+            "1 Jan 2009 11:20:39 J",
+            "1 Jan 2009 11:20:39 -0800 garbage",
+            "1 Jan 2009 11:20:39 -0800 (unterminated",
+            "1 Jan 2009 11:",
+    };
+
+    public void testParse_imapDates() {
+        for (String date : IMAP_DATES) {
+            assertEquals(date, JAN_1_2009, MailDateParser.parse(date, 0, date.length()));
+        }
+    }
+
+    public void testParse_matchesSimpleDateFormat() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss Z", Locale.US);
+        for (String date : IMAP_DATES) {
+            assertEquals(date, format.parse(date.trim()).getTime(),
+                    MailDateParser.parse(date, 0, date.length()));
+        }
+    }
+
+    public void testParse_matchesMime4j() throws Exception {
+        for (String date : RFC822_DATES) {
+            assertEquals(date, DateTime.parse(date).getDate().getTime(),
+                    MailDateParser.parse(date, 0, date.length()));
+        }
+    }
+
+    public void testParse_gmtWithOffset() {
+        String date = "Thu, 1 Jan 2009 11:20:39 GMT-0800";
+        assertEquals(JAN_1_2009, MailDateParser.parse(date, 0, date.length()));
+    }
+
+    public void testParse_range() {
+        String s = "INTERNALDATE \"01-Jan-2009 11:20:39 -0800\" RFC822.SIZE";
+        int start = s.indexOf('"') + 1;
+        int end = s.lastIndexOf('"');
+        assertEquals(JAN_1_2009, MailDateParser.parse(s, start, end));
+    }
+
+    public void testParse_invalid() {
+        for (String date : INVALID_DATES) {
+            assertEquals(date, MailDateParser.INVALID,
+                    MailDateParser.parse(date, 0, date.length()));
+        }
+        assertNull(MailDateParser.parseDate(null));
+        assertNull(MailDateParser.parseDate("NIL"));
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.phone.vvm.omtp.imap;
+
+import android.util.Base64;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process IMAP server on the loopback interface, serving a mailbox of generated voicemails.
+ *
+ * <p>Only the commands issued by {@link ImapHelper} are understood. Every response can be delayed
+ * by a fixed latency and written at a limited bandwidth to approximate a cellular link. The
+ * number of commands, of UID FETCH commands and the bytes exchanged are counted.
+ */
+public class FakeImapServer implements Runnable {
+
+    private static final String BOUNDARY = "fake-vvm-boundary";
+    private static final String TRANSCRIPTION = "This is a voicemail transcription.";
+    private static final int WRITE_CHUNK_SIZE = 1024;
+
+    private static class FakeMessage {
+        final String uid;
+        final String header;
+        final String transcriptionPart;
+        final String audioPart;
+        final String body;
+        boolean seen;
+        boolean deleted;
+
+        FakeMessage(String uid, String header, String transcriptionPart, String audioPart,
+                String body) {
+            this.uid = uid;
+            this.header = header;
+            this.transcriptionPart = transcriptionPart;
+            this.audioPart = audioPart;
+            this.body = body;
+        }
+    }
+
+    private final ServerSocket mServerSocket;
+    // Guarded by itself.
+    private final TreeMap<Integer, FakeMessage> mMessages = new TreeMap<>();
+
+    private volatile long mLatencyMillis;
+    private volatile long mBytesPerSecond;
+
+    private final AtomicInteger mCommands = new AtomicInteger();
+    private final AtomicInteger mFetchCommands = new AtomicInteger();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    public FakeImapServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(this, "FakeImapServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Replaces the mailbox with {@code count} voicemails, each with a transcription and
+     * {@code audioSize} bytes of audio.
+     */
+    public void setMailbox(int count, int audioSize) {
+        byte[] audio = new byte[audioSize];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (byte) i;
+        }
+        String encodedAudio = Base64.encodeToString(audio, Base64.DEFAULT)
+                .replace("\n", "\r\n");
+        synchronized (mMessages) {
+            mMessages.clear();
+            for (int i = 1; i <= count; i++) {
+                String header = "Date: Mon, 1 Aug 2016 12:00:00 +0000\r\n"
+                        + "From: " + (5550000 + i) + "@vvm.example.com\r\n"
+                        + "To: 5551234@vvm.example.com\r\n"
+                        + "Subject: voice mail\r\n"
+                        + "Content-Type: multipart/mixed; boundary=\"" + BOUNDARY + "\"\r\n"
+                        + "\r\n";
+                String transcriptionPart = TRANSCRIPTION;
+                String audioPart = encodedAudio;
+                String body = header
+                        + "--" + BOUNDARY + "\r\n"
+                        + "Content-Type: text/plain; charset=us-ascii\r\n"
+                        + "Content-Transfer-Encoding: 7bit\r\n"
+                        + "\r\n"
+                        + transcriptionPart + "\r\n"
+                        + "--" + BOUNDARY + "\r\n"
+                        + "Content-Type: audio/amr; name=\"voicemail.amr\"\r\n"
+                        + "Content-Transfer-Encoding: base64\r\n"
+                        + "\r\n"
+                        + audioPart + "\r\n"
+                        + "--" + BOUNDARY + "--\r\n";
+                mMessages.put(i, new FakeMessage(Integer.toString(i), header, transcriptionPart,
+                        audioPart, body));
+            }
+        }
+    }
+
+    /**
+     * Sets the delay before each response.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * Sets the rate responses are written at. 0 means unlimited.
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    public void resetCounters() {
+        mCommands.set(0);
+        mFetchCommands.set(0);
+        mBytesReceived.set(0);
+        mBytesSent.set(0);
+    }
+
+    public int getCommandCount() {
+        return mCommands.get();
+    }
+
+    public int getFetchCommandCount() {
+        return mFetchCommands.get();
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    public void shutdown() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // Ignored.
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "FakeImapServer-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+            write(out, "* OK IMAP4rev1 fake server ready\r\n");
+            String line;
+            while ((line = in.readLine()) != null) {
+                mCommands.incrementAndGet();
+                mBytesReceived.addAndGet(line.length() + 2);
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    write(out, "* BAD missing command\r\n");
+                    continue;
+                }
+                String tag = line.substring(0, space);
+                String command = line.substring(space + 1);
+                String response = handleCommand(tag, command);
+                write(out, response);
+                if (command.toUpperCase(Locale.US).startsWith("LOGOUT")) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // The client went away.
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignored.
+            }
+        }
+    }
+
+    private String handleCommand(String tag, String command) {
+        String upper = command.toUpperCase(Locale.US);
+        StringBuilder sb = new StringBuilder();
+        if (upper.startsWith("CAPABILITY")) {
+            sb.append("* CAPABILITY IMAP4rev1 QUOTA\r\n");
+        } else if (upper.startsWith("LOGIN")) {
+            // Any credentials are accepted.
+        } else if (upper.startsWith("SELECT")) {
+            synchronized (mMessages) {
+                sb.append("* ").append(mMessages.size()).append(" EXISTS\r\n");
+            }
+            return sb.append(tag).append(" OK [READ-WRITE] SELECT completed\r\n").toString();
+        } else if (upper.startsWith("UID SEARCH")) {
+            sb.append("* SEARCH");
+            synchronized (mMessages) {
+                String criteria = command.substring(11);
+                if (criteria.toUpperCase(Locale.US).startsWith("UID ")) {
+                    criteria = criteria.substring(4);
+                }
+                for (FakeMessage message : getMessages(criteria)) {
+                    if (!message.deleted) {
+                        sb.append(' ').append(message.uid);
+                    }
+                }
+            }
+            sb.append("\r\n");
+        } else if (upper.startsWith("UID FETCH")) {
+            mFetchCommands.incrementAndGet();
+            fetch(command.substring(10), sb);
+        } else if (upper.startsWith("UID STORE")) {
+            store(command.substring(10));
+        } else if (upper.startsWith("EXPUNGE")) {
+            synchronized (mMessages) {
+                List<Integer> expunged = new ArrayList<>();
+                for (Map.Entry<Integer, FakeMessage> entry : mMessages.entrySet()) {
+                    if (entry.getValue().deleted) {
+                        expunged.add(entry.getKey());
+                    }
+                }
+                for (Integer key : expunged) {
+                    mMessages.remove(key);
+                }
+            }
+        } else if (upper.startsWith("GETQUOTAROOT")) {
+            synchronized (mMessages) {
+                sb.append("* QUOTAROOT INBOX \"\"\r\n")
+                        .append("* QUOTA \"\" (voice ").append(mMessages.size())
+                        .append(" 1000)\r\n");
+            }
+        } else if (upper.startsWith("LOGOUT")) {
+            sb.append("* BYE fake server logging out\r\n");
+        } else {
+            return tag + " BAD unsupported command\r\n";
+        }
+        return sb.append(tag).append(" OK completed\r\n").toString();
+    }
+
+    /**
+     * @return the messages in {@code set}, which is the first word of {@code arguments}. Must
+     * hold mMessages.
+     */
+    private List<FakeMessage> getMessages(String arguments) {
+        int end = arguments.indexOf(' ');
+        String set = end < 0 ? arguments : arguments.substring(0, end);
+        List<FakeMessage> result = new ArrayList<>();
+        for (String range : set.split(",")) {
+            int colon = range.indexOf(':');
+            if (colon < 0) {
+                FakeMessage message = mMessages.get(Integer.parseInt(range));
+                if (message != null) {
+                    result.add(message);
+                }
+                continue;
+            }
+            int first = Integer.parseInt(range.substring(0, colon));
+            String last = range.substring(colon + 1);
+            int lastUid = "*".equals(last) ? Integer.MAX_VALUE : Integer.parseInt(last);
+            result.addAll(mMessages.subMap(first, true, lastUid, true).values());
+        }
+        return result;
+    }
+
+    private void fetch(String arguments, StringBuilder sb) {
+        String items = arguments.substring(arguments.indexOf('(') + 1).toUpperCase(Locale.US);
+        synchronized (mMessages) {
+            int sequence = 0;
+            for (FakeMessage message : getMessages(arguments)) {
+                sequence++;
+                sb.append("* ").append(sequence).append(" FETCH (UID ").append(message.uid);
+                if (items.contains("FLAGS")) {
+                    sb.append(" FLAGS (").append(message.seen ? "\\Seen" : "").append(')');
+                }
+                if (items.contains("INTERNALDATE")) {
+                    sb.append(" INTERNALDATE \"01-Aug-2016 12:00:00 +0000\"");
+                }
+                if (items.contains("RFC822.SIZE")) {
+                    sb.append(" RFC822.SIZE ").append(message.body.length());
+                }
+                if (items.contains("BODY.PEEK[HEADER.FIELDS")) {
+                    sb.append(" BODY[HEADER.FIELDS (DATE SUBJECT FROM CONTENT-TYPE TO CC"
+                            + " MESSAGE-ID)] ");
+                    appendLiteral(sb, message.header);
+                }
+                if (items.contains("BODYSTRUCTURE")) {
+                    sb.append(" BODYSTRUCTURE ((\"text\" \"plain\" (\"charset\" \"us-ascii\")"
+                            + " NIL NIL \"7bit\" ").append(message.transcriptionPart.length())
+                            .append(" 1)(\"audio\" \"amr\" (\"name\" \"voicemail.amr\") NIL NIL"
+                                    + " \"base64\" ").append(message.audioPart.length())
+                            .append(") \"mixed\" (\"boundary\" \"").append(BOUNDARY)
+                            .append("\") NIL NIL)");
+                }
+                if (items.contains("BODY.PEEK[]")) {
+                    sb.append(" BODY[] ");
+                    appendLiteral(sb, message.body);
+                }
+                if (items.contains("BODY.PEEK[1]")) {
+                    sb.append(" BODY[1] ");
+                    appendLiteral(sb, message.transcriptionPart);
+                }
+                if (items.contains("BODY.PEEK[2]")) {
+                    sb.append(" BODY[2] ");
+                    appendLiteral(sb, message.audioPart);
+                }
+                sb.append(")\r\n");
+            }
+        }
+    }
+
+    private static void appendLiteral(StringBuilder sb, String literal) {
+        sb.append('{').append(literal.length()).append("}\r\n").append(literal);
+    }
+
+    private void store(String arguments) {
+        String upper = arguments.toUpperCase(Locale.US);
+        boolean seen = upper.contains("\\SEEN");
+        boolean deleted = upper.contains("\\DELETED");
+        boolean set = !upper.contains("-FLAGS");
+        synchronized (mMessages) {
+            for (FakeMessage message : getMessages(arguments)) {
+                if (seen) {
+                    message.seen = set;
+                }
+                if (deleted) {
+                    message.deleted = set;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes {@code response} after the configured latency, at the configured bandwidth.
+     */
+    private void write(OutputStream out, String response) throws IOException {
+        sleep(mLatencyMillis);
+        byte[] bytes = response.getBytes(StandardCharsets.US_ASCII);
+        long bytesPerSecond = mBytesPerSecond;
+        if (bytesPerSecond <= 0) {
+            out.write(bytes);
+        } else {
+            for (int offset = 0; offset < bytes.length; offset += WRITE_CHUNK_SIZE) {
+                int count = Math.min(WRITE_CHUNK_SIZE, bytes.length - offset);
+                out.write(bytes, offset, count);
+                sleep(count * 1000L / bytesPerSecond);
+            }
+        }
+        out.flush();
+        mBytesSent.addAndGet(bytes.length);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.phone.vvm.omtp.imap;
+
+import static org.mockito.Mockito.mock;
+
+import android.content.ComponentName;
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.provider.VoicemailContract;
+import android.provider.VoicemailContract.Voicemails;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.Voicemail;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.phone.Assert;
+import com.android.phone.MockitoHelper;
+import com.android.phone.VoicemailStatus;
+import com.android.phone.vvm.omtp.OmtpConstants;
+import com.android.phone.vvm.omtp.OmtpVvmCarrierConfigHelper;
+import com.android.phone.vvm.omtp.VisualVoicemailPreferences;
+import com.android.phone.vvm.omtp.fetch.VoicemailFetchedCallback;
+import com.android.phone.vvm.omtp.sync.OmtpVvmSyncService;
+import com.android.phone.vvm.omtp.sync.SyncTask;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures a full download of the mailbox followed by a prefetch of every payload against a
+ * {@link FakeImapServer}, for growing mailboxes and over a shaped link. The duration, commands,
+ * bytes and allocations of each run are logged under {@link #TAG}. Timings vary between runs, so
+ * only the number of commands and the bytes exchanged are asserted.
+ */
+@LargeTest
+public class ImapHelperPerformanceTest extends AndroidTestCase {
+
+    private static final String TAG = "ImapHelperPerformance";
+
+    private static final int AUDIO_SIZE = 4 * 1024;
+    private static final long PREFETCH_BUDGET = Long.MAX_VALUE;
+
+    // ClassLoader need to be replaced for mockito to work.
+    private MockitoHelper mMockitoHelper = new MockitoHelper();
+
+    private FakeImapServer mServer;
+    private PhoneAccountHandle mPhoneAccount;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mMockitoHelper.setUp(getContext(), getClass());
+        mServer = new FakeImapServer();
+        mPhoneAccount = new PhoneAccountHandle(
+                new ComponentName(getContext(), getClass()), "ImapHelperPerformanceTest");
+        new VisualVoicemailPreferences(getContext(), mPhoneAccount).edit()
+                .putString(OmtpConstants.IMAP_USER_NAME, "user")
+                .putString(OmtpConstants.IMAP_PASSWORD, "password")
+                .putString(OmtpConstants.SERVER_ADDRESS, "127.0.0.1")
+                .putString(OmtpConstants.IMAP_PORT, Integer.toString(mServer.getPort()))
+                .apply();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Assert.setIsMainThreadForTesting(null);
+        mServer.shutdown();
+        mMockitoHelper.tearDown();
+        super.tearDown();
+    }
+
+    public void testSync_10Messages() throws Exception {
+        runSync("10 messages", 10);
+    }
+
+    public void testSync_100Messages() throws Exception {
+        runSync("100 messages", 100);
+    }
+
+    public void testSync_1000Messages() throws Exception {
+        runSync("1000 messages", 1000);
+    }
+
+    public void testSync_100Messages_slowLink() throws Exception {
+        mServer.setLatencyMillis(50);
+        mServer.setBytesPerSecond(256 * 1024);
+        runSync("100 messages, 50ms, 256KB/s", 100);
+    }
+
+    public void testSync_sameMailboxSameTraffic() throws Exception {
+        Counters first = runSync("10 messages, first", 10);
+        Counters second = runSync("10 messages, second", 10);
+        assertEquals(first.commands, second.commands);
+        assertEquals(first.bytesReceived, second.bytesReceived);
+        assertEquals(first.bytesSent, second.bytesSent);
+    }
+
+    public void testSync_onlyFetchesGrowWithMailbox() throws Exception {
+        Counters small = runSync("10 messages", 10);
+        Counters large = runSync("20 messages", 20);
+        assertEquals(small.commands - small.fetchCommands, large.commands - large.fetchCommands);
+    }
+
+    public void testSync_throughSyncService_100Messages() throws Exception {
+        final int messageCount = 100;
+        mServer.setMailbox(messageCount, AUDIO_SIZE);
+        FakeVoicemailProvider provider = new FakeVoicemailProvider();
+        provider.attachInfo(getContext(), null);
+        final MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider(VoicemailContract.AUTHORITY, provider);
+        // Not roaming.
+        final ConnectivityManager connectivityManager = mock(ConnectivityManager.class);
+        Context context = new ContextWrapper(getContext()) {
+            @Override
+            public ContentResolver getContentResolver() {
+                return resolver;
+            }
+
+            @Override
+            public Object getSystemService(String name) {
+                if (Context.CONNECTIVITY_SERVICE.equals(name)) {
+                    return connectivityManager;
+                }
+                return super.getSystemService(name);
+            }
+        };
+        OmtpVvmSyncService service = new OmtpVvmSyncService(context);
+
+        mServer.resetCounters();
+        long startTime = SystemClock.elapsedRealtime();
+        runSyncTask(service);
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+
+        // The structure and the transcription of each voicemail, then the size and the body of
+        // all of them for the prefetch.
+        assertEquals(2 * messageCount + 2, mServer.getFetchCommandCount());
+        // 100 inserts fit in one batch.
+        assertEquals(1, provider.getBatchCount());
+        assertEquals(messageCount, provider.getCount());
+        for (int id = 1; id <= messageCount; id++) {
+            ContentValues values = provider.get(id);
+            assertFalse(TextUtils.isEmpty(values.getAsString(Voicemails.TRANSCRIPTION)));
+            assertTrue(values.getAsBoolean(Voicemails.HAS_CONTENT));
+            assertEquals(AUDIO_SIZE, provider.getFile(id).length());
+        }
+        Log.i(TAG, "sync service, " + messageCount + " messages: " + elapsed + "ms, "
+                + mServer.getCommandCount() + " commands, " + mServer.getBytesReceived()
+                + "B sent, " + mServer.getBytesSent() + "B received");
+
+        // Every voicemail is already in the provider, so only their structures are fetched.
+        mServer.resetCounters();
+        runSyncTask(service);
+        assertEquals(2 * messageCount, mServer.getFetchCommandCount());
+        assertEquals(1, provider.getBatchCount());
+        assertEquals(messageCount, provider.getCount());
+
+        for (int id = 1; id <= messageCount; id++) {
+            provider.getFile(id).delete();
+        }
+    }
+
+    /**
+     * Runs the download {@link SyncTask} does once it has a network. The network itself isn't
+     * requested, it is the loopback one of {@link FakeImapServer}.
+     */
+    private void runSyncTask(OmtpVvmSyncService service) {
+        Assert.setIsMainThreadForTesting(true);
+        SyncTask task = new SyncTask();
+        Assert.setIsMainThreadForTesting(false);
+        service.doSync(task, null, mPhoneAccount, OmtpVvmSyncService.SYNC_DOWNLOAD_ONLY, null,
+                mock(VoicemailStatus.Editor.class));
+        Assert.setIsMainThreadForTesting(true);
+        assertFalse(task.hasFailed());
+    }
+
+    private Counters runSync(String name, int messageCount) throws Exception {
+        mServer.setMailbox(messageCount, AUDIO_SIZE);
+        mServer.resetCounters();
+        final AtomicInteger payloads = new AtomicInteger();
+
+        Debug.startAllocCounting();
+        Debug.resetGlobalAllocSize();
+        long startTime = SystemClock.elapsedRealtime();
+
+        List<Voicemail> voicemails;
+        try (ImapHelper helper = createImapHelper()) {
+            voicemails = helper.fetchAllVoicemails();
+            assertNotNull(voicemails);
+
+            Map<String, VoicemailFetchedCallback> callbacks = new LinkedHashMap<>();
+            for (Voicemail voicemail : voicemails) {
+                callbacks.put(voicemail.getSourceData(),
+                        new VoicemailFetchedCallback(getContext(), null, mPhoneAccount) {
+                            @Override
+                            public void setVoicemailContent(VoicemailPayload payload) {
+                                // Called on the writer thread, so count instead of asserting.
+                                if (payload != null
+                                        && payload.getBytes().length == AUDIO_SIZE) {
+                                    payloads.incrementAndGet();
+                                }
+                            }
+                        });
+            }
+            assertTrue(helper.fetchVoicemailPayloads(callbacks, PREFETCH_BUDGET));
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        long allocated = Debug.getGlobalAllocSize();
+        Debug.stopAllocCounting();
+
+        assertEquals(messageCount, voicemails.size());
+        assertEquals(messageCount, payloads.get());
+        // The structure and the transcription of each voicemail, then the size and the body of
+        // all of them for the prefetch.
+        assertEquals(2 * messageCount + 2, mServer.getFetchCommandCount());
+        Log.i(TAG, name + ": " + elapsed + "ms, " + mServer.getCommandCount() + " commands, "
+                + mServer.getBytesReceived() + "B sent, " + mServer.getBytesSent()
+                + "B received, " + allocated + "B allocated");
+        return new Counters(mServer);
+    }
+
+    private ImapHelper createImapHelper() throws Exception {
+        return new ImapHelper(getContext(), mock(OmtpVvmCarrierConfigHelper.class), mPhoneAccount,
+                null, mock(VoicemailStatus.Editor.class));
+    }
+
+    /**
+     * The counters of {@link FakeImapServer} after a run.
+     */
+    private static class Counters {
+        final int commands;
+        final int fetchCommands;
+        final long bytesReceived;
+        final long bytesSent;
+
+        Counters(FakeImapServer server) {
+            commands = server.getCommandCount();
+            fetchCommands = server.getFetchCommandCount();
+            bytesReceived = server.getBytesReceived();
+            bytesSent = server.getBytesSent();
+        }
+    }
+
+    /**
+     * Keeps the voicemails in memory, their id being their position plus one, and their content in
+     * the cache directory. Payloads are written from the writer thread of {@link ImapHelper}, so
+     * every call is synchronized.
+     */
+    private static class FakeVoicemailProvider extends ContentProvider {
+        private final List<ContentValues> mVoicemails = new ArrayList<>();
+        private int mBatches;
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public synchronized ContentProviderResult[] applyBatch(
+                ArrayList<ContentProviderOperation> operations)
+                throws OperationApplicationException {
+            mBatches++;
+            return super.applyBatch(operations);
+        }
+
+        @Override
+        public synchronized Uri insert(Uri uri, ContentValues values) {
+            mVoicemails.add(new ContentValues(values));
+            return ContentUris.withAppendedId(Voicemails.CONTENT_URI, mVoicemails.size());
+        }
+
+        @Override
+        public synchronized int update(Uri uri, ContentValues values, String selection,
+                String[] selectionArgs) {
+            // Only the updates of a single voicemail.
+            if (selection != null) {
+                throw new UnsupportedOperationException();
+            }
+            get(ContentUris.parseId(uri)).putAll(values);
+            return 1;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            // Only the query of all the voicemails.
+            if (selection != null) {
+                throw new UnsupportedOperationException();
+            }
+            MatrixCursor cursor = new MatrixCursor(projection);
+            for (int i = 0; i < mVoicemails.size(); i++) {
+                Object[] row = new Object[projection.length];
+                for (int column = 0; column < projection.length; column++) {
+                    row[column] = Voicemails._ID.equals(projection[column])
+                            ? i + 1 : mVoicemails.get(i).get(projection[column]);
+                }
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+
+        @Override
+        public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+            return ParcelFileDescriptor.open(getFile(ContentUris.parseId(uri)),
+                    ParcelFileDescriptor.parseMode(mode));
+        }
+
+        synchronized int getBatchCount() {
+            return mBatches;
+        }
+
+        synchronized int getCount() {
+            return mVoicemails.size();
+        }
+
+        synchronized ContentValues get(long id) {
+            return mVoicemails.get((int) id - 1);
+        }
+
+        File getFile(long id) {
+            return new File(getContext().getCacheDir(), "FakeVoicemailProvider_" + id);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.services.telephony;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.telecom.TelecomManager;
+import android.util.Log;
+
+import com.android.TelephonyTestBase;
+import com.android.internal.telephony.Call;
+import com.android.internal.telephony.Connection;
+import com.android.internal.telephony.Phone;
+import com.android.internal.telephony.PhoneConstants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+/**
+ * Replays call state event streams, made up to resemble typical calls, through
+ * {@link TelephonyConnection#updateState} and checks that the address is only published to
+ * Telecom again when something it depends on changed. Logs the time taken per event, next to the
+ * time taken when the address is published on every event as it used to be.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TelephonyConnectionUpdateStateTest extends TelephonyTestBase {
+    private static final String TAG = "TelephonyConnectionUpdateStateTest";
+
+    // Dialing, alerting, a long active stretch with signal and codec updates, a hold and back.
+    private static final Call.State[] MO_STREAM = stream(
+            Call.State.DIALING, 3,
+            Call.State.ALERTING, 4,
+            Call.State.ACTIVE, 40,
+            Call.State.HOLDING, 5,
+            Call.State.ACTIVE, 10);
+
+    private static final Call.State[] MT_STREAM = stream(
+            Call.State.INCOMING, 3,
+            Call.State.ACTIVE, 30);
+
+    private static final int BENCHMARK_REPEATS = 50;
+
+    @Mock Phone mPhone;
+    @Mock Call mCall;
+    @Mock Call mIdleCall;
+    @Mock Connection mOriginalConnection;
+
+    private TelephonyConnection mConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        when(mPhone.getContext()).thenReturn(mContext);
+        when(mPhone.getPhoneType()).thenReturn(PhoneConstants.PHONE_TYPE_GSM);
+        when(mPhone.getRingingCall()).thenReturn(mIdleCall);
+        when(mPhone.getForegroundCall()).thenReturn(mIdleCall);
+        when(mPhone.getBackgroundCall()).thenReturn(mIdleCall);
+        when(mIdleCall.getState()).thenReturn(Call.State.IDLE);
+        when(mIdleCall.isIdle()).thenReturn(true);
+        when(mCall.getPhone()).thenReturn(mPhone);
+        when(mOriginalConnection.getCall()).thenReturn(mCall);
+        when(mOriginalConnection.getAddress()).thenReturn("6505550100");
+        when(mOriginalConnection.getNumberPresentation())
+                .thenReturn(TelecomManager.PRESENTATION_ALLOWED);
+        when(mOriginalConnection.getCnapNamePresentation())
+                .thenReturn(TelecomManager.PRESENTATION_ALLOWED);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mConnection != null) {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mConnection.close();
+                }
+            });
+        }
+        super.tearDown();
+    }
+
+    @Test
+    public void testUpdateState_moStream_publishesAddressOnStateChangesOnly() {
+        replayAndCheck(MO_STREAM);
+    }
+
+    @Test
+    public void testUpdateState_mtStream_publishesAddressOnStateChangesOnly() {
+        replayAndCheck(MT_STREAM);
+    }
+
+    @Test
+    public void testUpdateState_addressChange_publishesAddress() {
+        createConnection(Call.State.ACTIVE);
+        final int published = mConnection.getAddressPublishCount();
+
+        when(mOriginalConnection.getAddress()).thenReturn("6505550199");
+        updateState();
+
+        assertEquals(published + 1, mConnection.getAddressPublishCount());
+        assertEquals("6505550199", mConnection.getAddress().getSchemeSpecificPart());
+    }
+
+    @Test
+    public void testUpdateState_numberPresentationChange_publishesAddress() {
+        createConnection(Call.State.ACTIVE);
+        final int published = mConnection.getAddressPublishCount();
+
+        when(mOriginalConnection.getNumberPresentation())
+                .thenReturn(TelecomManager.PRESENTATION_RESTRICTED);
+        updateState();
+
+        assertEquals(published + 1, mConnection.getAddressPublishCount());
+        assertEquals(TelecomManager.PRESENTATION_RESTRICTED,
+                mConnection.getAddressPresentation());
+    }
+
+    @Test
+    public void testUpdateState_cnapNameChange_publishesCallerName() {
+        createConnection(Call.State.ACTIVE);
+        final int published = mConnection.getAddressPublishCount();
+
+        when(mOriginalConnection.getCnapName()).thenReturn("Alice");
+        updateState();
+
+        assertEquals(published + 1, mConnection.getAddressPublishCount());
+        assertEquals("Alice", mConnection.getCallerDisplayName());
+    }
+
+    @Test
+    public void testUpdateState_cnapNamePresentationChange_publishesCallerName() {
+        when(mOriginalConnection.getCnapName()).thenReturn("Alice");
+        createConnection(Call.State.ACTIVE);
+        final int published = mConnection.getAddressPublishCount();
+
+        when(mOriginalConnection.getCnapNamePresentation())
+                .thenReturn(TelecomManager.PRESENTATION_RESTRICTED);
+        updateState();
+
+        assertEquals(published + 1, mConnection.getAddressPublishCount());
+        assertEquals(TelecomManager.PRESENTATION_RESTRICTED,
+                mConnection.getCallerDisplayNamePresentation());
+    }
+
+    @Test
+    public void testUpdateState_benchmark() {
+        final long[] times = new long[2];
+        final int[] published = new int[2];
+        createConnection(MO_STREAM[0]);
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < BENCHMARK_REPEATS; i++) {
+                    int count = mConnection.getAddressPublishCount();
+                    long start = SystemClock.elapsedRealtimeNanos();
+                    for (Call.State state : MO_STREAM) {
+                        when(mOriginalConnection.getState()).thenReturn(state);
+                        mConnection.updateState();
+                    }
+                    times[0] += SystemClock.elapsedRealtimeNanos() - start;
+                    published[0] += mConnection.getAddressPublishCount() - count;
+
+                    // What updateState used to do: publish the address on every event. Where
+                    // updateState skipped publishing, updateAddress makes up for it, which redoes
+                    // the capabilities and properties just as the old code did.
+                    count = mConnection.getAddressPublishCount();
+                    start = SystemClock.elapsedRealtimeNanos();
+                    for (Call.State state : MO_STREAM) {
+                        when(mOriginalConnection.getState()).thenReturn(state);
+                        int skipped = mConnection.getAddressSkipCount();
+                        mConnection.updateState();
+                        if (mConnection.getAddressSkipCount() != skipped) {
+                            mConnection.updateAddress();
+                        }
+                    }
+                    times[1] += SystemClock.elapsedRealtimeNanos() - start;
+                    published[1] += mConnection.getAddressPublishCount() - count;
+                }
+            }
+        });
+        int events = BENCHMARK_REPEATS * MO_STREAM.length;
+        // Every repeat but the first starts with a transition back from the last state.
+        assertEquals(BENCHMARK_REPEATS * (transitions(MO_STREAM) + 1) - 1, published[0]);
+        assertEquals(events, published[1]);
+        Log.i(TAG, events + " events: " + times[0] / events / 1000 + "us per event, "
+                + times[1] / events / 1000 + "us per event publishing the address every time, "
+                + mConnection.getAddressSkipCount() + " publications skipped");
+    }
+
+    private void replayAndCheck(final Call.State[] stream) {
+        createConnection(stream[0]);
+        final int published = mConnection.getAddressPublishCount();
+        final int skipped = mConnection.getAddressSkipCount();
+
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (Call.State state : stream) {
+                    when(mOriginalConnection.getState()).thenReturn(state);
+                    mConnection.updateState();
+                }
+            }
+        });
+
+        int transitions = transitions(stream);
+        assertEquals(published + transitions, mConnection.getAddressPublishCount());
+        assertEquals(skipped + stream.length - transitions, mConnection.getAddressSkipCount());
+    }
+
+    private void createConnection(Call.State state) {
+        when(mOriginalConnection.getState()).thenReturn(state);
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Created on the main thread, as its handlers need a looper.
+                mConnection = new GsmConnection(null, "TC@1", false);
+                mConnection.setOriginalConnection(mOriginalConnection);
+            }
+        });
+    }
+
+    private void updateState() {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mConnection.updateState();
+            }
+        });
+    }
+
+    private static int transitions(Call.State[] stream) {
+        int transitions = 0;
+        for (int i = 1; i < stream.length; i++) {
+            if (stream[i] != stream[i - 1]) {
+                transitions++;
+            }
+        }
+        return transitions;
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    /**
+     * @param runs pairs of a state and how many events in a row report it.
+     */
+    private static Call.State[] stream(Object... runs) {
+        List<Call.State> states = new ArrayList<>();
+        for (int i = 0; i < runs.length; i += 2) {
+            for (int j = 0; j < (Integer) runs[i + 1]; j++) {
+                states.add((Call.State) runs[i]);
+            }
+        }
+        return states.toArray(new Call.State[states.size()]);
+    }
+}
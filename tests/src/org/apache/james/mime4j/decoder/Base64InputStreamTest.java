@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.decoder;
+
+import android.util.Base64;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class Base64InputStreamTest extends TestCase {
+
+    public void testRead_singleByte() throws IOException {
+        byte[] data = randomBytes(1000);
+        assertTrue(Arrays.equals(data, readAll(newStream(data), 0)));
+    }
+
+    public void testRead_block() throws IOException {
+        byte[] data = randomBytes(100000);
+        assertTrue(Arrays.equals(data, readAll(newStream(data), 16384)));
+    }
+
+    public void testRead_blockSmallerThanQuantum() throws IOException {
+        for (int length = 0; length < 10; length++) {
+            byte[] data = randomBytes(length);
+            assertTrue(Arrays.equals(data, readAll(newStream(data), 1)));
+            assertTrue(Arrays.equals(data, readAll(newStream(data), 2)));
+        }
+    }
+
+    public void testRead_mixed() throws IOException {
+        byte[] data = randomBytes(10000);
+        InputStream in = newStream(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                break;
+            }
+            out.write(b);
+            int n = in.read(buffer, 0, buffer.length);
+            if (n == -1) {
+                break;
+            }
+            out.write(buffer, 0, n);
+        }
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+    }
+
+    public void testRead_ignoresDataAfterPadding() throws IOException {
+        InputStream in = new Base64InputStream(
+                new ByteArrayInputStream("YWI=\r\nYWI=".getBytes("US-ASCII")));
+        assertTrue(Arrays.equals("ab".getBytes("US-ASCII"), readAll(in, 100)));
+    }
+
+    private static InputStream newStream(byte[] data) {
+        return new Base64InputStream(
+                new ByteArrayInputStream(Base64.encode(data, Base64.DEFAULT)));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Reads the stream to the end, one byte at a time if {@code bufferSize} is 0.
+     */
+    static byte[] readAll(InputStream in, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (bufferSize == 0) {
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+        } else {
+            byte[] buffer = new byte[bufferSize];
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.decoder;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+public class QuotedPrintableInputStreamTest extends TestCase {
+
+    private static final String ENCODED = "Hello=20world=0D=0A"
+            + "soft =\r\n"
+            + "line break  \r\n"
+            + "trailing tab\t\r\n"
+            + "=E9t=E9 ==3D broken=ZZ end  ";
+
+    public void testRead_blockMatchesSingleByte() throws IOException {
+        byte[] expected = decode(0);
+        for (int bufferSize : new int[] {1, 2, 3, 5, 64, 16384}) {
+            assertEquals(new String(expected, "ISO-8859-1"),
+                    new String(decode(bufferSize), "ISO-8859-1"));
+        }
+    }
+
+    public void testRead_stripsTransportPadding() throws IOException {
+        assertEquals("soft line break\r\n", new String(decode("soft =\r\nline break  \r\n"),
+                "ISO-8859-1"));
+    }
+
+    private static byte[] decode(int bufferSize) throws IOException {
+        return Base64InputStreamTest.readAll(new QuotedPrintableInputStream(
+                new ByteArrayInputStream(ENCODED.getBytes("ISO-8859-1"))), bufferSize);
+    }
+
+    private static byte[] decode(String encoded) throws IOException {
+        return Base64InputStreamTest.readAll(new QuotedPrintableInputStream(
+                new ByteArrayInputStream(encoded.getBytes("ISO-8859-1"))), 100);
+    }
+}